@@ -1,19 +1,41 @@
 package com.run.saxb;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlSeeAlso;
 import javax.xml.namespace.QName;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+
+import com.run.saxb.transducer.Transducer;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
+import com.run.saxb.transducer.accessor.IntegerAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
 
 
 /**
  * Encapsulates various JAXB operations on objects bound by JAXB.
- * Immutable and thread-safe.
+ *
+ * <p>
+ * Thread-safe. The binding of the bean is immutable. The {@link #subtypes} 
+ * are set while the context is built, before the context is handed out, 
+ * and are not changed afterwards. The instance pool and the fragment memo 
+ * can be changed at any time; they are held in volatile fields, so the beans 
+ * created and marshalled afterwards by any thread use the new ones.
  */
 public class BeanInfo<BeanT> {
 	
@@ -32,28 +54,512 @@ public class BeanInfo<BeanT> {
     
     public final QName qname;
     
+    /**
+     * Name of the root element of this bean. 
+     * Its namespace is also the namespace of the element properties.
+     */
+    public final Name name;
+    
+    /**
+     * Constant attributes written on every element of this bean.
+     */
     public final Map<String, String> attributeProperties = new LinkedHashMap<>();
     
-    public final Map<String, BeanInfo<?>> properties = new LinkedHashMap<>();
+    /**
+     * Attribute properties, bound to the fields annotated with {@link XmlAttribute}.
+     * {@link #attributeNames} holds their names at the same index. The names are
+     * interned, so that they can be matched against parser names by identity.
+     */
+    final TextAccessor[] attributes;
+    final String[] attributeNames;
+    
+    /**
+     * Element properties of the bean, keyed by their element name,
+     * in the order they are marshalled.
+     */
+    public final Map<String, Accessor> properties = new LinkedHashMap<>();
+    
+    /**
+     * The values of {@link #properties} as an array.
+     * The index of an accessor is its property code in compact encodings.
+     */
+    final Accessor[] accessors;
+    
+    /**
+     * The element names of {@link #accessors}, at the same index.
+     */
+    final Name[] elementNames;
+    
+    /**
+     * The JSON member names of the {@link #accessors} followed by those of the
+     * {@link #attributes}, quoted, escaped and followed by the colon.
+     * Attribute names start with <tt>@</tt>.
+     */
+    final char[][] jsonKeys;
+    
+    /**
+     * Constraints of the element properties and of the attribute properties,
+     * at the same index as {@link #accessors} and {@link #attributes}.
+     * Only checked when unmarshalling in validating mode.
+     */
+    final Constraint[] elementConstraints;
+    final Constraint[] attributeConstraints;
+    
+    /**
+     * True if some attribute property is required.
+     */
+    final boolean hasRequiredAttributes;
+    
+    /**
+     * The field annotated with {@link Version}, or null.
+     */
+    final IntegerAccessor version;
+    
+    /**
+     * The bound subclasses of this bean, which an element of this bean 
+     * can hold with an <tt>xsi:type</tt> attribute. Null if there are none.
+     * The code of a subtype in compact encodings is its index plus one,
+     * 0 being this bean.
+     */
+    BeanInfo<?>[] subtypes;
+    
+    /**
+     * The codes of the {@link #subtypes} by class, and the subtypes by 
+     * qualified and local type name. Set along with the subtypes.
+     */
+    private Map<Class<?>, Integer> subtypeCodes;
+    private Map<String, BeanInfo<?>> subtypeNames;
+    
+    /**
+     * Creates instances of an immutable bean from the values of all its fields,
+     * in the order of the fields. Null for beans with a default constructor.
+     * 
+     * @see ClassFactory#getCreator(Class, Class[])
+     */
+    private final MethodHandle creator;
+    
+    /**
+     * The argument index of the {@link #accessors} and the {@link #attributes}
+     * for the {@link #creator}, at the same index.
+     */
+    final int[] elementArgs;
+    final int[] attributeArgs;
+    
+    /**
+     * The default value of each argument of the {@link #creator}.
+     */
+    private final Object[] defaultArgs;
+    
+    /**
+     * Where new instances come from, if not null.
+     */
+    private volatile InstancePool<BeanT> pool;
+    
+    /**
+     * Where the elements of the beans are memoized when marshalled, if not null.
+     */
+    private volatile FragmentMemo memo;
     
     public BeanInfo(SAXBContextImpl grammar, Class<BeanT> jaxbType) {
     	this.beanName = jaxbType.getSimpleName();
     	this.jaxbType = jaxbType;
+    	int nsIndex = grammar.getNamespaceIndex(jaxbType);
+    	this.name = grammar.createName(nsIndex, beanName);
     	this.qname = grammar.createQName(this);
         grammar.beanInfoMap.put(jaxbType, this);
+        
+        List<TextAccessor> attributes = new ArrayList<>();
+        List<String> attributeNames = new ArrayList<>();
+        List<Constraint> attributeConstraints = new ArrayList<>();
+        Map<String, Constraint> elementConstraints = new LinkedHashMap<>();
+        List<Integer> attributeArgs = new ArrayList<>();
+        Map<String, Integer> elementArgs = new LinkedHashMap<>();
+        boolean hasRequiredAttributes = false;
+        XmlSeeAlso seeAlso = jaxbType.getAnnotation(XmlSeeAlso.class);
+        if (seeAlso != null) {
+        	for (Class<?> c: seeAlso.value())
+        		grammar.getOrCreate(c);
+        }
+        List<Field> fields = getFields(jaxbType);
+        for (Field f: fields) {
+        	XmlAttribute xa = f.getAnnotation(XmlAttribute.class);
+        	if (xa != null && Transducer.isLeaf(f.getType())) {
+        		attributeArgs.add(attributes.size() + elementArgs.size());
+        		attributes.add(Transducer.createAccessor(f));
+        		attributeNames.add((xa.name().equals("##default") ? f.getName() : xa.name()).intern());
+        		Constraint c = Constraint.forAttribute(f);
+        		attributeConstraints.add(c);
+        		hasRequiredAttributes |= c.minOccurs > 0;
+        		continue;
+        	}
+        	Accessor acc = createAccessor(grammar, f);
+        	if (acc != null) {
+        		elementArgs.put(acc.getName(), attributes.size() + elementArgs.size());
+        		properties.put(acc.getName(), acc);
+        		elementConstraints.put(acc.getName(), Constraint.forElement(f, acc instanceof ListAccessor));
+        	}
+        }
+        this.accessors = properties.values().toArray(new Accessor[properties.size()]);
+        this.elementNames = new Name[accessors.length];
+        for (int i = 0; i < accessors.length; i++)
+        	elementNames[i] = grammar.createName(nsIndex, accessors[i].getName());
+        this.attributes = attributes.toArray(new TextAccessor[attributes.size()]);
+        this.attributeNames = attributeNames.toArray(new String[attributeNames.size()]);
+        this.elementConstraints = elementConstraints.values().toArray(new Constraint[accessors.length]);
+        this.attributeConstraints = attributeConstraints.toArray(new Constraint[attributeConstraints.size()]);
+        this.hasRequiredAttributes = hasRequiredAttributes;
+        this.version = findVersion(jaxbType);
+        this.jsonKeys = new char[accessors.length + this.attributes.length][];
+        for (int i = 0; i < accessors.length; i++)
+        	jsonKeys[i] = JsonEncoder.encodeKey(elementNames[i].localName);
+        for (int i = 0; i < this.attributes.length; i++)
+        	jsonKeys[accessors.length + i] = JsonEncoder.encodeKey('@' + this.attributeNames[i]);
+        
+        // immutable beans are created from the values of all their fields at once
+        Class<?>[] types = new Class<?>[fields.size()];
+        for (int i = 0; i < types.length; i++)
+        	types[i] = fields.get(i).getType();
+        boolean allBound = attributes.size() + properties.size() == fields.size();
+        this.creator = allBound ? ClassFactory.getCreator(jaxbType, types) : null;
+        this.defaultArgs = new Object[types.length];
+        for (int i = 0; i < types.length; i++)
+        	defaultArgs[i] = Transducer.getDefault(types[i]);
+        this.elementArgs = new int[accessors.length];
+        int i = 0;
+        for (Integer arg: elementArgs.values())
+        	this.elementArgs[i++] = arg;
+        this.attributeArgs = new int[attributeArgs.size()];
+        for (i = 0; i < this.attributeArgs.length; i++)
+        	this.attributeArgs[i] = attributeArgs.get(i);
 	}
     
     /**
-     * Creates a new instance of the bean.
+     * Sets the bound subclasses of this bean, once all the beans of the context are known.
+     */
+    void setSubtypes(List<BeanInfo<?>> subtypes) {
+    	if (subtypes.isEmpty())
+    		return;
+    	this.subtypes = subtypes.toArray(new BeanInfo<?>[subtypes.size()]);
+    	this.subtypeCodes = new IdentityHashMap<>();
+    	this.subtypeNames = new HashMap<>();
+    	subtypeNames.put(name.qName, this);
+    	subtypeNames.put(name.localName, this);
+    	for (int i = this.subtypes.length - 1; i >= 0; i--) {
+    		BeanInfo<?> sub = this.subtypes[i];
+    		subtypeCodes.put(sub.jaxbType, i + 1);
+    		subtypeNames.put(sub.name.qName, sub);
+    		subtypeNames.put(sub.name.localName, sub);
+    	}
+    }
+    
+    /**
+     * Gets the code of the type of a bean held by an element of this bean:
+     * 0 for this bean, or the code of one of its {@link #subtypes}.
+     * The most derived bound class of the bean is its type.
+     */
+    int getTypeCode(Object bean) {
+    	if (subtypes == null)
+    		return 0;
+    	for (Class<?> c = bean.getClass(); c != jaxbType && c != null; c = c.getSuperclass()) {
+    		Integer code = subtypeCodes.get(c);
+    		if (code != null)
+    			return code;
+    	}
+    	return 0;
+    }
+    
+    /**
+     * Gets this bean, or one of its {@link #subtypes}, by its code.
+     *
+     * @return null if there's no subtype with that code.
+     */
+    BeanInfo<?> getType(int code) {
+    	if (code == 0)
+    		return this;
+    	return subtypes != null && code > 0 && code <= subtypes.length ? subtypes[code - 1] : null;
+    }
+    
+    /**
+     * Gets the {@link BeanInfo} that marshals a bean held by an element of this bean.
+     */
+    BeanInfo<?> getType(Object bean) {
+    	return subtypes == null ? this : getType(getTypeCode(bean));
+    }
+    
+    /**
+     * Gets this bean, or one of its {@link #subtypes}, by the value of an 
+     * <tt>xsi:type</tt> attribute. A prefix that is not the one of the context 
+     * is ignored.
+     *
+     * @return null if there's no such type.
+     */
+    BeanInfo<?> getType(String typeName) {
+    	if (subtypes == null)
+    		return name.qName.equals(typeName) || name.localName.equals(typeName) ? this : null;
+    	BeanInfo<?> type = subtypeNames.get(typeName);
+    	if (type == null) {
+    		int colon = typeName.indexOf(':');
+    		if (colon >= 0)
+    			type = subtypeNames.get(typeName.substring(colon + 1));
+    	}
+    	return type;
+    }
+    
+    /**
+     * Gets the bindable fields of the given class, base class fields first.
+     */
+    private static List<Field> getFields(Class<?> clazz) {
+    	List<Field> fields = new ArrayList<>();
+    	if (clazz.getSuperclass() != null && clazz.getSuperclass() != Object.class)
+    		fields.addAll(getFields(clazz.getSuperclass()));
+    	for (Field f: clazz.getDeclaredFields()) {
+    		int mod = f.getModifiers();
+    		if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic())
+    			continue;
+    		fields.add(f);
+    	}
+    	return fields;
+    }
+    
+    /**
+     * Finds the {@link Version} field of a class or its base classes,
+     * which can be <tt>transient</tt>.
+     */
+    private static IntegerAccessor findVersion(Class<?> clazz) {
+    	for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+    		for (Field f: c.getDeclaredFields()) {
+    			if (f.isAnnotationPresent(Version.class) && !Modifier.isStatic(f.getModifiers())
+    					&& IntegerAccessor.isIntegral(f.getType()))
+    				return new IntegerAccessor(f);
+    		}
+    	}
+    	return null;
+    }
+    
+    /**
+     * Gets the version of a bean.
+     *
+     * @return {@link Long#MIN_VALUE} if the version is null.
+     */
+    long getVersion(Object bean) {
+    	return version.hasValue(bean) ? version.getLong(bean) : Long.MIN_VALUE;
+    }
+    
+    /**
+     * Picks the {@link Accessor} for a field.
+     *
+     * @return null if the field type can't be bound.
+     */
+    private static Accessor createAccessor(SAXBContextImpl grammar, Field f) {
+    	Class<?> type = f.getType();
+    	if (Transducer.isLeaf(type))
+    		return Transducer.createAccessor(f);
+    	if (ListAccessor.isList(type)) {
+    		Class<?> itemType = ListAccessor.getItemType(f);
+    		if (Transducer.isLeaf(itemType))
+    			return new ListAccessor(f, null);
+    		if (isBean(itemType))
+    			return new ListAccessor(f, grammar.getOrCreate(itemType));
+    		return null;
+    	}
+    	if (isBean(type))
+    		return new BeanAccessor(f, grammar.getOrCreate(type));
+    	return null;
+    }
+    
+    /**
+     * Checks if the given type can be bound as a nested bean.
+     * Platform classes are never reflected into.
+     */
+    static boolean isBean(Class<?> type) {
+    	if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum())
+    		return false;
+    	String name = type.getName();
+    	return !name.startsWith("java.") && !name.startsWith("javax.");
+    }
+    
+    /**
+     * Gets the index of an element property by its local name only,
+     * for input whose names carry no namespace.
+     *
+     * @return -1 if there's no such element property.
+     */
+    int getElementIndex(String local) {
+    	for (int i = 0; i < elementNames.length; i++) {
+    		if (elementNames[i].localName == local)
+    			return i;
+    	}
+    	for (int i = 0; i < elementNames.length; i++) {
+    		if (elementNames[i].localName.equals(local))
+    			return i;
+    	}
+    	return -1;
+    }
+    
+    /**
+     * Creates a new instance of the bean, or takes one from its pool.
      *
      * <p>
      * This operation is only supported when {@link #isImmutable} is false.
      */
     public BeanT createInstance() {
+    	InstancePool<BeanT> pool = this.pool;
+    	if (pool != null) {
+    		BeanT bean = pool.acquire();
+    		if (bean != null)
+    			return bean;
+    	}
         BeanT bean = ClassFactory.create(jaxbType);
         return bean;
     }
     
+    /**
+     * Checks if the bean has no default constructor, but is created 
+     * from the values of all its fields at once.
+     */
+    public boolean isImmutable() {
+    	return creator != null;
+    }
+    
+    /**
+     * Gets the number of values an immutable bean is created from.
+     */
+    int getArgumentCount() {
+    	return defaultArgs.length;
+    }
+    
+    /**
+     * Sets the default values of the arguments into a buffer, 
+     * so that the arguments that are not bound have the right type.
+     */
+    void initArguments(Object[] args) {
+    	System.arraycopy(defaultArgs, 0, args, 0, defaultArgs.length);
+    }
+    
+    /**
+     * Creates an instance of an immutable bean from the values of its fields.
+     * 
+     * @param args
+     *      The values in the order of the fields. The array can be reused afterwards.
+     */
+    public BeanT createInstance(Object[] args) {
+    	return jaxbType.cast(ClassFactory.create(creator, args));
+    }
+    
+    public InstancePool<BeanT> getInstancePool() {
+    	return pool;
+    }
+    
+    /**
+     * Sets the pool that {@link #createInstance()} takes instances from, 
+     * and that {@link #reset(Object)} releases nested beans to. Can be null.
+     */
+    public void setInstancePool(InstancePool<BeanT> pool) {
+    	this.pool = pool;
+    }
+    
+    public FragmentMemo getFragmentMemo() {
+    	return memo;
+    }
+    
+    /**
+     * Sets the memo that the elements of the beans are copied from when marshalled.
+     * Can be null.
+     */
+    public void setFragmentMemo(FragmentMemo memo) {
+    	this.memo = memo;
+    }
+    
+    /**
+     * Clears all the properties of a bean, so that it can be bound again.
+     * Collections are emptied but kept. The nested beans are cleared and
+     * released to the pools of their classes, if they have one.
+     */
+    public void reset(Object bean) {
+    	reset(bean, new IdentitySet(16));
+    }
+    
+    /**
+     * Clears all the properties of a bean like {@link #reset(Object)}.
+     * The beans released meanwhile are tracked, so that a bean reachable 
+     * more than once, as the references of {@link ReferenceMode#ID_REF} bind
+     * them, goes to its pool once, and a cycle ends.
+     *
+     * @param released
+     *      An empty set, which is left empty.
+     */
+    void reset(Object bean, IdentitySet released) {
+    	released.add(bean);
+    	try {
+    		clear(bean, released);
+    	} finally {
+    		released.clear();
+    	}
+    }
+    
+    private void clear(Object bean, IdentitySet released) {
+    	for (TextAccessor att: attributes)
+    		att.clear(bean);
+    	for (Accessor acc: accessors) {
+    		if (acc instanceof TextAccessor) {
+    			((TextAccessor) acc).clear(bean);
+    		} else if (acc instanceof BeanAccessor) {
+    			Object child = acc.get(bean);
+    			if (child != null) {
+    				// cleared first, so that a cycle back to this bean finds nothing
+    				acc.set(bean, null);
+    				((BeanAccessor) acc).beanInfo.recycle(child, released);
+    			}
+    		} else if (acc instanceof ListAccessor) {
+    			ListAccessor list = (ListAccessor) acc;
+    			if (list.itemInfo != null && list.itemInfo.hasPool()) {
+    				Collection<Object> items = list.getList(bean);
+    				if (items != null) {
+    					for (Object item: items)
+    						list.itemInfo.recycle(item, released);
+    				}
+    			}
+    			list.clear(bean);
+    		}
+    	}
+    }
+    
+    /**
+     * Whether this bean, or one of its {@link #subtypes}, has a pool.
+     */
+    private boolean hasPool() {
+    	if (pool != null)
+    		return true;
+    	if (subtypes != null) {
+    		for (BeanInfo<?> sub: subtypes) {
+    			if (sub.pool != null)
+    				return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    /**
+     * Clears a bean held by an element of this bean that is no longer used, 
+     * and releases it to the pool of its class. A bean of a subtype is cleared 
+     * with the properties of the subtype and goes to the pool of the subtype; 
+     * a bean of a class that isn't bound is left alone, and so is a bean
+     * that is already released.
+     */
+    private void recycle(Object bean, IdentitySet released) {
+    	BeanInfo<?> type = getType(bean);
+    	if (type.jaxbType == bean.getClass())
+    		type.release(bean, released);
+    }
+    
+    private void release(Object bean, IdentitySet released) {
+    	InstancePool<BeanT> pool = this.pool;
+    	if (pool == null || !released.add(bean))
+    		return;
+    	clear(bean, released);
+    	pool.release(jaxbType.cast(bean));
+    }
+    
     /**
      * Serializes the bean as the root element.
      *
@@ -74,30 +580,86 @@ public class BeanInfo<BeanT> {
      * <p>
      * For schema-to-java, this is equivalent to {@link #serializeBody(Object, XMLSerializer)}.
      */
-    public void serializeRoot(Node target) {
-    	serializeBody(target);
+    public void serializeRoot(Object bean, XMLSerializer target) throws IOException {
+    	target.rootElement(this, bean);
     }
 
     /**
      * Serializes child elements and texts into the specified target.
      */
-    public void serializeBody(Node target) {
-    	Document document = target.getOwnerDocument();
-    	for (BeanInfo<?> property: properties.values()) {
-    		Node node = target.appendChild(
-    					document.createElement(property.beanName));
-    		serializeAttributes(node);
-    		serializeBody(node);
+    public void serializeBody(Object bean, XMLSerializer target) throws IOException {
+    	for (int i = 0; i < accessors.length; i++) {
+    		Accessor acc = accessors[i];
+    		if (acc instanceof EnumAccessor) {
+    			Enum<?> value = ((EnumAccessor) acc).getEnum(bean);
+    			if (value != null)
+    				target.enumElement(elementNames[i], ((EnumAccessor) acc).table, value);
+    		} else if (acc instanceof TextAccessor) {
+    			String text = ((TextAccessor) acc).print(bean);
+    			if (text != null)
+    				target.leafElement(elementNames[i], text);
+    		} else if (acc instanceof BeanAccessor) {
+    			Object child = acc.get(bean);
+    			if (child != null)
+    				target.childElement(((BeanAccessor) acc).beanInfo, elementNames[i], child);
+    		} else if (acc instanceof ListAccessor) {
+    			ListAccessor list = (ListAccessor) acc;
+    			Collection<Object> items = list.getList(bean);
+    			if (items != null)
+    				target.items(list, elementNames[i], items);
+    		}
     	}
     }
 
     /**
      * Serializes attributes into the specified target.
      */
-    public void serializeAttributes(Node target) {
+    public void serializeAttributes(Object bean, XMLSerializer target) throws IOException {
+    	for (int i = 0; i < attributes.length; i++) {
+    		String value = attributes[i].print(bean);
+    		if (value != null)
+    			target.out.attribute(attributeNames[i], value);
+    	}
+    	if (attributeProperties.isEmpty())
+    		return;
         for (Entry<String, String> entry: attributeProperties.entrySet()) {
-        	Element element = (Element) target;
-        	element.setAttribute(entry.getKey(), entry.getValue());
+        	target.out.attribute(entry.getKey(), entry.getValue());
+    	}
+    }
+    
+    /**
+     * Gets the index of an attribute property by name. 
+     * Names from the parser are interned, so the identity check normally hits.
+     *
+     * @return -1 if there's no such attribute property.
+     */
+    int getAttributeIndex(String name) {
+    	for (int i = 0; i < attributeNames.length; i++) {
+    		if (attributeNames[i] == name)
+    			return i;
+    	}
+    	for (int i = 0; i < attributeNames.length; i++) {
+    		if (attributeNames[i].equals(name))
+    			return i;
+    	}
+    	return -1;
+    }
+    
+    /**
+     * Gets the index of an element property by name, in the same way as 
+     * {@link #getAttributeIndex(String)}.
+     *
+     * @return -1 if there's no such element property.
+     */
+    int getElementIndex(String nsUri, String local) {
+    	for (int i = 0; i < elementNames.length; i++) {
+    		if (elementNames[i].localName == local && elementNames[i].nsUri == nsUri)
+    			return i;
+    	}
+    	for (int i = 0; i < elementNames.length; i++) {
+    		if (elementNames[i].matches(nsUri, local))
+    			return i;
     	}
+    	return -1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package com.run.saxb;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.BooleanAccessor;
+import com.run.saxb.transducer.accessor.DoubleAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
+import com.run.saxb.transducer.accessor.IntegerAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.StringAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
+
+/**
+ * Reads a content tree written by {@link BinaryEncoder}.
+ *
+ * <p>
+ * Not thread-safe. A new decoder is used for each document. The input buffer
+ * comes from the {@link BufferPool} of the context and goes back to it
+ * at the end of {@link #decode}.
+ */
+final class BinaryDecoder {
+	
+	private final SAXBContextImpl grammar;
+	private final InputStream in;
+	private final byte[] buf;
+	private int pos;
+	private int limit;
+	
+	private final List<String> strings = new ArrayList<>();
+	
+	BinaryDecoder(SAXBContextImpl grammar, InputStream in) {
+		this.grammar = grammar;
+		this.in = in;
+		this.buf = grammar.bufferPool.acquireBytes(8192);
+	}
+	
+	/**
+	 * @param target
+	 *      The bean to bind the root to, after resetting it.
+	 *      null to create a new bean.
+	 * @param declaredType
+	 *      The bean that the root must be, or null to accept any root.
+	 *      The properties are encoded by the root, so there is no binding
+	 *      a document to another bean than the one it was written from.
+	 * @param released
+	 *      An empty set to track the beans released while the target is reset.
+	 */
+	Object decode(Object target, BeanInfo<?> declaredType, IdentitySet released) throws IOException {
+		try {
+			for (byte b: BinaryEncoder.MAGIC) {
+				if (readByte() != b)
+					throw new IOException("Not a binary SAXB document");
+			}
+			int code = readCode();
+			if (code >= grammar.roots.length)
+				throw new IOException("Unknown root code " + code);
+			
+			BeanInfo<?> beanInfo = grammar.roots[code];
+			if (declaredType != null && !declaredType.jaxbType.isAssignableFrom(beanInfo.jaxbType))
+				throw new IOException("The root " + beanInfo.beanName + " is not a " + declaredType.beanName);
+			if (target == null)
+				return readBean(beanInfo);
+			if (!beanInfo.jaxbType.isInstance(target) || beanInfo.isImmutable())
+				throw new IOException("The root " + beanInfo.beanName + " can't be bound to " 
+						+ target.getClass().getName());
+			beanInfo.reset(target, released);
+			readBody(beanInfo, target);
+			return target;
+		} finally {
+			grammar.bufferPool.releaseBytes(buf);
+		}
+	}
+	
+	/**
+	 * Reads a new bean. An immutable bean is created from its arguments
+	 * once its properties are read.
+	 */
+	private Object readBean(BeanInfo<?> beanInfo) throws IOException {
+		if (!beanInfo.isImmutable()) {
+			Object bean = beanInfo.createInstance();
+			readBody(beanInfo, bean);
+			return bean;
+		}
+		Object[] args = new Object[beanInfo.getArgumentCount()];
+		beanInfo.initArguments(args);
+		readArguments(beanInfo, args);
+		return beanInfo.createInstance(args);
+	}
+	
+	/**
+	 * Reads a bean held by a property of the given declared type,
+	 * after the code of its type if the declared type has subtypes.
+	 */
+	private Object readChild(BeanInfo<?> declared) throws IOException {
+		if (declared.subtypes == null)
+			return readBean(declared);
+		int code = readCode();
+		BeanInfo<?> type = declared.getType(code);
+		if (type == null)
+			throw new IOException("Unknown type code " + code + " for " + declared.beanName);
+		return readBean(type);
+	}
+	
+	private void readBody(BeanInfo<?> beanInfo, Object bean) throws IOException {
+		Accessor[] accessors = beanInfo.accessors;
+		for (int code = readCode(); code != 0; code = readCode()) {
+			if (code > accessors.length + beanInfo.attributes.length)
+				throw new IOException("Unknown property code " + code + " in " + beanInfo.beanName);
+			
+			Accessor acc = code > accessors.length 
+					? beanInfo.attributes[code - accessors.length - 1] : accessors[code - 1];
+			if (acc instanceof TextAccessor) {
+				readText((TextAccessor) acc, bean);
+			} else if (acc instanceof BeanAccessor) {
+				acc.set(bean, readChild(((BeanAccessor) acc).beanInfo));
+			} else if (acc instanceof ListAccessor) {
+				ListAccessor list = (ListAccessor) acc;
+				list.addItem(bean, list.itemInfo != null ? readChild(list.itemInfo) : readValue(list.itemType));
+			}
+		}
+	}
+	
+	/**
+	 * Reads the properties of an immutable bean into the arguments of its creator.
+	 */
+	private void readArguments(BeanInfo<?> beanInfo, Object[] args) throws IOException {
+		Accessor[] accessors = beanInfo.accessors;
+		for (int code = readCode(); code != 0; code = readCode()) {
+			if (code > accessors.length + beanInfo.attributes.length)
+				throw new IOException("Unknown property code " + code + " in " + beanInfo.beanName);
+			
+			if (code > accessors.length) {
+				int index = code - accessors.length - 1;
+				args[beanInfo.attributeArgs[index]] = readValue(beanInfo.attributes[index].getType());
+				continue;
+			}
+			Accessor acc = accessors[code - 1];
+			int i = beanInfo.elementArgs[code - 1];
+			if (acc instanceof TextAccessor) {
+				args[i] = readValue(((TextAccessor) acc).getType());
+			} else if (acc instanceof BeanAccessor) {
+				args[i] = readChild(((BeanAccessor) acc).beanInfo);
+			} else if (acc instanceof ListAccessor) {
+				ListAccessor list = (ListAccessor) acc;
+				@SuppressWarnings("unchecked")
+				Collection<Object> items = (Collection<Object>) args[i];
+				if (items == null)
+					args[i] = items = list.newCollection();
+				items.add(list.itemInfo != null ? readChild(list.itemInfo) : readValue(list.itemType));
+			}
+		}
+	}
+	
+	private void readText(TextAccessor acc, Object bean) throws IOException {
+		if (acc instanceof IntegerAccessor)
+			((IntegerAccessor) acc).setLong(bean, readZigzag());
+		else if (acc instanceof DoubleAccessor)
+			((DoubleAccessor) acc).setDouble(bean, readDouble());
+		else if (acc instanceof BooleanAccessor)
+			((BooleanAccessor) acc).setBoolean(bean, readByte() != 0);
+		else if (acc instanceof StringAccessor)
+			acc.set(bean, readString());
+		else if (acc instanceof EnumAccessor)
+			acc.set(bean, readEnum(((EnumAccessor) acc).table));
+		else
+			acc.parse(bean, readString());
+	}
+	
+	/**
+	 * Reads a collection item, or an argument of an immutable bean, of a leaf type.
+	 */
+	private Object readValue(Class<?> type) throws IOException {
+		if (type == String.class)  return readString();
+		if (type == Double.class  || type == double.class)  return readDouble();
+		if (type == Float.class   || type == float.class)   return (float) readDouble();
+		if (type == Boolean.class || type == boolean.class) return readByte() != 0;
+		if (type == Integer.class || type == int.class)     return (int) readZigzag();
+		if (type == Long.class    || type == long.class)    return readZigzag();
+		if (type == Short.class   || type == short.class)   return (short) readZigzag();
+		if (type == Byte.class    || type == byte.class)    return (byte) readZigzag();
+		if (type.isEnum())                                  return readEnum(EnumTable.of(type));
+		throw new IOException("No binary representation for " + type);
+	}
+	
+	private Enum<?> readEnum(EnumTable table) throws IOException {
+		int ordinal = readCode();
+		try {
+			return table.get(ordinal);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+	
+	private String readString() throws IOException {
+		int index = readCode();
+		if (index != 0) {
+			if (index > strings.size())
+				throw new IOException("Unknown string reference " + index);
+			return strings.get(index - 1);
+		}
+		int len = readCode();
+		byte[] bytes;
+		if (len <= buf.length) {
+			ensure(len);
+			bytes = null;
+		} else {
+			// the length comes from the document, so the array only grows 
+			// with the bytes actually read
+			bytes = new byte[Math.min(len, buf.length * 8)];
+			int n = limit - pos;
+			System.arraycopy(buf, pos, bytes, 0, n);
+			pos = limit;
+			while (n < len) {
+				if (n == bytes.length)
+					bytes = Arrays.copyOf(bytes, (int) Math.min(len, bytes.length * 2L));
+				int r = in.read(bytes, n, bytes.length - n);
+				if (r < 0) throw new EOFException("String of " + len + " bytes ends after " + n);
+				n += r;
+			}
+		}
+		String s;
+		if (bytes == null) {
+			s = new String(buf, pos, len, StandardCharsets.UTF_8);
+			pos += len;
+		} else {
+			s = new String(bytes, StandardCharsets.UTF_8);
+		}
+		if (s.length() <= BinaryEncoder.MAX_TABLE_STRING && strings.size() < BinaryEncoder.MAX_TABLE_SIZE)
+			strings.add(s);
+		return s;
+	}
+	
+	private int readCode() throws IOException {
+		long v = readVarint();
+		if (v < 0 || v > Integer.MAX_VALUE)
+			throw new IOException("Code out of range " + v);
+		return (int) v;
+	}
+	
+	private long readZigzag() throws IOException {
+		long v = readVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	private double readDouble() throws IOException {
+		ensure(8);
+		long bits = 0;
+		for (int i = 0; i < 8; i++)
+			bits = (bits << 8) | (buf[pos++] & 0xFF);
+		return Double.longBitsToDouble(bits);
+	}
+	
+	private long readVarint() throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint");
+	}
+	
+	private int readByte() throws IOException {
+		ensure(1);
+		return buf[pos++];
+	}
+	
+	/**
+	 * Makes sure that at least <tt>len</tt> bytes are buffered.
+	 */
+	private void ensure(int len) throws IOException {
+		if (limit - pos >= len)
+			return;
+		System.arraycopy(buf, pos, buf, 0, limit - pos);
+		limit -= pos;
+		pos = 0;
+		while (limit < len) {
+			int r = in.read(buf, limit, buf.length - limit);
+			if (r < 0) throw new EOFException();
+			limit += r;
+		}
+	}
+}
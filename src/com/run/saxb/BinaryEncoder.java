@@ -0,0 +1,249 @@
+package com.run.saxb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.BooleanAccessor;
+import com.run.saxb.transducer.accessor.DoubleAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
+import com.run.saxb.transducer.accessor.IntegerAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.StringAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
+
+/**
+ * Writes a content tree in the {@link DataFormat#BINARY} format.
+ *
+ * <p>
+ * The encoding is informed by the {@link BeanInfo} model, so that
+ * only the data is written and never the names:
+ * <pre>
+ *   document := MAGIC varint(rootCode) body
+ *   body     := ( varint(propertyCode + 1) value )* varint(0)
+ *   value    := zigzag varint          for integral properties
+ *             | 8 bytes IEEE 754       for floating point properties
+ *             | 1 byte                 for boolean properties
+ *             | string                 for string properties
+ *             | varint(ordinal)        for enum properties
+ *             | body                   for bean properties
+ *             | varint(typeCode) body  for bean properties whose type has subtypes
+ *   string   := varint(0) varint(length) UTF-8 bytes   (first occurrence)
+ *             | varint(index + 1)                      (back reference)
+ * </pre>
+ * The root code is the index of the root in {@link SAXBContextImpl#roots} 
+ * and the property code is the index in {@link BeanInfo#accessors}, followed
+ * by the indexes in {@link BeanInfo#attributes}. Attribute properties come first,
+ * like they do in the XML form.
+ * Collection items are written as repeated occurrences of the same property,
+ * just like they are repeated elements in the XML form. 
+ *
+ * <p>
+ * Not thread-safe. A new encoder is used for each document, 
+ * since the string table is scoped to the document. The output buffer
+ * comes from the {@link BufferPool} of the context and goes back to it
+ * at the end of {@link #encode}.
+ */
+final class BinaryEncoder {
+	
+	static final byte[] MAGIC = { 'S', 'X', 'B', 1 };
+	
+	/**
+	 * Strings longer than this are never put in the string table,
+	 * as they are unlikely to repeat.
+	 */
+	static final int MAX_TABLE_STRING = 64;
+	
+	/**
+	 * Upper bound on the string table, so that the decoder memory is bounded too.
+	 */
+	static final int MAX_TABLE_SIZE = 4096;
+	
+	private final SAXBContextImpl grammar;
+	private final OutputStream out;
+	private final byte[] buf;
+	private int pos;
+	
+	private final Map<String, Integer> strings = new HashMap<>();
+	
+	BinaryEncoder(SAXBContextImpl grammar, OutputStream out) {
+		this.grammar = grammar;
+		this.out = out;
+		this.buf = grammar.bufferPool.acquireBytes(8192);
+	}
+	
+	void encode(BeanInfo<?> beanInfo, Object bean) throws IOException {
+		int code = -1;
+		for (int i = 0; i < grammar.roots.length; i++) {
+			if (grammar.roots[i] == beanInfo) {
+				code = i;
+				break;
+			}
+		}
+		if (code < 0)
+			throw new IOException(beanInfo.beanName + " is not a root element");
+		
+		try {
+			writeBytes(MAGIC, 0, MAGIC.length);
+			writeVarint(code);
+			writeBody(beanInfo, bean);
+			flush();
+		} finally {
+			grammar.bufferPool.releaseBytes(buf);
+		}
+	}
+	
+	private void writeBody(BeanInfo<?> beanInfo, Object bean) throws IOException {
+		Accessor[] accessors = beanInfo.accessors;
+		TextAccessor[] attributes = beanInfo.attributes;
+		for (int i = 0; i < attributes.length; i++) {
+			if (!attributes[i].hasValue(bean))
+				continue;
+			writeVarint(accessors.length + i + 1);
+			writeText(attributes[i], bean);
+		}
+		for (int i = 0; i < accessors.length; i++) {
+			Accessor acc = accessors[i];
+			if (acc instanceof TextAccessor) {
+				if (!((TextAccessor) acc).hasValue(bean))
+					continue;
+				writeVarint(i + 1);
+				writeText((TextAccessor) acc, bean);
+			} else if (acc instanceof BeanAccessor) {
+				Object child = acc.get(bean);
+				if (child == null)
+					continue;
+				writeVarint(i + 1);
+				writeChild(((BeanAccessor) acc).beanInfo, child);
+			} else if (acc instanceof ListAccessor) {
+				ListAccessor list = (ListAccessor) acc;
+				Collection<Object> items = list.getList(bean);
+				if (items == null)
+					continue;
+				for (Object item: items) {
+					if (item == null)
+						continue;
+					writeVarint(i + 1);
+					if (list.itemInfo != null)
+						writeChild(list.itemInfo, item);
+					else
+						writeValue(item);
+				}
+			}
+		}
+		writeVarint(0);
+	}
+	
+	/**
+	 * Writes a bean held by a property of the given declared type, 
+	 * after the code of its type if the declared type has subtypes.
+	 */
+	private void writeChild(BeanInfo<?> declared, Object bean) throws IOException {
+		if (declared.subtypes == null) {
+			writeBody(declared, bean);
+			return;
+		}
+		int code = declared.getTypeCode(bean);
+		writeVarint(code);
+		writeBody(declared.getType(code), bean);
+	}
+	
+	private void writeText(TextAccessor acc, Object bean) throws IOException {
+		if (acc instanceof IntegerAccessor)
+			writeZigzag(((IntegerAccessor) acc).getLong(bean));
+		else if (acc instanceof DoubleAccessor)
+			writeDouble(((DoubleAccessor) acc).getDouble(bean));
+		else if (acc instanceof BooleanAccessor)
+			writeByte(((BooleanAccessor) acc).getBoolean(bean) ? 1 : 0);
+		else if (acc instanceof StringAccessor)
+			writeString(((StringAccessor) acc).getString(bean));
+		else if (acc instanceof EnumAccessor)
+			writeVarint(((EnumAccessor) acc).getEnum(bean).ordinal());
+		else
+			writeString(acc.print(bean));
+	}
+	
+	/**
+	 * Writes a collection item of a leaf type.
+	 */
+	private void writeValue(Object value) throws IOException {
+		if (value instanceof String)
+			writeString((String) value);
+		else if (value instanceof Double || value instanceof Float)
+			writeDouble(((Number) value).doubleValue());
+		else if (value instanceof Number)
+			writeZigzag(((Number) value).longValue());
+		else if (value instanceof Boolean)
+			writeByte(((Boolean) value) ? 1 : 0);
+		else if (value instanceof Enum)
+			writeVarint(((Enum<?>) value).ordinal());
+		else
+			throw new IOException("No binary representation for " + value.getClass());
+	}
+	
+	private void writeString(String s) throws IOException {
+		Integer index = strings.get(s);
+		if (index != null) {
+			writeVarint(index + 1);
+			return;
+		}
+		if (s.length() <= MAX_TABLE_STRING && strings.size() < MAX_TABLE_SIZE)
+			strings.put(s, strings.size());
+		
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(0);
+		writeVarint(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+	}
+	
+	private void writeZigzag(long v) throws IOException {
+		writeVarint((v << 1) ^ (v >> 63));
+	}
+	
+	private void writeDouble(double d) throws IOException {
+		long bits = Double.doubleToLongBits(d);
+		ensure(8);
+		for (int shift = 56; shift >= 0; shift -= 8)
+			buf[pos++] = (byte) (bits >>> shift);
+	}
+	
+	private void writeVarint(long v) throws IOException {
+		ensure(10);
+		while ((v & ~0x7FL) != 0) {
+			buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte) v;
+	}
+	
+	private void writeByte(int b) throws IOException {
+		ensure(1);
+		buf[pos++] = (byte) b;
+	}
+	
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		if (len > buf.length) {
+			flush();
+			out.write(b, off, len);
+			return;
+		}
+		ensure(len);
+		System.arraycopy(b, off, buf, pos, len);
+		pos += len;
+	}
+	
+	private void ensure(int len) throws IOException {
+		if (pos + len > buf.length)
+			flush();
+	}
+	
+	private void flush() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+}
@@ -0,0 +1,48 @@
+package com.run.saxb;
+
+/**
+ * {@link InstancePool} that retains up to a fixed number of instances
+ * in an array, and drops the rest.
+ *
+ * <p>
+ * Thread-safe.
+ */
+public final class BoundedInstancePool<T> implements InstancePool<T> {
+	
+	private final Object[] instances;
+	private int size;
+	
+	/**
+	 * @param capacity
+	 *      Maximum number of instances retained, normally the number of beans 
+	 *      of the class in a document times the number of threads that unmarshal.
+	 */
+	public BoundedInstancePool(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity");
+		this.instances = new Object[capacity];
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized T acquire() {
+		if (size == 0)
+			return null;
+		T instance = (T) instances[--size];
+		instances[size] = null;
+		return instance;
+	}
+	
+	@Override
+	public synchronized void release(T instance) {
+		if (size < instances.length)
+			instances[size++] = instance;
+	}
+	
+	/**
+	 * Gets the number of instances in the pool.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
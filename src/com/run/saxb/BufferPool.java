@@ -0,0 +1,271 @@
+package com.run.saxb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable <tt>byte[]</tt> and <tt>char[]</tt> buffers, 
+ * shared by all the marshallers and unmarshallers of a {@link SAXBContextImpl}.
+ *
+ * <p>
+ * Buffers come in a fixed set of size classes. A request is served with a buffer
+ * of the smallest class that fits it, and requests larger than the largest class
+ * are allocated and dropped without pooling. Each class retains a bounded number 
+ * of free buffers, so the pool never holds on to more than 
+ * <tt>sum(sizeClasses) * maxRetained</tt> of each kind.
+ *
+ * <p>
+ * In debug mode, the pool remembers where each outstanding buffer was acquired, 
+ * so that buffers that are never released can be tracked down with {@link #getLeaks()}.
+ *
+ * <p>
+ * Thread-safe.
+ */
+public final class BufferPool {
+	
+	public static final int[] DEFAULT_SIZE_CLASSES = { 1024, 8192, 65536 };
+	
+	public static final int DEFAULT_MAX_RETAINED = 64;
+	
+	private final int[] sizeClasses;
+	private final int maxRetained;
+	
+	private final SizeClass<byte[]>[] bytes;
+	private final SizeClass<char[]>[] chars;
+	
+	private volatile boolean debug;
+	
+	/**
+	 * Outstanding buffers and where they were acquired. Only maintained in debug mode.
+	 */
+	private final Map<Object, Throwable> leases = new IdentityHashMap<>();
+	
+	/**
+	 * Number of buffers that were outstanding when debug mode was turned on.
+	 * Since they are not in {@link #leases}, that many buffers are released unchecked.
+	 */
+	private long untracked;
+	
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong released = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+	
+	public BufferPool() {
+		this(DEFAULT_SIZE_CLASSES, DEFAULT_MAX_RETAINED);
+	}
+	
+	/**
+	 * @param sizeClasses
+	 *      Buffer sizes, in ascending order.
+	 * @param maxRetained
+	 *      Maximum number of free buffers kept per size class and kind.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BufferPool(int[] sizeClasses, int maxRetained) {
+		if (sizeClasses.length == 0 || maxRetained < 0)
+			throw new IllegalArgumentException();
+		for (int i = 1; i < sizeClasses.length; i++) {
+			if (sizeClasses[i] <= sizeClasses[i - 1])
+				throw new IllegalArgumentException("Size classes must be ascending: " + Arrays.toString(sizeClasses));
+		}
+		this.sizeClasses = sizeClasses.clone();
+		this.maxRetained = maxRetained;
+		this.bytes = new SizeClass[sizeClasses.length];
+		this.chars = new SizeClass[sizeClasses.length];
+		for (int i = 0; i < sizeClasses.length; i++) {
+			bytes[i] = new SizeClass<>();
+			chars[i] = new SizeClass<>();
+		}
+	}
+	
+	public boolean isDebug() {
+		return debug;
+	}
+	
+	/**
+	 * Turns leak detection on or off. This makes every acquisition 
+	 * capture a stack trace, so it should be off in production.
+	 * The buffers that are outstanding when it's turned on are not tracked, 
+	 * and can still be released.
+	 */
+	public void setDebug(boolean debug) {
+		synchronized (leases) {
+			if (debug && !this.debug)
+				untracked = acquired.get() - released.get();
+			if (!debug)
+				leases.clear();
+			this.debug = debug;
+		}
+	}
+	
+	/**
+	 * Gets a byte buffer of at least the given length.
+	 * The content of the buffer is undefined.
+	 */
+	public byte[] acquireBytes(int minLength) {
+		int c = sizeClassOf(minLength);
+		byte[] buf = c < 0 ? null : bytes[c].poll();
+		if (buf == null)
+			buf = new byte[c < 0 ? minLength : sizeClasses[c]];
+		else
+			hits.incrementAndGet();
+		return onAcquire(buf);
+	}
+	
+	/**
+	 * Returns a buffer acquired by {@link #acquireBytes(int)} to the pool.
+	 * The caller must not use the buffer afterwards.
+	 */
+	public void releaseBytes(byte[] buf) {
+		onRelease(buf);
+		int c = Arrays.binarySearch(sizeClasses, buf.length);
+		if (c < 0 || !bytes[c].offer(buf, maxRetained))
+			discarded.incrementAndGet();
+	}
+	
+	/**
+	 * Gets a char buffer of at least the given length.
+	 * The content of the buffer is undefined.
+	 */
+	public char[] acquireChars(int minLength) {
+		int c = sizeClassOf(minLength);
+		char[] buf = c < 0 ? null : chars[c].poll();
+		if (buf == null)
+			buf = new char[c < 0 ? minLength : sizeClasses[c]];
+		else
+			hits.incrementAndGet();
+		return onAcquire(buf);
+	}
+	
+	/**
+	 * Returns a buffer acquired by {@link #acquireChars(int)} to the pool.
+	 * The caller must not use the buffer afterwards.
+	 */
+	public void releaseChars(char[] buf) {
+		onRelease(buf);
+		int c = Arrays.binarySearch(sizeClasses, buf.length);
+		if (c < 0 || !chars[c].offer(buf, maxRetained))
+			discarded.incrementAndGet();
+	}
+	
+	/**
+	 * Gets the allocation sites of the buffers that are currently acquired.
+	 * Always empty unless the pool is in debug mode.
+	 */
+	public List<Throwable> getLeaks() {
+		synchronized (leases) {
+			return new ArrayList<>(leases.values());
+		}
+	}
+	
+	public Statistics getStatistics() {
+		int retained = 0;
+		for (int i = 0; i < sizeClasses.length; i++)
+			retained += bytes[i].size.get() + chars[i].size.get();
+		return new Statistics(acquired.get(), hits.get(), released.get(), discarded.get(), retained);
+	}
+	
+	private int sizeClassOf(int length) {
+		for (int i = 0; i < sizeClasses.length; i++) {
+			if (sizeClasses[i] >= length)
+				return i;
+		}
+		return -1;
+	}
+	
+	private <T> T onAcquire(T buf) {
+		acquired.incrementAndGet();
+		if (debug) {
+			synchronized (leases) {
+				leases.put(buf, new Throwable("Buffer acquired here and never released"));
+			}
+		}
+		return buf;
+	}
+	
+	private void onRelease(Object buf) {
+		released.incrementAndGet();
+		if (debug) {
+			synchronized (leases) {
+				if (leases.remove(buf) == null && untracked-- <= 0) {
+					untracked = 0;
+					throw new IllegalStateException("Released a buffer that is not acquired from this pool");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Free list of a single size class.
+	 */
+	private static final class SizeClass<T> {
+		final Queue<T> free = new ConcurrentLinkedQueue<>();
+		final AtomicInteger size = new AtomicInteger();
+		
+		T poll() {
+			T buf = free.poll();
+			if (buf != null)
+				size.decrementAndGet();
+			return buf;
+		}
+		
+		boolean offer(T buf, int max) {
+			if (size.incrementAndGet() > max) {
+				size.decrementAndGet();
+				return false;
+			}
+			free.offer(buf);
+			return true;
+		}
+	}
+	
+	/**
+	 * Snapshot of the pool utilization.
+	 */
+	public static final class Statistics {
+		
+		/** Number of buffers handed out. */
+		public final long acquired;
+		/** Number of buffers handed out that were reused from the pool. */
+		public final long hits;
+		/** Number of buffers given back. */
+		public final long released;
+		/** Number of released buffers that were dropped because they didn't fit the pool. */
+		public final long discarded;
+		/** Number of free buffers currently kept by the pool. */
+		public final int retained;
+		
+		Statistics(long acquired, long hits, long released, long discarded, int retained) {
+			this.acquired = acquired;
+			this.hits = hits;
+			this.released = released;
+			this.discarded = discarded;
+			this.retained = retained;
+		}
+		
+		/**
+		 * Number of buffers that are acquired and not released yet.
+		 */
+		public long getOutstanding() {
+			return acquired - released;
+		}
+		
+		public double getHitRatio() {
+			return acquired == 0 ? 0 : (double) hits / acquired;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("acquired=%d hits=%d (%.1f%%) released=%d discarded=%d outstanding=%d retained=%d",
+					acquired, hits, 100 * getHitRatio(), released, discarded, getOutstanding(), retained);
+		}
+	}
+}
@@ -1,10 +1,15 @@
 package com.run.saxb;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -158,4 +163,80 @@ public class ClassFactory {
         exp.initCause(errorMsg);
         throw exp;
     }
-}
\ No newline at end of file
+
+    /**
+     * Finds how to create instances of a class that has no default constructor,
+     * such as a record or an immutable value class, from the values of all its
+     * fields: a constructor that takes the given parameter types, or else a static 
+     * factory method of the class that does.
+     *
+     * @return
+     *      a handle that takes the arguments as an <tt>Object[]</tt> and returns 
+     *      the new instance, or null if the class has a default constructor, 
+     *      or neither a matching constructor nor factory method.
+     */
+    public static MethodHandle getCreator(Class<?> clazz, Class<?>[] parameterTypes) {
+        try {
+            clazz.getDeclaredConstructor(emptyClass);
+            return null;
+        } catch (NoSuchMethodException e) {
+            // expected for immutable classes
+        }
+        MethodHandle creator = null;
+        try {
+            Constructor<?> cons = clazz.getDeclaredConstructor(parameterTypes);
+            makeAccessible(cons, cons.getModifiers(), clazz);
+            creator = MethodHandles.lookup().unreflectConstructor(cons);
+        } catch (NoSuchMethodException e) {
+            for (Method m: clazz.getDeclaredMethods()) {
+                if (Modifier.isStatic(m.getModifiers()) && m.getReturnType() == clazz 
+                        && Arrays.equals(m.getParameterTypes(), parameterTypes)) {
+                    makeAccessible(m, m.getModifiers(), clazz);
+                    try {
+                        creator = MethodHandles.lookup().unreflect(m);
+                    } catch (IllegalAccessException iae) {
+                        System.out.println("Unable to access the factory method " + m + iae);
+                        throw new IllegalAccessError(iae.toString());
+                    }
+                    break;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            System.out.println("Unable to access the constructor of " + clazz + e);
+            throw new IllegalAccessError(e.toString());
+        }
+        if (creator == null)
+            return null;
+        return creator.asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    private static void makeAccessible(AccessibleObject member, int modifiers, Class<?> clazz) {
+        if (!Modifier.isPublic(clazz.getModifiers()) || !Modifier.isPublic(modifiers)) {
+            try {
+                member.setAccessible(true);
+            } catch (SecurityException e) {
+                System.out.println("Unable to make " + member + " accessible " + e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance with a handle from {@link #getCreator}.
+     *
+     * @param args
+     *      The values of the fields. The array can be reused afterwards.
+     */
+    public static Object create(MethodHandle creator, Object[] args) {
+        try {
+            return (Object) creator.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            // most likely an error on the user's code.
+            // just let it through for the ease of debugging
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
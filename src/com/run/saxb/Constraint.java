@@ -0,0 +1,118 @@
+package com.run.saxb;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * The constraints of a property, derived from its annotations once
+ * per {@link BeanInfo}, and checked by a validating unmarshaller
+ * as the property is bound.
+ *
+ * <p>
+ * Immutable and thread-safe.
+ *
+ * @see Facets
+ */
+final class Constraint {
+
+	final int minOccurs;
+	final int maxOccurs;
+
+	private final double minInclusive;
+	private final double maxInclusive;
+	private final int minLength;
+	private final int maxLength;
+
+	/**
+	 * The allowed values, sorted. Null if any value is allowed.
+	 */
+	private final String[] enumeration;
+
+	/**
+	 * True if there's a facet on the value, other than the occurrences.
+	 */
+	final boolean checksValue;
+
+	private Constraint(int minOccurs, int maxOccurs, Facets facets) {
+		this.minOccurs = minOccurs;
+		this.maxOccurs = maxOccurs;
+		if (facets == null) {
+			this.minInclusive = Double.NEGATIVE_INFINITY;
+			this.maxInclusive = Double.POSITIVE_INFINITY;
+			this.minLength = 0;
+			this.maxLength = Integer.MAX_VALUE;
+			this.enumeration = null;
+		} else {
+			this.minInclusive = facets.minInclusive();
+			this.maxInclusive = facets.maxInclusive();
+			this.minLength = facets.minLength();
+			this.maxLength = facets.maxLength();
+			if (facets.enumeration().length == 0) {
+				this.enumeration = null;
+			} else {
+				this.enumeration = facets.enumeration().clone();
+				Arrays.sort(enumeration);
+			}
+		}
+		this.checksValue = minInclusive != Double.NEGATIVE_INFINITY || maxInclusive != Double.POSITIVE_INFINITY
+				|| minLength > 0 || maxLength != Integer.MAX_VALUE || enumeration != null;
+	}
+
+	/**
+	 * Creates the constraint of an element property.
+	 *
+	 * @param repeated
+	 *      true for a collection property, which can occur more than once.
+	 */
+	static Constraint forElement(Field f, boolean repeated) {
+		Facets facets = f.getAnnotation(Facets.class);
+		XmlElement xe = f.getAnnotation(XmlElement.class);
+		int minOccurs = facets != null ? facets.minOccurs() : 0;
+		if (xe != null && xe.required())
+			minOccurs = Math.max(minOccurs, 1);
+		int maxOccurs = !repeated ? 1 : facets != null ? facets.maxOccurs() : Integer.MAX_VALUE;
+		return new Constraint(minOccurs, maxOccurs, facets);
+	}
+
+	/**
+	 * Creates the constraint of an attribute property.
+	 */
+	static Constraint forAttribute(Field f) {
+		Facets facets = f.getAnnotation(Facets.class);
+		XmlAttribute xa = f.getAnnotation(XmlAttribute.class);
+		int minOccurs = facets != null ? Math.min(facets.minOccurs(), 1) : 0;
+		if (xa != null && xa.required())
+			minOccurs = 1;
+		return new Constraint(minOccurs, 1, facets);
+	}
+
+	/**
+	 * Checks a value against the facets.
+	 *
+	 * @return
+	 *      a message that describes the violation, or null if the value is valid.
+	 */
+	String checkValue(String lexical) {
+		if (!checksValue)
+			return null;
+		if (enumeration != null && Arrays.binarySearch(enumeration, lexical) < 0)
+			return "value '" + lexical + "' is not one of " + Arrays.toString(enumeration);
+		int length = lexical.length();
+		if (length < minLength || length > maxLength)
+			return "length of value '" + lexical + "' is not in [" + minLength + ", " + maxLength + "]";
+		if (minInclusive != Double.NEGATIVE_INFINITY || maxInclusive != Double.POSITIVE_INFINITY) {
+			double value;
+			try {
+				value = Double.parseDouble(lexical.trim());
+			} catch (NumberFormatException e) {
+				return "value '" + lexical + "' is not a number";
+			}
+			if (!(value >= minInclusive && value <= maxInclusive))
+				return "value '" + lexical + "' is not in [" + minInclusive + ", " + maxInclusive + "]";
+		}
+		return null;
+	}
+}
@@ -0,0 +1,382 @@
+package com.run.saxb;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBException;
+
+/**
+ * The contexts created from context paths, kept so that creating the context
+ * of the same packages again doesn't scan the packages and build the context again.
+ *
+ * <p>
+ * The contexts are keyed by the context path and by the class loader the
+ * packages are scanned with, so that the model packages of several applications,
+ * or tenants, each have their own contexts. When several threads ask for a context
+ * that isn't built yet, only one of them builds it and the others wait for it.
+ * A context that could not be built is not kept, so the next call tries again.
+ *
+ * <p>
+ * The cache is bounded in number of contexts, and drops the contexts that were used
+ * the least recently first. The class loaders are only weakly referenced by the keys.
+ * Since a context refers to its classes, and so to their class loader, the contexts
+ * are only softly referenced: once an application is undeployed and its contexts are
+ * no longer used, the collector can clear them and unload the class loader, whose
+ * entries are then dropped. {@link #clear(ClassLoader)} drops them right away.
+ * A context that was cleared is built again the next time it's asked for.
+ *
+ * <p>
+ * The contexts are shared by all the callers of the same context path: the settings
+ * of a context, like its instance pools, apply to all of them. A context created with
+ * {@link SAXBContextImpl#SAXBContextImpl(java.util.List)} is never cached,
+ * and {@link #setEnabled(boolean)} turns the cache off for callers that need
+ * a context of their own from every call.
+ *
+ * <p>
+ * Thread-safe.
+ *
+ * @see SAXBContext#newInstance(String, ClassLoader)
+ * @see SAXBContext#getContextCache()
+ */
+public final class ContextCache {
+
+	/**
+	 * Key of a context: the class loader, by identity, and the context path.
+	 */
+	private static final class Key {
+		final WeakReference<ClassLoader> ref;
+		/** The class loader of the probe, which is strongly referenced. */
+		ClassLoader loader;
+		String contextPath;
+		int hash;
+
+		/**
+		 * Creates the probe.
+		 */
+		Key() {
+			this.ref = null;
+		}
+
+		Key(Key probe) {
+			this.ref = new WeakReference<>(probe.loader);
+			this.contextPath = probe.contextPath;
+			this.hash = probe.hash;
+		}
+
+		void set(ClassLoader loader, String contextPath) {
+			this.loader = loader;
+			this.contextPath = contextPath;
+			this.hash = loader == null ? 0 : System.identityHashCode(loader) * 31 + contextPath.hashCode();
+		}
+
+		ClassLoader getLoader() {
+			return ref != null ? ref.get() : loader;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			ClassLoader loader = getLoader();
+			return loader != null && k.getLoader() == loader && k.contextPath.equals(contextPath);
+		}
+	}
+
+	/**
+	 * A context, while it's built and once it is.
+	 */
+	private static final class CachedContext {
+		final Key key;
+		private boolean done;
+		private SoftReference<SAXBContext> context;
+		private JAXBException failure;
+
+		CachedContext(Key key) {
+			this.key = key;
+		}
+
+		synchronized void set(SAXBContext context) {
+			this.context = new SoftReference<>(context);
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized void fail(JAXBException failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized boolean isPending() {
+			return !done;
+		}
+
+		/**
+		 * @return null if the context isn't built, or could not be, or was cleared.
+		 */
+		synchronized SAXBContext peek() {
+			return context != null ? context.get() : null;
+		}
+
+		/**
+		 * Waits for the context to be built.
+		 *
+		 * @return null if the context was cleared since.
+		 */
+		synchronized SAXBContext await() throws JAXBException {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure != null)
+				throw new JAXBException(failure.getMessage(), failure);
+			return context.get();
+		}
+	}
+
+	private int maxEntries;
+
+	private volatile boolean enabled = true;
+
+	/**
+	 * In access order, the least recently used first.
+	 */
+	private final LinkedHashMap<Key, CachedContext> entries = new LinkedHashMap<Key, CachedContext>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CachedContext> eldest) {
+			if (size() <= maxEntries)
+				return false;
+			evictions++;
+			return true;
+		}
+	};
+
+	/**
+	 * Reused to look up a context.
+	 */
+	private final Key probe = new Key();
+
+	private long hits;
+	private long misses;
+	private long waits;
+	private long evictions;
+
+	/**
+	 * @param maxEntries
+	 *      Maximum number of contexts retained.
+	 */
+	public ContextCache(int maxEntries) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries");
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Gets the context of a context path, and builds it if it's not in the cache.
+	 *
+	 * @param contextPath
+	 *      List of colon (':', \u003A) separated java package names.
+	 * @param classLoader
+	 *      The class loader to scan the packages with.
+	 *
+	 * @throws JAXBException
+	 *      If the context could not be built, by this thread
+	 *      or by the one this thread waited for.
+	 */
+	public SAXBContext get(String contextPath, ClassLoader classLoader) throws JAXBException {
+		if (contextPath == null || classLoader == null)
+			throw new NullPointerException();
+		if (!enabled) {
+			synchronized (this) {
+				misses++;
+			}
+			return ContextFinder.build(contextPath, classLoader);
+		}
+		for (;;) {
+			CachedContext entry;
+			boolean owner = false;
+			synchronized (this) {
+				probe.set(classLoader, contextPath);
+				entry = entries.get(probe);
+				probe.set(null, null);
+				if (entry != null) {
+					SAXBContext context = entry.peek();
+					if (context != null) {
+						hits++;
+						return context;
+					}
+					if (entry.isPending()) {
+						waits++;
+					} else {
+						entries.remove(entry.key);
+						entry = null;
+					}
+				}
+				if (entry == null) {
+					expunge();
+					probe.set(classLoader, contextPath);
+					entry = new CachedContext(new Key(probe));
+					probe.set(null, null);
+					entries.put(entry.key, entry);
+					misses++;
+					owner = true;
+				}
+			}
+			if (owner)
+				return build(entry, contextPath, classLoader);
+			SAXBContext context = entry.await();
+			if (context != null)
+				return context;
+		}
+	}
+
+	/**
+	 * Builds the context of an entry that was just added, out of the lock
+	 * of the cache, and hands it to the threads that wait for it.
+	 */
+	private SAXBContext build(CachedContext entry, String contextPath, ClassLoader classLoader) throws JAXBException {
+		JAXBException failure = null;
+		try {
+			SAXBContext context = ContextFinder.build(contextPath, classLoader);
+			entry.set(context);
+			return context;
+		} catch (JAXBException e) {
+			throw failure = e;
+		} catch (RuntimeException e) {
+			failure = new JAXBException(e.getMessage(), e);
+			throw e;
+		} catch (Error e) {
+			failure = new JAXBException(e.getMessage(), e);
+			throw e;
+		} finally {
+			if (failure != null) {
+				entry.fail(failure);
+				synchronized (this) {
+					if (entries.get(entry.key) == entry)
+						entries.remove(entry.key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the entries whose class loader was collected,
+	 * or whose context could not be built or was cleared.
+	 */
+	private void expunge() {
+		for (Iterator<CachedContext> it = entries.values().iterator(); it.hasNext(); ) {
+			CachedContext entry = it.next();
+			if (entry.key.getLoader() == null || !entry.isPending() && entry.peek() == null)
+				it.remove();
+		}
+	}
+
+	/**
+	 * Changes the maximum number of contexts retained, and drops the least
+	 * recently used contexts if there are more.
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries");
+		this.maxEntries = maxEntries;
+		for (Iterator<CachedContext> it = entries.values().iterator(); entries.size() > maxEntries; ) {
+			it.next();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns the cache on or off. It is on by default. When it's off, every call
+	 * builds a new context, and the contexts that were kept are dropped.
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled)
+			entries.clear();
+	}
+
+	/**
+	 * Drops the contexts of a class loader, such as the one of an application
+	 * that is undeployed.
+	 */
+	public synchronized void clear(ClassLoader classLoader) {
+		for (Iterator<CachedContext> it = entries.values().iterator(); it.hasNext(); ) {
+			if (it.next().key.getLoader() == classLoader)
+				it.remove();
+		}
+	}
+
+	/**
+	 * Drops all the contexts. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized Statistics getStatistics() {
+		expunge();
+		return new Statistics(hits, misses, waits, evictions, entries.size());
+	}
+
+	/**
+	 * Counters of a {@link ContextCache}, taken at one point in time.
+	 */
+	public static final class Statistics {
+
+		/** Number of contexts found in the cache. */
+		public final long hits;
+		/** Number of contexts that had to be built. */
+		public final long misses;
+		/** Number of times a thread waited for a context that another thread was building. */
+		public final long waits;
+		/** Number of contexts dropped to stay within the bound. */
+		public final long evictions;
+		/** Number of contexts currently kept. */
+		public final int entries;
+
+		Statistics(long hits, long misses, long waits, long evictions, int entries) {
+			this.hits = hits;
+			this.misses = misses;
+			this.waits = waits;
+			this.evictions = evictions;
+			this.entries = entries;
+		}
+
+		public double getHitRatio() {
+			long lookups = hits + misses + waits;
+			return lookups == 0 ? 0 : (double) (hits + waits) / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d (%.1f%%) misses=%d waits=%d evictions=%d entries=%d",
+					hits, 100 * getHitRatio(), misses, waits, evictions, entries);
+		}
+	}
+}
@@ -12,7 +12,23 @@ import javax.xml.bind.JAXBException;
 
 public class ContextFinder {
 
-	static SAXBContext find(String contextPath) throws JAXBException {
+	/**
+	 * The contexts created by {@link SAXBContext#newInstance}.
+	 */
+	static final ContextCache cache = new ContextCache(64);
+
+	static SAXBContext find(String contextPath, ClassLoader classLoader) throws JAXBException {
+		if (contextPath == null)
+			throw new JAXBException("ContextFinder.NoPackageInContextPath");
+		if (classLoader == null)
+			classLoader = ClassLoader.getSystemClassLoader();
+		return cache.get(contextPath, classLoader);
+	}
+
+	/**
+	 * Scans the packages of a context path and builds their context.
+	 */
+	static SAXBContext build(String contextPath, ClassLoader classLoader) throws JAXBException {
 		
 		final List<Class<?>> classList = new ArrayList<>();
 		
@@ -25,9 +41,9 @@ public class ContextFinder {
 
         while(packages.hasMoreTokens()) {
         	
-            String packageName = packages.nextToken(":").replace('.','/');
+            String packageName = packages.nextToken(":");
             
-            List<Class<?>> classes = scan(packageName);
+            List<Class<?>> classes = scan(packageName, classLoader);
             classList.addAll(classes);
             //throw new JAXBException("ContextFinder.MissingProperty");
         }
@@ -96,8 +112,12 @@ public class ContextFinder {
     private static final String CLASS_FILE_SUFFIX = ".class";
 
     public static List<Class<?>> scan(String scannedPackage) {
+        return scan(scannedPackage, Thread.currentThread().getContextClassLoader());
+    }
+
+    public static List<Class<?>> scan(String scannedPackage, ClassLoader classLoader) {
         String scannedPath = scannedPackage.replace(PKG_SEPARATOR, File.separator);
-        URL scannedUrl = Thread.currentThread().getContextClassLoader().getResource(scannedPath);
+        URL scannedUrl = classLoader.getResource(scannedPath);
         if (scannedUrl == null) {
             throw new IllegalArgumentException(
             		String.format("Unable to get resources from path '%s'. Are you sure the package '%s' exists?", 
@@ -107,23 +127,23 @@ public class ContextFinder {
         File scannedDir = new File(scannedUrl.getFile());
         List<Class<?>> classes = new ArrayList<>();
         for (File file : scannedDir.listFiles()) {
-            classes.addAll(scan(file, scannedPackage));
+            classes.addAll(scan(file, scannedPackage, classLoader));
         }
         return classes;
     }
 
-    private static List<Class<?>> scan(File file, String scannedPackage) {
+    private static List<Class<?>> scan(File file, String scannedPackage, ClassLoader classLoader) {
         List<Class<?>> classes = new ArrayList<>();
         String resource = scannedPackage + PKG_SEPARATOR + file.getName();
         if (file.isDirectory()) {
             for (File child : file.listFiles()) {
-                classes.addAll(scan(child, resource));
+                classes.addAll(scan(child, resource, classLoader));
             }
         } else if (resource.endsWith(CLASS_FILE_SUFFIX)) {
             int endIndex = resource.length() - CLASS_FILE_SUFFIX.length();
             String className = resource.substring(0, endIndex);
             try {
-                classes.add(Class.forName(className));
+                classes.add(Class.forName(className, true, classLoader));
             } catch (ClassNotFoundException ignore) {}
         }
         return classes;
@@ -0,0 +1,143 @@
+package com.run.saxb;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Visits a DOM tree and sends its events to an {@link XmlVisitor},
+ * so that a DOM is bound by the same code as a stream.
+ *
+ * <p>
+ * The tree is walked with <tt>getFirstChild</tt> and <tt>getNextSibling</tt>,
+ * without recursion and without the <tt>NodeList</tt>s of <tt>getChildNodes</tt>,
+ * whose <tt>item(i)</tt> is not constant time in all the DOM implementations.
+ * A single {@link TagName}, attribute list and text buffer are reused for
+ * all the elements.
+ *
+ * <p>
+ * Nodes of a DOM that wasn't built with namespace awareness have no local name.
+ * Their node name is used instead, in no namespace.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class DOMScanner {
+
+	private final XmlVisitor next;
+	private final TagName tagName = new TagName();
+	private final AttributesImpl atts = new AttributesImpl();
+	private char[] buf = new char[256];
+
+	DOMScanner(XmlVisitor next) {
+		this.next = next;
+	}
+
+	/**
+	 * Sends the events of a document or of an element and its content.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the node is neither a document nor an element.
+	 */
+	void scan(Node node) throws SAXException {
+		Node root;
+		if (node.getNodeType() == Node.ELEMENT_NODE)
+			root = node;
+		else if (node.getNodeType() == Node.DOCUMENT_NODE)
+			root = ((Document) node).getDocumentElement();
+		else
+			throw new IllegalArgumentException("Unexpected node type: " + node);
+
+		next.startDocument(null);
+		startElement(root);
+		Node parent = root;
+		Node n = root.getFirstChild();
+		while (true) {
+			if (n == null) {
+				// all the children of the parent are visited.
+				// the content of entity references is visited in place
+				if (parent.getNodeType() == Node.ELEMENT_NODE)
+					endElement(parent);
+				if (parent == root)
+					break;
+				n = parent.getNextSibling();
+				parent = parent.getParentNode();
+				continue;
+			}
+			switch (n.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				startElement(n);
+				parent = n;
+				n = n.getFirstChild();
+				continue;
+			case Node.ENTITY_REFERENCE_NODE:
+				parent = n;
+				n = n.getFirstChild();
+				continue;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				text(n.getNodeValue());
+				break;
+			default:
+				// comments and processing instructions
+				break;
+			}
+			n = n.getNextSibling();
+		}
+		next.endDocument();
+	}
+
+	private void startElement(Node e) throws SAXException {
+		atts.clear();
+		NamedNodeMap map = e.getAttributes();
+		for (int i = 0, len = map.getLength(); i < len; i++) {
+			Node a = map.item(i);
+			String qname = a.getNodeName();
+			String uri = a.getNamespaceURI();
+			if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(uri)
+					|| uri == null && (qname.equals("xmlns") || qname.startsWith("xmlns:")))
+				continue;
+			atts.addAttribute(uri == null ? "" : uri, getLocalName(a), qname, "CDATA", a.getNodeValue());
+		}
+		setName(e);
+		tagName.atts = atts;
+		next.startElement(tagName);
+	}
+
+	private void endElement(Node e) throws SAXException {
+		setName(e);
+		tagName.atts = null;
+		next.endElement(tagName);
+	}
+
+	private void setName(Node e) {
+		String uri = e.getNamespaceURI();
+		tagName.uri = uri == null ? "" : uri;
+		tagName.local = getLocalName(e);
+		tagName.qname = e.getNodeName();
+		tagName.prefix = null;
+	}
+
+	private void text(String value) throws SAXException {
+		int len = value.length();
+		if (len == 0)
+			return;
+		if (buf.length < len)
+			buf = new char[Math.max(len, buf.length * 2)];
+		value.getChars(0, len, buf, 0);
+		next.text(buf, 0, len);
+	}
+
+	/**
+	 * Gets the local name of a node,
+	 * whether or not it was parsed with namespace awareness.
+	 */
+	private static String getLocalName(Node node) {
+		String local = node.getLocalName();
+		return local != null ? local : node.getNodeName();
+	}
+}
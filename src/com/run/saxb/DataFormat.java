@@ -0,0 +1,40 @@
+package com.run.saxb;
+
+/**
+ * The data formats that a {@link Marshaller} can write 
+ * and an {@link Unmarshaller} can read.
+ */
+public enum DataFormat {
+	
+	/**
+	 * Textual XML. This is the default.
+	 */
+	XML,
+	
+	/**
+	 * Compact, schema-informed binary encoding of the same content.
+	 * 
+	 * <p>
+	 * Element names are replaced by tag codes derived from the {@link BeanInfo}
+	 * model, numbers are written as varints and repeated strings are
+	 * written once and referred to by index afterwards.
+	 * Both ends must use a context built from the same classes.
+	 * 
+	 * @see BinaryEncoder
+	 */
+	BINARY,
+	
+	/**
+	 * JSON text of the same content, in UTF-8 for streams and files.
+	 *
+	 * <p>
+	 * Beans are objects, collections are arrays, and attributes are members 
+	 * whose names start with <tt>@</tt>. Names are the local names of the
+	 * XML form, so the namespaces of the elements are not kept.
+	 * The same {@link BeanInfo} model drives it, so there is no second
+	 * introspection and no conversion from XML.
+	 *
+	 * @see JsonEncoder
+	 */
+	JSON
+}
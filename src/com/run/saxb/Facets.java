@@ -0,0 +1,72 @@
+package com.run.saxb;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts the values of a property, like the facets of a schema type.
+ *
+ * <p>
+ * The facets are only checked by an {@link Unmarshaller} in validating mode.
+ * The default of every facet is no restriction. A property is also required
+ * when its {@link javax.xml.bind.annotation.XmlElement} or
+ * {@link javax.xml.bind.annotation.XmlAttribute} annotation says so.
+ *
+ * <p>
+ * <b>Usage: </b>
+ * <pre>
+ *     &#64;Facets(minOccurs = 1, maxOccurs = 100)
+ *     List&lt;Line&gt; lines;
+ *
+ *     &#64;Facets(minInclusive = 1, maxInclusive = 999)
+ *     int quantity;
+ *
+ *     &#64;Facets(enumeration = { "EUR", "USD" })
+ *     &#64;XmlAttribute
+ *     String currency;
+ * </pre>
+ *
+ * @see Unmarshaller#setValidating(boolean)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Facets {
+
+	/**
+	 * Minimum number of occurrences. Any value above 0 makes the property required.
+	 */
+	int minOccurs() default 0;
+
+	/**
+	 * Maximum number of occurrences of a collection property.
+	 * Other properties occur once at most.
+	 */
+	int maxOccurs() default Integer.MAX_VALUE;
+
+	/**
+	 * Lower bound of a numeric value, inclusive.
+	 */
+	double minInclusive() default Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Upper bound of a numeric value, inclusive.
+	 */
+	double maxInclusive() default Double.POSITIVE_INFINITY;
+
+	/**
+	 * Minimum length of a value, in characters.
+	 */
+	int minLength() default 0;
+
+	/**
+	 * Maximum length of a value, in characters.
+	 */
+	int maxLength() default Integer.MAX_VALUE;
+
+	/**
+	 * The allowed values, in their lexical form. Empty allows any value.
+	 */
+	String[] enumeration() default {};
+}
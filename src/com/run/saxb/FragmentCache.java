@@ -0,0 +1,131 @@
+package com.run.saxb;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The elements written for the versioned beans of the last marshallings,
+ * by bean identity, for incremental marshalling.
+ *
+ * <p>
+ * A {@link Fragment} is the text of the element of a bean, marshalled when the bean
+ * had a certain {@link Version}. It also records the versioned beans that were
+ * marshalled inside of it, the nearest ones only, with their versions at the time.
+ * The fragment can be written again as long as none of these versions changed,
+ * and the same holds for the fragments of the nested beans, recursively.
+ *
+ * <p>
+ * Fragments that were not used by a marshalling are dropped from time to time,
+ * so that the cache only holds on to the beans of the current content tree.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class FragmentCache {
+
+	static final class Fragment {
+		final Name name;
+		final long version;
+		final char[] text;
+		final Object[] children;
+		final BeanInfo<?>[] childInfos;
+		final long[] childVersions;
+		private int generation;
+
+		Fragment(Name name, long version, char[] text, Object[] children, BeanInfo<?>[] childInfos, long[] childVersions) {
+			this.name = name;
+			this.version = version;
+			this.text = text;
+			this.children = children;
+			this.childInfos = childInfos;
+			this.childVersions = childVersions;
+		}
+	}
+
+	private static final Object[] NO_CHILDREN = new Object[0];
+	private static final BeanInfo<?>[] NO_CHILD_INFOS = new BeanInfo<?>[0];
+	private static final long[] NO_CHILD_VERSIONS = new long[0];
+
+	private final Map<Object, Fragment> fragments = new IdentityHashMap<>();
+
+	/**
+	 * Incremented by each marshalling. Fragments that are used are tagged with it.
+	 */
+	private int generation;
+	private int used;
+
+	/**
+	 * Starts a marshalling.
+	 */
+	void begin() {
+		generation++;
+		used = 0;
+	}
+
+	/**
+	 * Ends a marshalling, and drops the fragments that are not used anymore
+	 * once they make up half of the cache.
+	 */
+	void end() {
+		if (fragments.size() <= used * 2 + 64)
+			return;
+		for (Iterator<Fragment> it = fragments.values().iterator(); it.hasNext(); ) {
+			if (it.next().generation != generation)
+				it.remove();
+		}
+	}
+
+	/**
+	 * Gets the fragment of a bean if it can be written again as the element
+	 * of the given name, and marks it and its nested fragments as used.
+	 *
+	 * @return null if the bean has to be marshalled again.
+	 */
+	Fragment get(Object bean, Name name, long version) {
+		Fragment f = fragments.get(bean);
+		if (f == null || f.name != name || !isValid(f, version))
+			return null;
+		return f;
+	}
+
+	private boolean isValid(Fragment f, long version) {
+		if (f.version != version)
+			return false;
+		for (int i = 0; i < f.children.length; i++) {
+			Object child = f.children[i];
+			Fragment cf = fragments.get(child);
+			long v = f.childVersions[i];
+			if (cf == null || f.childInfos[i].getVersion(child) != v || !isValid(cf, v))
+				return false;
+		}
+		if (f.generation != generation) {
+			f.generation = generation;
+			used++;
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the text of the element of a bean.
+	 *
+	 * @param children
+	 *      The nearest versioned beans in the element, with their
+	 *      {@link BeanInfo}s and versions at the same index.
+	 */
+	Fragment put(Object bean, Name name, long version, char[] text,
+			List<Object> children, List<BeanInfo<?>> childInfos, long[] childVersions) {
+		Fragment f;
+		if (children.isEmpty()) {
+			f = new Fragment(name, version, text, NO_CHILDREN, NO_CHILD_INFOS, NO_CHILD_VERSIONS);
+		} else {
+			f = new Fragment(name, version, text, children.toArray(),
+					childInfos.toArray(new BeanInfo<?>[childInfos.size()]), childVersions);
+		}
+		f.generation = generation;
+		used++;
+		fragments.put(bean, f);
+		return f;
+	}
+}
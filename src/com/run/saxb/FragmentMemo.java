@@ -0,0 +1,187 @@
+package com.run.saxb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The elements written for the beans of an immutable class, kept so that
+ * the next time the same bean is marshalled its element is copied as is.
+ *
+ * <p>
+ * A memo is installed per class with {@link SAXBContextImpl#setFragmentMemo}, and is
+ * meant for reference data that is repeated throughout the documents: currencies,
+ * countries, units and the like. The beans are matched either by identity, which
+ * suits a fixed set of constants, or by {@link Object#equals}, which suits values
+ * that are created over and over with the same content. A bean written under several
+ * element names has a fragment for each.
+ *
+ * <p>
+ * The memo is bounded both in number of fragments and in characters, and drops
+ * the fragments that were used the least recently first. It counts its hits, misses
+ * and evictions, so that the bounds can be tuned from {@link #getStatistics()}.
+ *
+ * <p>
+ * The beans, and whatever they refer to, must not change once they are marshalled.
+ * Only the marshalling to text outputs, without references, goes through the memo.
+ *
+ * <p>
+ * Thread-safe. A memo can be shared by the marshallers of a context.
+ */
+public final class FragmentMemo {
+
+	/**
+	 * Key of a fragment: the bean, by identity or by value, and the element name.
+	 */
+	private static final class Key {
+		final boolean byValue;
+		Object bean;
+		Name name;
+
+		Key(boolean byValue, Object bean, Name name) {
+			this.byValue = byValue;
+			this.bean = bean;
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = byValue ? bean.hashCode() : System.identityHashCode(bean);
+			return h * 31 + System.identityHashCode(name);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return k.name == name && (k.bean == bean || byValue && bean.equals(k.bean));
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxChars;
+	private final boolean byValue;
+
+	/**
+	 * In access order, the least recently used first.
+	 */
+	private final LinkedHashMap<Key, char[]> fragments = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Reused to look up a fragment.
+	 */
+	private final Key probe;
+
+	private long chars;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxEntries
+	 *      Maximum number of fragments retained.
+	 * @param maxChars
+	 *      Maximum number of characters retained in all the fragments.
+	 * @param byValue
+	 *      true to match the beans with {@link Object#equals} and {@link Object#hashCode},
+	 *      false to match them by identity.
+	 */
+	public FragmentMemo(int maxEntries, long maxChars, boolean byValue) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries");
+		if (maxChars <= 0)
+			throw new IllegalArgumentException("maxChars");
+		this.maxEntries = maxEntries;
+		this.maxChars = maxChars;
+		this.byValue = byValue;
+		this.probe = new Key(byValue, null, null);
+	}
+
+	/**
+	 * Gets the text of the element of a bean.
+	 *
+	 * @return null if the bean wasn't marshalled under that name, or was dropped since.
+	 */
+	synchronized char[] get(Object bean, Name name) {
+		probe.bean = bean;
+		probe.name = name;
+		char[] text = fragments.get(probe);
+		probe.bean = null;
+		probe.name = null;
+		if (text == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return text;
+	}
+
+	/**
+	 * Keeps the text of the element of a bean, and drops the least recently used
+	 * fragments if the memo is full. A fragment that is larger than the memo is not kept.
+	 */
+	synchronized void put(Object bean, Name name, char[] text) {
+		if (text.length > maxChars)
+			return;
+		char[] old = fragments.put(new Key(byValue, bean, name), text);
+		if (old != null)
+			chars -= old.length;
+		chars += text.length;
+		if (fragments.size() <= maxEntries && chars <= maxChars)
+			return;
+		for (Iterator<char[]> it = fragments.values().iterator();
+				fragments.size() > maxEntries || chars > maxChars; ) {
+			chars -= it.next().length;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Drops all the fragments. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		fragments.clear();
+		chars = 0;
+	}
+
+	public synchronized Statistics getStatistics() {
+		return new Statistics(hits, misses, evictions, fragments.size(), chars);
+	}
+
+	/**
+	 * Counters of a {@link FragmentMemo}, taken at one point in time.
+	 */
+	public static final class Statistics {
+
+		/** Number of elements copied from the memo. */
+		public final long hits;
+		/** Number of elements that had to be marshalled. */
+		public final long misses;
+		/** Number of fragments dropped to stay within the bounds. */
+		public final long evictions;
+		/** Number of fragments currently kept. */
+		public final int entries;
+		/** Number of characters currently kept. */
+		public final long chars;
+
+		Statistics(long hits, long misses, long evictions, int entries, long chars) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.entries = entries;
+			this.chars = chars;
+		}
+
+		public double getHitRatio() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d (%.1f%%) misses=%d evictions=%d entries=%d chars=%d",
+					hits, 100 * getHitRatio(), misses, evictions, entries, chars);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.run.saxb;
+
+import java.util.Arrays;
+
+/**
+ * Set of objects compared by identity, with an int tag for each of them.
+ *
+ * <p>
+ * This is an open addressing hash table over {@link System#identityHashCode(Object)}
+ * with linear probing, so neither the objects nor the tags are boxed or wrapped
+ * in entries. {@link #clear()} keeps the table, so that a set which is reused
+ * for each marshalling doesn't allocate once it has grown to the size of the graphs.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class IdentitySet {
+
+	/**
+	 * The tag returned for objects that are not in the set.
+	 */
+	static final int ABSENT = -1;
+
+	private Object[] keys;
+	private int[] tags;
+	private int size;
+
+	IdentitySet() {
+		this(64);
+	}
+
+	/**
+	 * @param capacity
+	 *      Expected number of objects. The table grows as needed.
+	 */
+	IdentitySet(int capacity) {
+		int n = 16;
+		while (n < capacity * 2)
+			n <<= 1;
+		keys = new Object[n];
+		tags = new int[n];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean contains(Object o) {
+		return keys[indexOf(o)] != null;
+	}
+
+	/**
+	 * Adds an object with the tag 0.
+	 *
+	 * @return false if the object was already in the set, in which case its tag is kept.
+	 */
+	boolean add(Object o) {
+		int i = indexOf(o);
+		if (keys[i] != null)
+			return false;
+		insert(i, o, 0);
+		return true;
+	}
+
+	/**
+	 * Gets the tag of an object.
+	 *
+	 * @return {@link #ABSENT} if the object is not in the set.
+	 */
+	int get(Object o) {
+		int i = indexOf(o);
+		return keys[i] != null ? tags[i] : ABSENT;
+	}
+
+	/**
+	 * Adds an object with the given tag, or changes its tag.
+	 */
+	void put(Object o, int tag) {
+		int i = indexOf(o);
+		if (keys[i] != null)
+			tags[i] = tag;
+		else
+			insert(i, o, tag);
+	}
+
+	/**
+	 * @return false if the object was not in the set.
+	 */
+	boolean remove(Object o) {
+		int i = indexOf(o);
+		if (keys[i] == null)
+			return false;
+		keys[i] = null;
+		size--;
+		// move the following entries of the run back into the gap,
+		// unless they are already between the gap and their home slot
+		int mask = keys.length - 1;
+		for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j], mask);
+			if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+				continue;
+			keys[i] = keys[j];
+			tags[i] = tags[j];
+			keys[j] = null;
+			i = j;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all the objects, keeping the capacity.
+	 */
+	void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+
+	private void insert(int i, Object o, int tag) {
+		keys[i] = o;
+		tags[i] = tag;
+		if (++size * 2 > keys.length)
+			rehash();
+	}
+
+	/**
+	 * Gets the slot of an object, or the empty slot where it would go.
+	 */
+	private int indexOf(Object o) {
+		int mask = keys.length - 1;
+		int i = hash(o, mask);
+		for (Object k; (k = keys[i]) != null && k != o; )
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private static int hash(Object o, int mask) {
+		// identity hashes can be poorly distributed in the low bits
+		int h = System.identityHashCode(o) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void rehash() {
+		Object[] oldKeys = keys;
+		int[] oldTags = tags;
+		keys = new Object[oldKeys.length * 2];
+		tags = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int j = indexOf(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				tags[j] = oldTags[i];
+			}
+		}
+	}
+}
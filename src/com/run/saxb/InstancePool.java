@@ -0,0 +1,36 @@
+package com.run.saxb;
+
+/**
+ * Supplies instances of a bound class to the unmarshaller, 
+ * and takes them back when they are recycled.
+ *
+ * <p>
+ * A pool is installed per class with {@link SAXBContextImpl#setInstancePool}.
+ * When an {@link Unmarshaller} binds into an existing content tree, the beans 
+ * of the old tree are cleared and released into the pools of their classes, 
+ * and every new bean is acquired from the pool of its class, so that a decode 
+ * loop over the same target settles on allocating next to nothing.
+ * A bean the content tree shares, as with references, is released once,
+ * and cycles are followed once.
+ *
+ * <p>
+ * Implementations must be thread-safe, as the pools are shared by all the 
+ * unmarshallers of a context.
+ *
+ * @see BoundedInstancePool
+ */
+public interface InstancePool<T> {
+	
+	/**
+	 * Takes an instance from the pool. All its properties are cleared.
+	 *
+	 * @return null if the pool is empty, and a new instance must be created.
+	 */
+	T acquire();
+	
+	/**
+	 * Gives an instance back to the pool, after its properties were cleared.
+	 * The pool can drop it.
+	 */
+	void release(T instance);
+}
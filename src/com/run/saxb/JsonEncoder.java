@@ -0,0 +1,341 @@
+package com.run.saxb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.BooleanAccessor;
+import com.run.saxb.transducer.accessor.DoubleAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
+import com.run.saxb.transducer.accessor.IntegerAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.StringAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
+
+/**
+ * Writes a content tree in the {@link DataFormat#JSON} format.
+ *
+ * <p>
+ * The document is an object with a single member, named after the root element,
+ * whose value is the root bean:
+ * <pre>
+ *   document := { "rootName" : bean }
+ *   bean     := { ( "@attributeName" : leaf , )* ( "elementName" : value , )* }
+ *   value    := leaf | bean | [ leaf | bean , ... ]   for collection properties
+ *   leaf     := number | true | false | string
+ * </pre>
+ * Names are the local names of the XML form; namespaces are not written.
+ * A bean whose class is a bound subclass of the declared type of its property
+ * has a first member <tt>"@xsi:type"</tt> with the name of the subclass.
+ * Attributes come first, like they do in the XML form, and null properties
+ * and empty collections are left out, since the XML form can't tell them 
+ * apart from missing ones either. Collections are always arrays. Floating point values that are
+ * not finite are written as the strings <tt>"NaN"</tt>, <tt>"Infinity"</tt> and
+ * <tt>"-Infinity"</tt>.
+ *
+ * <p>
+ * The member names are encoded once in the {@link BeanInfo}. Integral values
+ * are written straight into the buffer, which comes from the {@link BufferPool}
+ * of the context and goes back to it at the end of {@link #encode}.
+ *
+ * <p>
+ * Not thread-safe. A new encoder is used for each document.
+ *
+ * @see JsonScanner
+ */
+final class JsonEncoder {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Name of the attribute member that holds the type of a bean whose class
+	 * is a subclass of the declared type of its property.
+	 */
+	static final String TYPE_ATTRIBUTE = "xsi:type";
+
+	private static final char[] TYPE_KEY = encodeKey('@' + TYPE_ATTRIBUTE);
+
+	private final Writer out;
+	private final BufferPool pool;
+	private final char[] buf;
+	private int pos;
+
+	JsonEncoder(SAXBContextImpl grammar, Writer out) {
+		this.out = out;
+		this.pool = grammar.bufferPool;
+		this.buf = pool.acquireChars(8192);
+	}
+
+	/**
+	 * Encodes a member name with its colon, once for all.
+	 */
+	static char[] encodeKey(String name) {
+		StringBuilder sb = new StringBuilder(name.length() + 3);
+		sb.append('"');
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+			else
+				sb.append(c);
+		}
+		return sb.append("\":").toString().toCharArray();
+	}
+
+	void encode(BeanInfo<?> beanInfo, Object bean) throws IOException {
+		try {
+			write('{');
+			writeString(beanInfo.name.localName);
+			write(':');
+			writeBody(beanInfo, bean, null);
+			write('}');
+			out.write(buf, 0, pos);
+			pos = 0;
+			out.flush();
+		} finally {
+			pool.releaseChars(buf);
+		}
+	}
+
+	/**
+	 * Writes the object of a bean held by a property of the given declared type.
+	 */
+	private void writeChild(BeanInfo<?> declared, Object bean) throws IOException {
+		BeanInfo<?> type = declared.getType(bean);
+		writeBody(type, bean, type != declared ? type.name.localName : null);
+	}
+
+	/**
+	 * @param typeName
+	 *      The name written as the {@link #TYPE_ATTRIBUTE}, or null.
+	 */
+	private void writeBody(BeanInfo<?> beanInfo, Object bean, String typeName) throws IOException {
+		Accessor[] accessors = beanInfo.accessors;
+		TextAccessor[] attributes = beanInfo.attributes;
+		char[][] keys = beanInfo.jsonKeys;
+		boolean first = true;
+		write('{');
+		if (typeName != null) {
+			write(TYPE_KEY);
+			writeString(typeName);
+			first = false;
+		}
+		for (int i = 0; i < attributes.length; i++) {
+			if (!attributes[i].hasValue(bean))
+				continue;
+			if (!first)
+				write(',');
+			first = false;
+			write(keys[accessors.length + i]);
+			writeText(attributes[i], bean);
+		}
+		if (!beanInfo.attributeProperties.isEmpty()) {
+			for (Entry<String, String> entry: beanInfo.attributeProperties.entrySet()) {
+				if (!first)
+					write(',');
+				first = false;
+				writeString('@' + entry.getKey());
+				write(':');
+				writeString(entry.getValue());
+			}
+		}
+		for (int i = 0; i < accessors.length; i++) {
+			Accessor acc = accessors[i];
+			if (acc instanceof TextAccessor) {
+				if (!((TextAccessor) acc).hasValue(bean))
+					continue;
+				if (!first)
+					write(',');
+				write(keys[i]);
+				writeText((TextAccessor) acc, bean);
+			} else if (acc instanceof BeanAccessor) {
+				Object child = acc.get(bean);
+				if (child == null)
+					continue;
+				if (!first)
+					write(',');
+				write(keys[i]);
+				writeChild(((BeanAccessor) acc).beanInfo, child);
+			} else if (acc instanceof ListAccessor) {
+				ListAccessor list = (ListAccessor) acc;
+				Collection<Object> items = list.getList(bean);
+				if (items == null || items.isEmpty())
+					continue;
+				if (!first)
+					write(',');
+				write(keys[i]);
+				write('[');
+				boolean firstItem = true;
+				for (Object item: items) {
+					if (item == null)
+						continue;
+					if (!firstItem)
+						write(',');
+					firstItem = false;
+					if (list.itemInfo != null)
+						writeChild(list.itemInfo, item);
+					else
+						writeValue(item);
+				}
+				write(']');
+			} else {
+				continue;
+			}
+			first = false;
+		}
+		write('}');
+	}
+
+	private void writeText(TextAccessor acc, Object bean) throws IOException {
+		if (acc instanceof IntegerAccessor) {
+			writeLong(((IntegerAccessor) acc).getLong(bean));
+		} else if (acc instanceof DoubleAccessor) {
+			double d = ((DoubleAccessor) acc).getDouble(bean);
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				writeString(acc.print(bean));
+			else
+				write(acc.print(bean));
+		} else if (acc instanceof BooleanAccessor) {
+			write(((BooleanAccessor) acc).getBoolean(bean) ? "true" : "false");
+		} else if (acc instanceof StringAccessor) {
+			writeString(((StringAccessor) acc).getString(bean));
+		} else if (acc instanceof EnumAccessor) {
+			writeEnum(((EnumAccessor) acc).table, ((EnumAccessor) acc).getEnum(bean));
+		} else {
+			writeString(acc.print(bean));
+		}
+	}
+
+	/**
+	 * Writes a collection item of a leaf type.
+	 */
+	private void writeValue(Object value) throws IOException {
+		if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				writeString(value.toString());
+			else
+				write(value.toString());
+		} else if (value instanceof Number) {
+			writeLong(((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			write(((Boolean) value) ? "true" : "false");
+		} else if (value instanceof Enum) {
+			writeEnum(EnumTable.of(((Enum<?>) value).getDeclaringClass()), (Enum<?>) value);
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Writes an enum constant, copying its string from the {@link EnumTable}.
+	 */
+	private void writeEnum(EnumTable table, Enum<?> value) throws IOException {
+		char[] chars = table.getJson(value);
+		if (chars != null)
+			write(chars);
+		else
+			writeString(table.print(value));
+	}
+	
+	private void writeLong(long v) throws IOException {
+		if (v == Long.MIN_VALUE) {
+			write(Long.toString(v));
+			return;
+		}
+		ensure(20);
+		if (v < 0) {
+			buf[pos++] = '-';
+			v = -v;
+		}
+		int start = pos;
+		do {
+			buf[pos++] = (char) ('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		// the digits were written backwards
+		for (int i = start, j = pos - 1; i < j; i++, j--) {
+			char c = buf[i];
+			buf[i] = buf[j];
+			buf[j] = c;
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		write('"');
+		for (int i = 0, len = s.length(); i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				if (pos == buf.length)
+					flushBuffer();
+				buf[pos++] = c;
+				continue;
+			}
+			ensure(6);
+			buf[pos++] = '\\';
+			switch (c) {
+			case '"':  buf[pos++] = '"';  break;
+			case '\\': buf[pos++] = '\\'; break;
+			case '\n': buf[pos++] = 'n';  break;
+			case '\r': buf[pos++] = 'r';  break;
+			case '\t': buf[pos++] = 't';  break;
+			default:
+				buf[pos++] = 'u';
+				buf[pos++] = '0';
+				buf[pos++] = '0';
+				buf[pos++] = HEX[c >> 4];
+				buf[pos++] = HEX[c & 0xF];
+			}
+		}
+		write('"');
+	}
+
+	private void write(char c) throws IOException {
+		if (pos == buf.length)
+			flushBuffer();
+		buf[pos++] = c;
+	}
+
+	private void write(char[] chars) throws IOException {
+		if (chars.length > buf.length - pos) {
+			flushBuffer();
+			if (chars.length > buf.length) {
+				out.write(chars);
+				return;
+			}
+		}
+		System.arraycopy(chars, 0, buf, pos, chars.length);
+		pos += chars.length;
+	}
+
+	private void write(String s) throws IOException {
+		int len = s.length();
+		if (len > buf.length - pos) {
+			flushBuffer();
+			if (len > buf.length) {
+				out.write(s);
+				return;
+			}
+		}
+		s.getChars(0, len, buf, pos);
+		pos += len;
+	}
+
+	private void ensure(int len) throws IOException {
+		if (buf.length - pos < len)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+}
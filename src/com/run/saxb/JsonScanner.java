@@ -0,0 +1,330 @@
+package com.run.saxb;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Parses a document in the {@link DataFormat#JSON} format and sends its events
+ * to an {@link XmlVisitor}, as if it were the XML form of the same content.
+ *
+ * <p>
+ * Each member becomes an element, or a run of elements if its value is an array.
+ * The members of an object whose names start with <tt>@</tt> become the attributes
+ * of its element, and must come before the other members since the start tag is
+ * sent when the first of these is read. Null values are left out. Since names
+ * carry no namespace, the visitor must match them by their local names.
+ *
+ * <p>
+ * The input is read through a buffer from the {@link BufferPool}. Member names
+ * are kept in a small table, so a name that repeats doesn't allocate again,
+ * and string values are unescaped into a buffer that is reused.
+ *
+ * <p>
+ * Not thread-safe. A new scanner is used for each document.
+ *
+ * @see JsonEncoder
+ */
+final class JsonScanner {
+
+	private final XmlVisitor next;
+	private final Reader in;
+	private final BufferPool pool;
+	private final char[] buf;
+	private int pos;
+	private int limit;
+
+	/**
+	 * Number of characters before {@link #buf}, for error messages.
+	 */
+	private long offset;
+
+	private final TagName tagName = new TagName();
+	private final AttributesImpl atts = new AttributesImpl();
+	private final AttributesImpl noAtts = new AttributesImpl();
+
+	/**
+	 * Scalar values, unescaped.
+	 */
+	private char[] text = new char[256];
+	private int textLength;
+
+	/**
+	 * Member names by the hash of their characters. A slot is replaced
+	 * when another name falls in it.
+	 */
+	private final String[] names = new String[256];
+
+	JsonScanner(SAXBContextImpl grammar, XmlVisitor next, Reader in) {
+		this.next = next;
+		this.in = in;
+		this.pool = grammar.bufferPool;
+		this.buf = pool.acquireChars(8192);
+	}
+
+	void scan() throws IOException, SAXException {
+		try {
+			next.startDocument(null);
+			expect('{');
+			String root = readName();
+			expect(':');
+			if (skipWhitespace() != '{')
+				throw error("the root must be an object");
+			element(root);
+			expect('}');
+			if (skipWhitespace() != -1)
+				throw error("unexpected content after the root");
+			next.endDocument();
+		} finally {
+			pool.releaseChars(buf);
+		}
+	}
+
+	/**
+	 * Reads an object as the content of an element.
+	 */
+	private void element(String name) throws IOException, SAXException {
+		pos++;
+		atts.clear();
+		boolean started = false;
+		int c = skipWhitespace();
+		if (c == '}') {
+			pos++;
+		} else {
+			while (true) {
+				String key = readName();
+				expect(':');
+				if (key.length() > 0 && key.charAt(0) == '@') {
+					if (started)
+						throw error("attribute " + key + " after child elements");
+					if (readScalar()) {
+						String local = key.substring(1);
+						atts.addAttribute("", local, local, "CDATA", new String(text, 0, textLength));
+					}
+				} else {
+					if (!started) {
+						startElement(name, atts);
+						started = true;
+					}
+					value(key);
+				}
+				c = skipWhitespace();
+				pos++;
+				if (c == '}')
+					break;
+				if (c != ',')
+					throw error("expected ',' or '}'");
+			}
+		}
+		if (!started)
+			startElement(name, atts);
+		endElement(name);
+	}
+
+	/**
+	 * Reads the value of a member.
+	 */
+	private void value(String name) throws IOException, SAXException {
+		int c = skipWhitespace();
+		if (c != '[') {
+			item(name);
+			return;
+		}
+		pos++;
+		if (skipWhitespace() == ']') {
+			pos++;
+			return;
+		}
+		while (true) {
+			if (skipWhitespace() == '[')
+				throw error("nested arrays are not supported");
+			item(name);
+			c = skipWhitespace();
+			pos++;
+			if (c == ']')
+				break;
+			if (c != ',')
+				throw error("expected ',' or ']'");
+		}
+	}
+
+	/**
+	 * Reads a value that is not an array.
+	 */
+	private void item(String name) throws IOException, SAXException {
+		if (skipWhitespace() == '{') {
+			element(name);
+		} else if (readScalar()) {
+			startElement(name, noAtts);
+			next.text(text, 0, textLength);
+			endElement(name);
+		}
+	}
+
+	private void startElement(String name, AttributesImpl atts) throws SAXException {
+		setName(name);
+		tagName.atts = atts;
+		next.startElement(tagName);
+	}
+
+	private void endElement(String name) throws SAXException {
+		setName(name);
+		tagName.atts = null;
+		next.endElement(tagName);
+	}
+
+	private void setName(String name) {
+		tagName.uri = "";
+		tagName.local = name;
+		tagName.qname = name;
+		tagName.prefix = "";
+	}
+
+	/**
+	 * Reads a string, number or literal into {@link #text}.
+	 *
+	 * @return false for null.
+	 */
+	private boolean readScalar() throws IOException, SAXException {
+		int c = skipWhitespace();
+		textLength = 0;
+		if (c == '"') {
+			readString();
+			return true;
+		}
+		if (c == '{' || c == '[')
+			throw error("expected a value that is not an object or an array");
+		while (true) {
+			if (pos == limit && !fill())
+				break;
+			c = buf[pos];
+			if (c == ',' || c == '}' || c == ']' || c <= ' ')
+				break;
+			append((char) c);
+			pos++;
+		}
+		if (textLength == 0)
+			throw error("expected a value");
+		if (textLength == 4 && text[0] == 'n' && text[1] == 'u' && text[2] == 'l' && text[3] == 'l')
+			return false;
+		return true;
+	}
+
+	/**
+	 * Reads a member name, and returns the string that the table has for it.
+	 */
+	private String readName() throws IOException, SAXException {
+		if (skipWhitespace() != '"')
+			throw error("expected a member name");
+		textLength = 0;
+		readString();
+		int h = 0;
+		for (int i = 0; i < textLength; i++)
+			h = 31 * h + text[i];
+		int slot = (h ^ (h >>> 16)) & (names.length - 1);
+		String name = names[slot];
+		if (name != null && name.length() == textLength) {
+			int i = 0;
+			while (i < textLength && name.charAt(i) == text[i])
+				i++;
+			if (i == textLength)
+				return name;
+		}
+		return names[slot] = new String(text, 0, textLength);
+	}
+
+	/**
+	 * Reads a quoted string into {@link #text}, after what is already there.
+	 */
+	private void readString() throws IOException, SAXException {
+		pos++;
+		while (true) {
+			if (pos == limit && !fill())
+				throw error("unterminated string");
+			char c = buf[pos++];
+			if (c == '"')
+				return;
+			if (c != '\\') {
+				append(c);
+				continue;
+			}
+			if (pos == limit && !fill())
+				throw error("unterminated string");
+			c = buf[pos++];
+			switch (c) {
+			case 'n': append('\n'); break;
+			case 'r': append('\r'); break;
+			case 't': append('\t'); break;
+			case 'b': append('\b'); break;
+			case 'f': append('\f'); break;
+			case 'u':
+				int v = 0;
+				for (int i = 0; i < 4; i++) {
+					if (pos == limit && !fill())
+						throw error("unterminated string");
+					int d = Character.digit(buf[pos++], 16);
+					if (d < 0)
+						throw error("malformed unicode escape");
+					v = v << 4 | d;
+				}
+				append((char) v);
+				break;
+			case '"':
+			case '\\':
+			case '/':
+				append(c);
+				break;
+			default:
+				throw error("invalid escape \\" + c);
+			}
+		}
+	}
+
+	private void append(char c) {
+		if (textLength == text.length) {
+			char[] bigger = new char[text.length * 2];
+			System.arraycopy(text, 0, bigger, 0, textLength);
+			text = bigger;
+		}
+		text[textLength++] = c;
+	}
+
+	private void expect(char expected) throws IOException, SAXException {
+		if (skipWhitespace() != expected)
+			throw error("expected '" + expected + "'");
+		pos++;
+	}
+
+	/**
+	 * Skips whitespace, and returns the next character without consuming it.
+	 *
+	 * @return -1 at the end of the input.
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			if (pos == limit && !fill())
+				return -1;
+			char c = buf[pos];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				return c;
+			pos++;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		offset += limit;
+		pos = limit = 0;
+		int n = in.read(buf, 0, buf.length);
+		if (n <= 0)
+			return false;
+		limit = n;
+		return true;
+	}
+
+	private SAXParseException error(String message) {
+		return new SAXParseException("JSON: " + message + " at character " + (offset + pos), null);
+	}
+}
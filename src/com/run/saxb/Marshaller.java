@@ -1,24 +1,27 @@
 package com.run.saxb;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.transform.Result;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.dom.DOMResult;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
-import org.w3c.dom.Document;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
 
-import com.sun.org.apache.xerces.internal.dom.DocumentImpl;
+import com.run.saxb.output.DOMOutput;
+import com.run.saxb.output.SAXOutput;
+import com.run.saxb.output.XMLStreamWriterOutput;
+import com.run.saxb.output.XmlOutput;
+import com.run.saxb.output.XmlWriterOutput;
 
 /**
  * <p>
@@ -74,6 +77,43 @@ import com.sun.org.apache.xerces.internal.dom.DocumentImpl;
  *       m.marshal( element, new PrintWriter( System.out ) );
  *    </pre>
  * </blockquote>
+ *
+ * <p>
+ * Marshalling to a javax.xml.stream.XMLStreamWriter:
+ * <blockquote>
+ *    <pre>
+ *       XMLStreamWriter xmlStreamWriter = 
+ *           XMLOutputFactory.newInstance().createXMLStreamWriter( ... );
+ *
+ *       m.marshal( element, xmlStreamWriter );
+ *    </pre>
+ * </blockquote>
+ *
+ * <p>
+ * Marshalling to a org.xml.sax.ContentHandler:
+ * <blockquote>
+ *    <pre>
+ *       m.marshal( element, new DefaultHandler() );
+ *    </pre>
+ * </blockquote>
+ *
+ * <p>
+ * Marshalling to the compact binary format:
+ * <blockquote>
+ *    <pre>
+ *       m.setFormat( DataFormat.BINARY );
+ *       m.marshal( element, os );
+ *    </pre>
+ * </blockquote>
+ *
+ * <p>
+ * Marshalling the same content tree to JSON:
+ * <blockquote>
+ *    <pre>
+ *       m.setFormat( DataFormat.JSON );
+ *       m.marshal( element, writer );
+ *    </pre>
+ * </blockquote>
  * 
  * @author <ul><li>Kohsuke Kawaguchi, Sun Microsystems, Inc.</li><li>Ryan Shoemaker, Sun Microsystems, Inc.</li><li>Joe Fialli, Sun Microsystems, Inc.</li></ul>
  * @see JAXBContext
@@ -82,14 +122,213 @@ import com.sun.org.apache.xerces.internal.dom.DocumentImpl;
  */
 public class Marshaller {
 	
+	/**
+	 * Default number of collection items per chunk in parallel marshalling.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+	
 	private SAXBContextImpl grammar;
-	private Transformer serializer;
+	private DataFormat format = DataFormat.XML;
+	private boolean parallel;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private ReferenceMode references = ReferenceMode.NONE;
+	
+	/**
+	 * Tracks the beans in the modes that need it. Reused by every marshalling.
+	 */
+	private final IdentitySet objects = new IdentitySet();
+	
+	/**
+	 * Fragments of versioned beans, in incremental mode. Null otherwise.
+	 */
+	private FragmentCache fragments;
+	
+	/**
+	 * The indentation of formatted output, or null if the output is not formatted.
+	 */
+	private String indent;
+	private String lineSeparator = "\n";
 	
 	public Marshaller(SAXBContextImpl context) {
 		this.grammar = context;
-		try {
-			this.serializer = grammar.tff.newTransformer();
-		} catch (TransformerConfigurationException e) { }
+	}
+	
+	/**
+	 * Gets the format that this marshaller writes to streams and files.
+	 */
+	public DataFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Sets the format that this marshaller writes to streams and files.
+	 * {@link DataFormat#BINARY} can't be written to a <tt>Writer</tt> or a DOM node.
+	 * DOM nodes, StAX writers and SAX handlers always receive XML.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the parameter is null
+	 */
+	public void setFormat(DataFormat format) {
+		if (format == null)
+			throw new IllegalArgumentException("format");
+		this.format = format;
+	}
+	
+	public boolean isParallel() {
+		return parallel;
+	}
+	
+	/**
+	 * Turns parallel marshalling of large collections on or off. It is off by default.
+	 * 
+	 * <p>
+	 * Collections with more than {@link #getChunkSize()} items are cut into chunks 
+	 * that are marshalled concurrently on the common fork-join pool, and written
+	 * out in document order. The output is the same as with serial marshalling.
+	 * This only applies to the XML format written to streams, files and writers.
+	 * 
+	 * @see XMLSerializer
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	public ReferenceMode getReferenceMode() {
+		return references;
+	}
+	
+	/**
+	 * Sets how objects that are reachable more than once are marshalled. 
+	 * The default is {@link ReferenceMode#NONE}. The other modes only apply 
+	 * to the XML format.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the parameter is null
+	 */
+	public void setReferenceMode(ReferenceMode references) {
+		if (references == null)
+			throw new IllegalArgumentException("references");
+		this.references = references;
+	}
+	
+	public boolean isIncremental() {
+		return fragments != null;
+	}
+	
+	/**
+	 * Turns incremental marshalling on or off. It is off by default.
+	 * 
+	 * <p>
+	 * In incremental mode, the marshaller keeps the XML it writes for the beans 
+	 * that have a {@link Version}, and writes it again as is as long as the version 
+	 * of the bean and the versions of the versioned beans below it are unchanged.
+	 * Marshalling the same content tree again then costs in proportion to what 
+	 * changed, and to the size of the output. The root is always marshalled. 
+	 * The marshaller holds on to the beans of the last content trees until 
+	 * incremental mode is turned off.
+	 * 
+	 * <p>
+	 * This only applies to the XML format written to streams, files and writers,
+	 * with {@link ReferenceMode#NONE}, and collections aren't marshalled 
+	 * in parallel then.
+	 * 
+	 * @see Version
+	 */
+	public void setIncremental(boolean incremental) {
+		if (!incremental)
+			fragments = null;
+		else if (fragments == null)
+			fragments = new FragmentCache();
+	}
+	
+	public boolean isFormatted() {
+		return indent != null;
+	}
+	
+	/**
+	 * Turns formatted output on or off. It is off by default.
+	 * 
+	 * <p>
+	 * Formatted output has each element on a line of its own, indented by its depth
+	 * with 4 spaces per level unless {@link #setIndent(String)} says otherwise.
+	 * Elements with text content stay on one line, so that their text is unchanged.
+	 * The indentation is written directly, without a <tt>Transformer</tt>, 
+	 * and costs little more than unformatted output.
+	 * 
+	 * <p>
+	 * This only applies to the XML format written to streams, files and writers.
+	 * The elements are all marshalled then: incremental mode, {@link FragmentMemo}s
+	 * and parallel marshalling don't apply.
+	 */
+	public void setFormatted(boolean formatted) {
+		if (!formatted)
+			indent = null;
+		else if (indent == null)
+			indent = "    ";
+	}
+	
+	/**
+	 * Gets the indentation of one level of depth in formatted output.
+	 *
+	 * @return null if the output is not formatted.
+	 */
+	public String getIndent() {
+		return indent;
+	}
+	
+	/**
+	 * Turns formatted output on, with the given indentation for each level of depth.
+	 *
+	 * @param indent
+	 *      Spaces and tabs, possibly none. null turns formatted output off.
+	 * @throws IllegalArgumentException
+	 *      If the indentation has other characters than spaces and tabs.
+	 */
+	public void setIndent(String indent) {
+		if (indent != null && !isWhitespace(indent, " \t"))
+			throw new IllegalArgumentException("indent");
+		this.indent = indent;
+	}
+	
+	public String getLineSeparator() {
+		return lineSeparator;
+	}
+	
+	/**
+	 * Sets the end of lines of formatted output. The default is <tt>"\n"</tt>.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the separator is empty, or has other characters than 
+	 *      carriage returns and line feeds.
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		if (lineSeparator == null || lineSeparator.isEmpty() || !isWhitespace(lineSeparator, "\r\n"))
+			throw new IllegalArgumentException("lineSeparator");
+		this.lineSeparator = lineSeparator;
+	}
+	
+	private static boolean isWhitespace(String s, String allowed) {
+		for (int i = 0; i < s.length(); i++) {
+			if (allowed.indexOf(s.charAt(i)) < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * Sets the number of collection items per chunk in parallel marshalling.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the parameter is not positive
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize");
+		this.chunkSize = chunkSize;
 	}
 	
     /**
@@ -110,7 +349,11 @@ public class Marshaller {
      */
     public void marshal(Object jaxbElement, OutputStream os)
         throws JAXBException {
-    	marhsal0(jaxbElement, new StreamResult(os));
+    	if (format == DataFormat.BINARY) {
+    		marshalBinary(jaxbElement, os);
+    		return;
+    	}
+    	marshalText(jaxbElement, new OutputStreamWriter(os, StandardCharsets.UTF_8));
     }
 
     /**
@@ -128,7 +371,19 @@ public class Marshaller {
      */
     public void marshal(Object jaxbElement, File output)
         throws JAXBException {
-    	marhsal0(jaxbElement, new StreamResult(output));
+    	if (format == DataFormat.BINARY) {
+    		try (OutputStream os = new FileOutputStream(output)) {
+    			marshalBinary(jaxbElement, os);
+    		} catch (IOException e) {
+    			throw new JAXBException(e);
+    		}
+    		return;
+    	}
+    	try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+    		marshalText(jaxbElement, writer);
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	}
     }
 
     /**
@@ -144,7 +399,9 @@ public class Marshaller {
      */
     public void marshal(Object jaxbElement, Writer writer)
         throws JAXBException {
-    	marhsal0(jaxbElement, new StreamResult(writer));
+    	if (format == DataFormat.BINARY)
+    		throw new JAXBException("The binary format can't be written to a Writer");
+    	marshalText(jaxbElement, writer);
     }
     
     /**
@@ -169,20 +426,137 @@ public class Marshaller {
      */
     public void marshal(Object jaxbElement, Node node)
         throws JAXBException {
-    	marhsal0(jaxbElement, new DOMResult(node));
+    	if (node == null)
+    		throw new IllegalArgumentException("node");
+    	marhsal0(jaxbElement, new DOMOutput(node));
     }
     
-    private void marhsal0(Object object, Result outputTarget) throws JAXBException {
-    	
-    	Document document = new DocumentImpl();
+    /**
+     * Marshal the content tree rooted at <tt>jaxbElement</tt> into a
+     * {@link javax.xml.stream.XMLStreamWriter}.
+     *
+     * <p>
+     * The root element is written where the writer stands. The start and
+     * the end of the document are left to the caller, so the content tree can 
+     * be written as part of a bigger document.
+     *
+     * @param jaxbElement
+     *      The content tree to be marshalled.
+     * @param writer
+     *      XML will be sent to this writer.
+     *
+     * @throws JAXBException
+     *      If any unexpected problem occurs during the marshalling.
+     * @throws IllegalArgumentException
+     *      If any of the method parameters are null
+     */
+    public void marshal(Object jaxbElement, XMLStreamWriter writer)
+        throws JAXBException {
+    	if (writer == null)
+    		throw new IllegalArgumentException("writer");
+    	if (format == DataFormat.BINARY)
+    		throw new JAXBException("The binary format can't be written to an XMLStreamWriter");
+    	marhsal0(jaxbElement, new XMLStreamWriterOutput(writer));
+    }
+    
+    /**
+     * Marshal the content tree rooted at <tt>jaxbElement</tt> into SAX2 events.
+     *
+     * <p>
+     * The events go straight to the handler, from <tt>startDocument</tt> to 
+     * <tt>endDocument</tt>. Namespaces are reported with <tt>startPrefixMapping</tt>
+     * and not as attributes.
+     *
+     * @param jaxbElement
+     *      The content tree to be marshalled.
+     * @param handler
+     *      XML will be sent to this handler as SAX2 events.
+     *
+     * @throws JAXBException
+     *      If any unexpected problem occurs during the marshalling.
+     * @throws IllegalArgumentException
+     *      If any of the method parameters are null
+     */
+    public void marshal(Object jaxbElement, ContentHandler handler)
+        throws JAXBException {
+    	if (handler == null)
+    		throw new IllegalArgumentException("handler");
+    	if (format == DataFormat.BINARY)
+    		throw new JAXBException("The binary format can't be written to a ContentHandler");
+    	marhsal0(jaxbElement, new SAXOutput(handler));
+    }
+    
+    private void marshalText(Object object, Writer writer) throws JAXBException {
+    	if (format == DataFormat.JSON) {
+    		marshalJson(object, writer);
+    		return;
+    	}
+    	XmlWriterOutput out = new XmlWriterOutput(writer, grammar.bufferPool, indent, lineSeparator);
+    	try {
+    		marhsal0(object, out);
+    	} catch (JAXBException | RuntimeException | Error e) {
+    		// the buffer still goes back to the pool, without hiding the failure
+    		try {
+    			out.finish();
+    		} catch (IOException suppressed) {
+    			e.addSuppressed(suppressed);
+    		}
+    		throw e;
+    	}
+    	try {
+    		out.finish();
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	}
+    }
+    
+    private void marhsal0(Object object, XmlOutput out) throws JAXBException {
     	
-    	BeanInfo<?> beanInfo = grammar.getBeanInfo(object);
-    	beanInfo.serializeRoot(document);
+    	BeanInfo<?> beanInfo = getBeanInfo(object);
+    	XMLSerializer serializer = new XMLSerializer(grammar, out, parallel, chunkSize, references, objects, fragments);
 
+    	if (fragments != null)
+    		fragments.begin();
+    	try {
+    		out.startDocument();
+    		beanInfo.serializeRoot(object, serializer);
+    		out.endDocument();
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	} finally {
+    		if (fragments != null)
+    			fragments.end();
+    	}
+    }
+    
+    private void marshalJson(Object object, Writer writer) throws JAXBException {
+    	if (references != ReferenceMode.NONE)
+    		throw new JAXBException("The JSON format doesn't support " + references);
+    	BeanInfo<?> beanInfo = getBeanInfo(object);
     	try {
-    		serializer.transform(new DOMSource(document), outputTarget);
-    	} catch (TransformerException e) {
+    		new JsonEncoder(grammar, writer).encode(beanInfo, object);
+    	} catch (IOException e) {
     		throw new JAXBException(e);
     	}
     }
+    
+    private void marshalBinary(Object object, OutputStream os) throws JAXBException {
+    	if (references != ReferenceMode.NONE)
+    		throw new JAXBException("The binary format doesn't support " + references);
+    	BeanInfo<?> beanInfo = getBeanInfo(object);
+    	try {
+    		new BinaryEncoder(grammar, os).encode(beanInfo, object);
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	}
+    }
+    
+    private BeanInfo<?> getBeanInfo(Object object) throws JAXBException {
+    	if (object == null)
+    		throw new IllegalArgumentException("jaxbElement");
+    	BeanInfo<?> beanInfo = grammar.getBeanInfo(object);
+    	if (beanInfo == null)
+    		throw new JAXBException(object.getClass() + " is not known to this context");
+    	return beanInfo;
+    }
 }
\ No newline at end of file
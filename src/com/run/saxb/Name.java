@@ -0,0 +1,57 @@
+package com.run.saxb;
+
+/**
+ * The name of an element or an attribute, with everything that the
+ * marshaller needs to write it precomputed: the namespace index in the
+ * {@link SAXBContextImpl}, the prefix bound to it and the qualified name.
+ *
+ * <p>
+ * Immutable and thread-safe. All the strings are interned.
+ */
+public final class Name {
+	
+	/**
+	 * Namespace URI. "" if the name is not qualified, never null.
+	 */
+	public final String nsUri;
+	
+	public final String localName;
+	
+	/**
+	 * Prefix bound to the namespace URI. "" if the name is not qualified.
+	 */
+	public final String prefix;
+	
+	/**
+	 * <tt>prefix:localName</tt>, or just <tt>localName</tt> if there's no prefix.
+	 */
+	public final String qName;
+	
+	/**
+	 * Index of the namespace URI in {@link SAXBContextImpl#getNamespaceURIs()}.
+	 */
+	public final int nsIndex;
+	
+	Name(int nsIndex, String nsUri, String prefix, String localName) {
+		this.nsIndex = nsIndex;
+		this.nsUri = nsUri.intern();
+		this.prefix = prefix.intern();
+		this.localName = localName.intern();
+		this.qName = (prefix.isEmpty() ? localName : prefix + ':' + localName).intern();
+	}
+	
+	/**
+	 * Checks if the given name pair matches this name.
+	 */
+	public boolean matches(String nsUri, String localName) {
+		if (nsUri == null)
+			nsUri = "";
+		return (this.localName == localName || this.localName.equals(localName))
+			&& (this.nsUri == nsUri || this.nsUri.equals(nsUri));
+	}
+	
+	@Override
+	public String toString() {
+		return '{' + nsUri + '}' + localName;
+	}
+}
@@ -0,0 +1,224 @@
+package com.run.saxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+
+/**
+ * Unmarshals a document whose root holds many records concurrently.
+ *
+ * <p>
+ * The records are the child elements of the root that bind to a collection 
+ * property of the root bean. A {@link RecordScanner} finds them in the bytes
+ * of the document, and they are cut into chunks that are parsed and bound
+ * on the common {@link ForkJoinPool}, each into a bean of its own.
+ * Every chunk is parsed as a copy of the root start tag followed by its records,
+ * so the namespace declarations and attributes of the root are in scope
+ * just as in the original document.
+ * The rest of the root is parsed on the calling thread meanwhile, and finally 
+ * the items of the chunks are added to the root bean in document order.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class ParallelUnmarshaller {
+	
+	private static final byte[] REF_ATTRIBUTE = XMLSerializer.REF_ATTRIBUTE.getBytes(StandardCharsets.US_ASCII);
+	
+	private final SAXBContextImpl grammar;
+	private final int chunkSize;
+	private final BeanInfo<?> declaredType;
+	private final int interning;
+	
+	/**
+	 * @param declaredType
+	 *      The bean the root element is bound to, or null to select it
+	 *      by the name of the root element.
+	 * @param interning
+	 *      The capacity of the {@link StringTable} of each chunk, or 0 
+	 *      not to intern string values.
+	 */
+	ParallelUnmarshaller(SAXBContextImpl grammar, int chunkSize, BeanInfo<?> declaredType, int interning) {
+		this.grammar = grammar;
+		this.chunkSize = chunkSize;
+		this.declaredType = declaredType;
+		this.interning = interning;
+	}
+	
+	/**
+	 * @return null if the document can't be split, or has too few records 
+	 *      to be worth it. The caller parses it serially then.
+	 */
+	Object unmarshal(byte[] doc, int length) throws JAXBException {
+		// references can't be resolved across chunks
+		if (contains(doc, length, REF_ATTRIBUTE))
+			return null;
+		final RecordScanner scanner = new RecordScanner(doc, length);
+		if (!scanner.scan())
+			return null;
+		
+		final BeanInfo<?> beanInfo;
+		if (declaredType != null) {
+			beanInfo = declaredType;
+		} else {
+			String rootLocal = RecordScanner.getLocalName(scanner.rootName);
+			String rootUri = scanner.getNamespaceURI(RecordScanner.getPrefix(scanner.rootName));
+			if (rootUri == null)
+				return null;
+			beanInfo = grammar.selectRoot(new QName(rootUri, rootLocal));
+		}
+		// the items of the chunks can't be added to an immutable root
+		if (beanInfo == null || beanInfo.isImmutable())
+			return null;
+		
+		int records = 0;
+		boolean[] isRecord = new boolean[scanner.count];
+		String qname = null, local = null;
+		for (int i = 0; i < scanner.count; i++) {
+			// the scanner reuses the name string of a run of siblings
+			if (scanner.names[i] != qname) {
+				qname = scanner.names[i];
+				local = RecordScanner.getLocalName(qname);
+			}
+			if (beanInfo.properties.get(local) instanceof ListAccessor) {
+				isRecord[i] = true;
+				records++;
+			}
+		}
+		if (records < 2 * chunkSize)
+			return null;
+		
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		List<Future<Object>> chunks = new ArrayList<>();
+		ByteBuilder skeleton = new ByteBuilder(length / records * 16 + scanner.rootEnd);
+		skeleton.append(doc, 0, scanner.rootEnd);
+		ByteBuilder chunk = null;
+		int inChunk = 0;
+		for (int i = 0; i < scanner.count; i++) {
+			if (!isRecord[i]) {
+				skeleton.append(doc, scanner.starts[i], scanner.ends[i]);
+				continue;
+			}
+			if (chunk == null) {
+				chunk = new ByteBuilder((scanner.ends[i] - scanner.starts[i]) * chunkSize * 2);
+				chunk.append(doc, scanner.declStart, scanner.declEnd);
+				chunk.append(doc, scanner.rootStart, scanner.rootEnd);
+			}
+			chunk.append(doc, scanner.starts[i], scanner.ends[i]);
+			records--;
+			if (++inChunk == chunkSize || records == 0) {
+				chunk.append(doc, scanner.rootClose, length);
+				chunks.add(pool.submit(new Part(chunk)));
+				chunk = null;
+				inChunk = 0;
+			} 
+		}
+		skeleton.append(doc, scanner.rootClose, length);
+		
+		try {
+			Object bean = new Part(skeleton).call();
+			for (Future<Object> f: chunks) {
+				Object part = f.get();
+				for (Accessor acc: beanInfo.accessors) {
+					if (acc instanceof ListAccessor) {
+						Collection<Object> items = ((ListAccessor) acc).getList(part);
+						if (items != null)
+							((ListAccessor) acc).addAll(bean, items);
+					}
+				}
+			}
+			return bean;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			// the pool wraps the checked exceptions of a task, and may wrap them again
+			// when it rethrows them in another thread
+			while (cause.getClass() == RuntimeException.class && cause.getCause() != null)
+				cause = cause.getCause();
+			throw new JAXBException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JAXBException(e);
+		} catch (IOException | SAXException e) {
+			throw new JAXBException(e);
+		} finally {
+			for (Future<Object> f: chunks)
+				f.cancel(false);
+		}
+	}
+	
+	private static boolean contains(byte[] doc, int length, byte[] pattern) {
+		byte first = pattern[0];
+		outer:
+		for (int i = 0, last = length - pattern.length; i <= last; i++) {
+			if (doc[i] != first)
+				continue;
+			for (int j = 1; j < pattern.length; j++) {
+				if (doc[i + j] != pattern[j])
+					continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Parses a document and binds its root to a new instance of the root bean.
+	 */
+	private final class Part implements Callable<Object> {
+		private final ByteBuilder doc;
+		
+		Part(ByteBuilder doc) {
+			this.doc = doc;
+		}
+		
+		@Override
+		public Object call() throws IOException, SAXException {
+			UnmarshallingContext context = new UnmarshallingContext(grammar);
+			context.setDeclaredType(declaredType);
+			if (interning > 0)
+				context.setStringTable(new StringTable(interning));
+			XMLReader reader = grammar.createReader();
+			reader.setContentHandler(new SAXConnector(context));
+			reader.parse(new InputSource(new ByteArrayInputStream(doc.buf, 0, doc.len)));
+			return context.getResult();
+		}
+	}
+	
+	/**
+	 * Growable byte array.
+	 */
+	static final class ByteBuilder {
+		byte[] buf;
+		int len;
+		
+		ByteBuilder(int capacity) {
+			buf = new byte[Math.max(capacity, 256)];
+		}
+		
+		void append(byte[] b, int start, int end) {
+			int n = end - start;
+			if (len + n > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+			System.arraycopy(b, start, buf, len, n);
+			len += n;
+		}
+	}
+}
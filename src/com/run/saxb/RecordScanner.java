@@ -0,0 +1,295 @@
+package com.run.saxb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds the boundaries of the child elements of the root element
+ * in an XML document held as bytes, without parsing the document.
+ *
+ * <p>
+ * The scanner only looks at the markup characters, which are the same
+ * in all ASCII compatible encodings, and it understands just enough 
+ * XML to skip over comments, CDATA sections, processing instructions 
+ * and quoted attribute values. Documents that it can't split safely, 
+ * such as documents with a DOCTYPE (whose entities could expand to markup)
+ * or in UTF-16, are rejected by {@link #scan()}.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class RecordScanner {
+	
+	final byte[] doc;
+	final int length;
+	
+	/**
+	 * End of the XML declaration, or the start of the document if there is none.
+	 */
+	int declStart, declEnd;
+	
+	/**
+	 * The start tag of the root element.
+	 */
+	int rootStart, rootEnd;
+	
+	String rootName;
+	
+	/**
+	 * Start of the end tag of the root element.
+	 */
+	int rootClose;
+	
+	/**
+	 * Number of child elements of the root element.
+	 */
+	int count;
+	int[] starts = new int[256];
+	int[] ends = new int[256];
+	String[] names = new String[256];
+	
+	RecordScanner(byte[] doc, int length) {
+		this.doc = doc;
+		this.length = length;
+	}
+	
+	/**
+	 * @return false if the document can't be split.
+	 */
+	boolean scan() {
+		int pos = 0;
+		if (length >= 3 && (doc[0] & 0xFF) == 0xEF && (doc[1] & 0xFF) == 0xBB && (doc[2] & 0xFF) == 0xBF)
+			pos = 3;
+		if (length < pos + 2 || doc[pos] == 0 || doc[pos + 1] == 0 || (doc[pos] & 0xFF) >= 0xFE)
+			return false;
+		declStart = declEnd = pos;
+		
+		// prolog
+		while (true) {
+			pos = skipWhitespace(pos);
+			if (pos >= length || doc[pos] != '<')
+				return false;
+			if (startsWith(pos, "<?")) {
+				int end = indexOf(pos, "?>");
+				if (end < 0) return false;
+				if (startsWith(pos, "<?xml") && pos == declStart)
+					declEnd = end + 2;
+				pos = end + 2;
+			} else if (startsWith(pos, "<!--")) {
+				int end = indexOf(pos, "-->");
+				if (end < 0) return false;
+				pos = end + 3;
+			} else if (startsWith(pos, "<!")) {
+				return false;
+			} else {
+				break;
+			}
+		}
+		
+		rootStart = pos;
+		rootName = readName(pos + 1);
+		rootEnd = skipTag(pos);
+		if (rootEnd < 0)
+			return false;
+		if (doc[rootEnd - 2] == '/') {
+			rootClose = -1;
+			return true;
+		}
+		
+		// children of the root
+		pos = rootEnd;
+		while (true) {
+			while (pos < length && doc[pos] != '<')
+				pos++;
+			if (pos >= length)
+				return false;
+			if (startsWith(pos, "</")) {
+				rootClose = pos;
+				return true;
+			}
+			int end = skipMarkup(pos);
+			if (end == 0) {
+				// an element
+				end = skipElement(pos);
+				if (end < 0) return false;
+				add(pos, end);
+			} else if (end < 0) {
+				return false;
+			}
+			pos = end;
+		}
+	}
+	
+	/**
+	 * Gets the namespace URI bound to a prefix by the root start tag.
+	 * 
+	 * @return "" if the prefix is empty and there's no default namespace declaration,
+	 *      null if the prefix is not declared on the root.
+	 */
+	String getNamespaceURI(String prefix) {
+		String attr = prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+		for (int pos = rootStart + 1 + rootName.length(); pos < rootEnd; pos++) {
+			if (!isNameEnd(doc[pos - 1]) || !startsWith(pos, attr))
+				continue;
+			int eq = skipWhitespace(pos + attr.length());
+			if (eq >= rootEnd || doc[eq] != '=')
+				continue;
+			int quote = skipWhitespace(eq + 1);
+			for (int end = quote + 1; end < rootEnd; end++) {
+				if (doc[end] == doc[quote])
+					return new String(doc, quote + 1, end - quote - 1, StandardCharsets.UTF_8);
+			}
+			return null;
+		}
+		return prefix.isEmpty() ? "" : null;
+	}
+	
+	/**
+	 * Gets the prefix of a qualified name, "" if there is none.
+	 */
+	static String getPrefix(String qname) {
+		int idx = qname.indexOf(':');
+		return idx < 0 ? "" : qname.substring(0, idx);
+	}
+	
+	/**
+	 * Gets the local part of a qualified name.
+	 */
+	static String getLocalName(String qname) {
+		int idx = qname.indexOf(':');
+		return idx < 0 ? qname : qname.substring(idx + 1);
+	}
+	
+	private void add(int start, int end) {
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+			names = Arrays.copyOf(names, count * 2);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		// names repeat, so only the first of a run is decoded
+		String prev = count > 0 ? names[count - 1] : null;
+		names[count] = prev != null && nameEquals(start + 1, prev) ? prev : readName(start + 1);
+		count++;
+	}
+	
+	/**
+	 * Skips a comment, a CDATA section or a processing instruction.
+	 * 
+	 * @return the position after it, 0 if <tt>pos</tt> is not at one of them, -1 if unterminated.
+	 */
+	private int skipMarkup(int pos) {
+		int end;
+		if (startsWith(pos, "<!--")) {
+			end = indexOf(pos, "-->");
+			return end < 0 ? -1 : end + 3;
+		}
+		if (startsWith(pos, "<![CDATA[")) {
+			end = indexOf(pos, "]]>");
+			return end < 0 ? -1 : end + 3;
+		}
+		if (startsWith(pos, "<?")) {
+			end = indexOf(pos, "?>");
+			return end < 0 ? -1 : end + 2;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Skips a whole element, starting at its start tag.
+	 * 
+	 * @return the position after its end tag, or -1 if it's not well-formed.
+	 */
+	private int skipElement(int pos) {
+		int depth = 0;
+		while (true) {
+			while (pos < length && doc[pos] != '<')
+				pos++;
+			if (pos >= length)
+				return -1;
+			int end = skipMarkup(pos);
+			if (end < 0)
+				return -1;
+			if (end == 0) {
+				boolean close = doc[pos + 1] == '/';
+				end = skipTag(pos);
+				if (end < 0)
+					return -1;
+				if (close)
+					depth--;
+				else if (doc[end - 2] != '/')
+					depth++;
+				if (depth == 0)
+					return end;
+			}
+			pos = end;
+		}
+	}
+	
+	/**
+	 * Skips a start or end tag, including quoted attribute values.
+	 * 
+	 * @return the position after the closing '>', or -1.
+	 */
+	private int skipTag(int pos) {
+		byte quote = 0;
+		for (pos++; pos < length; pos++) {
+			byte b = doc[pos];
+			if (quote != 0) {
+				if (b == quote) quote = 0;
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return pos + 1;
+			}
+		}
+		return -1;
+	}
+	
+	private String readName(int pos) {
+		int end = pos;
+		while (end < length && !isNameEnd(doc[end]))
+			end++;
+		return new String(doc, pos, end - pos, StandardCharsets.UTF_8);
+	}
+	
+	private boolean nameEquals(int pos, String name) {
+		int n = name.length();
+		if (pos + n >= length || !isNameEnd(doc[pos + n]))
+			return false;
+		for (int i = 0; i < n; i++) {
+			if (doc[pos + i] != name.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean isNameEnd(byte b) {
+		return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+	
+	private int skipWhitespace(int pos) {
+		while (pos < length && (doc[pos] == ' ' || doc[pos] == '\t' || doc[pos] == '\r' || doc[pos] == '\n'))
+			pos++;
+		return pos;
+	}
+	
+	private boolean startsWith(int pos, String s) {
+		if (pos + s.length() > length)
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (doc[pos + i] != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	private int indexOf(int pos, String s) {
+		for (int i = pos; i + s.length() <= length; i++) {
+			if (startsWith(i, s))
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,32 @@
+package com.run.saxb;
+
+/**
+ * How a {@link Marshaller} deals with objects that are reachable 
+ * more than once in the content tree.
+ */
+public enum ReferenceMode {
+	
+	/**
+	 * Objects are marshalled every time they are reached. This is the default.
+	 * A cycle in the object graph never ends.
+	 */
+	NONE,
+	
+	/**
+	 * Objects are marshalled every time they are reached, but the objects 
+	 * that are being marshalled are tracked, so that a cycle in the object graph 
+	 * fails the marshalling instead of looping.
+	 */
+	CHECK_CYCLES,
+	
+	/**
+	 * Objects that are reachable more than once are marshalled the first time 
+	 * only, with a <tt>saxb-id</tt> attribute. Every other element for them is 
+	 * empty and has a <tt>saxb-ref</tt> attribute with that id instead. 
+	 * Cycles are references too.
+	 * 
+	 * <p>
+	 * An {@link Unmarshaller} resolves the references back to the same object.
+	 */
+	ID_REF
+}
@@ -29,7 +29,39 @@ public abstract class SAXBContext {
      */
     public static SAXBContext newInstance(String contextPath)
         throws JAXBException {
-        return ContextFinder.find(contextPath);
+        return newInstance(contextPath, Thread.currentThread().getContextClassLoader());
+    }
+    
+    /**
+     * <p>
+     * Obtain a new instance of a <tt>SAXBContext</tt> class.
+     *
+     * <p>
+     * The classes of the packages in <tt>contextPath</tt> are loaded through
+     * <tt>classLoader</tt>. The context is kept in the {@link #getContextCache() context cache},
+     * so that the next call with the same context path and class loader returns the same
+     * context without scanning the packages again. When several threads make the same
+     * call at once, only one of them builds the context.
+     *
+     * @param contextPath list of colon (':', \u003A) separated java package names that
+     *                    contain schema-derived classes
+     * @param classLoader this class loader will be used to locate the implementation
+     *                    classes. null for the system class loader.
+     *
+     * @throws JAXBException if an error was encountered while creating the
+     *                       <tt>SAXBContext</tt>
+     */
+    public static SAXBContext newInstance(String contextPath, ClassLoader classLoader)
+        throws JAXBException {
+        return ContextFinder.find(contextPath, classLoader);
+    }
+    
+    /**
+     * Gets the cache of the contexts created by {@link #newInstance(String,ClassLoader)},
+     * to tune its bound, read its statistics or drop the contexts of a class loader.
+     */
+    public static ContextCache getContextCache() {
+        return ContextFinder.cache;
     }
     
     /**
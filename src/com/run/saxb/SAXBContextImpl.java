@@ -1,21 +1,32 @@
 package com.run.saxb;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlNs;
+import javax.xml.bind.annotation.XmlSchema;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.TransformerFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 public class SAXBContextImpl extends SAXBContext {
 	
-	protected final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+	protected final SAXParserFactory spf = SAXParserFactory.newInstance();
 	
-	protected final TransformerFactory tff = TransformerFactory.newInstance();
+	/**
+	 * Buffers shared by the marshallers and unmarshallers of this context.
+	 */
+	final BufferPool bufferPool;
 	
 	final Map<QName, BeanInfo<?>> rootMap = new LinkedHashMap<>();
 	
@@ -26,6 +37,30 @@ public class SAXBContextImpl extends SAXBContext {
     
     private final Class<?>[] classes;
     
+    /**
+     * The values of {@link #rootMap} as an array.
+     * The index of a root is its tag code in compact encodings.
+     */
+    final BeanInfo<?>[] roots;
+    
+    /**
+     * Namespace URIs of the bound classes, and the prefixes bound to them.
+     * Index 0 is the empty namespace with the empty prefix. A namespace index
+     * refers to these arrays, and all of them but the first are declared 
+     * on the root element when marshalling.
+     */
+    private final List<String> nsUriList = new ArrayList<>();
+    private final List<String> prefixList = new ArrayList<>();
+    private final Map<String, Integer> nsIndexes = new HashMap<>();
+    final String[] nsUris;
+    final String[] prefixes;
+    
+    /**
+     * The name of the <tt>xsi:type</tt> attribute, or null if no bound class
+     * has bound subclasses, in which case the namespace is not declared either.
+     */
+    final Name xsiType;
+    
     /**
      * <p>
      * Obtain a new instance of a <tt>JAXBContext</tt> class.
@@ -45,16 +80,190 @@ public class SAXBContextImpl extends SAXBContext {
      * </ol>
      */
     public SAXBContextImpl(List<?> classList) throws JAXBException {
+    	this(classList, new BufferPool());
+    }
+    
+    /**
+     * Creates a context whose marshallers and unmarshallers take their buffers
+     * from the given pool.
+     */
+    public SAXBContextImpl(List<?> classList, BufferPool bufferPool) throws JAXBException {
+    	
+    	this.bufferPool = bufferPool;
+    	spf.setNamespaceAware(true);
+    	addNamespace("", "");
     	
     	Object[] src = classList.toArray();
     	this.classes = new Class[src.length];
         System.arraycopy(src, 0, classes, 0, src.length);
         
         for (Class<?> c: classes) {
-        	BeanInfo<?> bean = new BeanInfo<>(this, c);
-        	beanInfoMap.put(bean.jaxbType, bean);
+        	BeanInfo<?> bean = getOrCreate(c);
         	rootMap.put(bean.qname, bean);
         }
+        this.roots = rootMap.values().toArray(new BeanInfo<?>[rootMap.size()]);
+        this.xsiType = findSubtypes() ? createName(getXsiIndex(), "type") : null;
+        this.nsUris = nsUriList.toArray(new String[nsUriList.size()]);
+        this.prefixes = prefixList.toArray(new String[prefixList.size()]);
+    }
+    
+    /**
+     * Gets the namespace URIs known to this context, indexed by namespace index.
+     */
+    public String[] getNamespaceURIs() {
+    	return nsUris.clone();
+    }
+    
+    /**
+     * Gets the namespace index of the elements of the given class, which is the 
+     * namespace of the {@link XmlSchema} annotation of its package. 
+     * The prefixes declared by the annotation are registered along the way.
+     */
+    int getNamespaceIndex(Class<?> clazz) {
+    	Package pkg = clazz.getPackage();
+    	XmlSchema schema = pkg == null ? null : pkg.getAnnotation(XmlSchema.class);
+    	if (schema == null)
+    		return 0;
+    	for (XmlNs ns: schema.xmlns()) {
+    		if (!nsIndexes.containsKey(ns.namespaceURI()) && !ns.prefix().isEmpty() 
+    				&& !prefixList.contains(ns.prefix()))
+    			addNamespace(ns.namespaceURI(), ns.prefix());
+    	}
+    	Integer index = nsIndexes.get(schema.namespace());
+    	if (index != null)
+    		return index;
+    	String prefix = "ns" + nsUriList.size();
+    	while (prefixList.contains(prefix))
+    		prefix = "n" + prefix;
+    	return addNamespace(schema.namespace(), prefix);
+    }
+    
+    /**
+     * Gives each bean the list of its bound subclasses.
+     *
+     * @return true if some bean has subclasses.
+     */
+    private boolean findSubtypes() {
+    	boolean found = false;
+    	for (BeanInfo<?> bi: beanInfoMap.values()) {
+    		List<BeanInfo<?>> subtypes = new ArrayList<>();
+    		for (BeanInfo<?> sub: beanInfoMap.values()) {
+    			if (sub != bi && bi.jaxbType.isAssignableFrom(sub.jaxbType))
+    				subtypes.add(sub);
+    		}
+    		bi.setSubtypes(subtypes);
+    		found |= !subtypes.isEmpty();
+    	}
+    	return found;
+    }
+    
+    /**
+     * Gets the namespace index of XML Schema instance, registering it if needed.
+     */
+    private int getXsiIndex() {
+    	Integer index = nsIndexes.get(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+    	if (index != null)
+    		return index;
+    	String prefix = "xsi";
+    	while (prefixList.contains(prefix))
+    		prefix = "n" + prefix;
+    	return addNamespace(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, prefix);
+    }
+    
+    private int addNamespace(String uri, String prefix) {
+    	int index = nsUriList.size();
+    	nsUriList.add(uri.intern());
+    	prefixList.add(prefix.intern());
+    	nsIndexes.put(uri, index);
+    	return index;
+    }
+    
+    /**
+     * Creates the name of an element in the given namespace.
+     */
+    Name createName(int nsIndex, String localName) {
+    	return new Name(nsIndex, nsUriList.get(nsIndex), prefixList.get(nsIndex), localName);
+    }
+    
+    /**
+     * Sets the pool of instances of a bound class, for unmarshalling.
+     *
+     * @param pool
+     *      null to remove the pool.
+     * @throws IllegalArgumentException
+     *      If the class is not bound by this context
+     * @see Unmarshaller#unmarshalInto(java.io.InputStream, Object)
+     */
+    public <T> void setInstancePool(Class<T> clazz, InstancePool<T> pool) {
+    	BeanInfo<T> bi = getBeanInfo(clazz);
+    	if (bi == null)
+    		throw new IllegalArgumentException(clazz + " is not known to this context");
+    	bi.setInstancePool(pool);
+    }
+    
+    /**
+     * Sets the memo of the elements written for the beans of an immutable class,
+     * so that a bean that is marshalled again is written by copying its element.
+     *
+     * @param memo
+     *      null to remove the memo.
+     * @throws IllegalArgumentException
+     *      If the class is not bound by this context, or is not immutable
+     * @see BeanInfo#isImmutable()
+     */
+    public void setFragmentMemo(Class<?> clazz, FragmentMemo memo) {
+    	BeanInfo<?> bi = getBeanInfo(clazz);
+    	if (bi == null)
+    		throw new IllegalArgumentException(clazz + " is not known to this context");
+    	if (memo != null && !bi.isImmutable())
+    		throw new IllegalArgumentException(clazz + " is not immutable, its elements can't be memoized");
+    	bi.setFragmentMemo(memo);
+    }
+    
+    /**
+     * Gets the pool of buffers shared by the marshallers and unmarshallers 
+     * of this context, e.g. to watch its statistics.
+     */
+    public BufferPool getBufferPool() {
+    	return bufferPool;
+    }
+    
+    /**
+     * Marshals and unmarshals synthetic instances of each root, in each
+     * {@link DataFormat}, so that the binding code is loaded and compiled before 
+     * the first documents come in, typically at startup before taking traffic.
+     * 
+     * <p>
+     * The instances have a value for every property and an item in every 
+     * collection, including the subtypes of the items. Install the 
+     * {@link #setInstancePool instance pools} and the {@link #setFragmentMemo 
+     * fragment memos} afterwards, so that they don't keep synthetic instances.
+     *
+     * @param rounds
+     *      Number of times each instance is marshalled and unmarshalled in each
+     *      format, a few thousands for the JIT to compile the hot paths.
+     * @throws JAXBException
+     *      If an instance can't be marshalled or unmarshalled, which means that
+     *      documents of its root can't be either.
+     */
+    public void warmUp(int rounds) throws JAXBException {
+    	new WarmUp(this).run(rounds);
+    }
+    
+    /**
+     * Writes the names of the classes of the binding, the bound classes, the types 
+     * of their properties and the classes that access them, in the format of 
+     * the class list of a class data sharing archive (<tt>-XX:SharedClassListFile</tt>).
+     *
+     * <p>
+     * This covers the classes of the model, which are loaded from the application 
+     * class path. The classes of the library, of the parser and of the JDK are best 
+     * listed by the JVM itself, from a training run that calls {@link #warmUp}
+     * with <tt>-XX:DumpLoadedClassList</tt>, or archived at its end with 
+     * <tt>-XX:ArchiveClassesAtExit</tt>. The two lists can be merged.
+     */
+    public void writeClassList(Appendable out) throws IOException {
+    	new WarmUp(this).writeClassList(out);
     }
     
     @Override
@@ -67,6 +276,20 @@ public class SAXBContextImpl extends SAXBContext {
         return new Unmarshaller(this);
     }
     
+    /**
+     * Creates a namespace-aware parser. 
+     * The factory isn't thread-safe, so the calls are serialized.
+     */
+    XMLReader createReader() {
+    	synchronized (spf) {
+    		try {
+    			return spf.newSAXParser().getXMLReader();
+    		} catch (ParserConfigurationException | SAXException e) {
+    			throw new IllegalStateException(e);
+    		}
+    	}
+    }
+    
     /**
      * Gets the {@link BeanInfo} object that can handle
      * the given JAXB-bound object.
@@ -92,6 +315,16 @@ public class SAXBContextImpl extends SAXBContext {
         return null;
     }
     
+    /**
+     * Gets the {@link BeanInfo} of a bound class.
+     *
+     * @return null if the class is not bound by this context.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> BeanInfo<T> getBeanInfo(Class<T> clazz) {
+    	return (BeanInfo<T>) beanInfoMap.get(clazz);
+    }
+    
     /**
      * Based on the tag name, determine what object to unmarshal,
      * and then set a new object and its loader to the current unmarshaller state.
@@ -104,6 +337,21 @@ public class SAXBContextImpl extends SAXBContext {
         return bi;
     }
     
+    /**
+     * Selects the root by its local name only, for input whose names
+     * carry no namespace.
+     *
+     * @return
+     *      null if no root has this name.
+     */
+    public final BeanInfo<?> selectRoot(String localName) {
+    	for (BeanInfo<?> bi: roots) {
+    		if (bi.name.localName.equals(localName))
+    			return bi;
+    	}
+    	return null;
+    }
+    
     protected BeanInfo<?> getOrCreate(Class<?> clazz) {
     	BeanInfo<?> bi = beanInfoMap.get(clazz);
         if (bi != null)    return bi;
@@ -113,22 +361,6 @@ public class SAXBContextImpl extends SAXBContext {
     }
     
     public QName createQName(BeanInfo<?> bean) {
-		return new QName(bean.beanName);
-    }
-    
-    public QName createQName(Element e) {
-    	return new QName(e.getNamespaceURI(), e.getLocalName(), getPrefix(e));
-    }
-    
-    /**
-     * Gets the prefix. This is slow.
-     *
-     * @return can be "" but never null.
-     */
-    private static final String getPrefix(Element e) {
-    	String qname = e.getTagName();
-        int idx = qname.indexOf(':');
-        if (idx < 0) return "";
-        else         return qname.substring(0, idx);
+		return new QName(bean.name.nsUri, bean.name.localName);
     }
 }
\ No newline at end of file
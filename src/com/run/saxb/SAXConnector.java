@@ -0,0 +1,69 @@
+package com.run.saxb;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Receives SAX events and sends them to an {@link XmlVisitor}.
+ *
+ * <p>
+ * A single {@link TagName} is reused for all the elements of the document.
+ */
+final class SAXConnector extends DefaultHandler {
+
+	private final XmlVisitor next;
+	private final TagName tagName = new TagName();
+	private Locator locator;
+
+	SAXConnector(XmlVisitor next) {
+		this.next = next;
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		next.startDocument(locator);
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		locator = null;
+		next.endDocument();
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		tagName.uri = uri;
+		tagName.local = localName;
+		tagName.qname = qName;
+		tagName.prefix = null;
+		tagName.atts = atts;
+		next.startElement(tagName);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		tagName.uri = uri;
+		tagName.local = localName;
+		tagName.qname = qName;
+		tagName.prefix = null;
+		tagName.atts = null;
+		next.endElement(tagName);
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		next.text(ch, start, length);
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		next.text(ch, start, length);
+	}
+}
@@ -0,0 +1,139 @@
+package com.run.saxb;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads one element and its content from a {@link XMLStreamReader}
+ * and sends the events to an {@link XmlVisitor}.
+ *
+ * <p>
+ * The reader must be at the start tag of the element, or at the start of the
+ * document. It is left at the event right after the end tag of the element,
+ * so that an element embedded in a larger document can be bound without
+ * buffering it, and the caller can go on reading the rest.
+ *
+ * <p>
+ * Text is passed straight from the buffer of the reader. A single {@link TagName}
+ * and attribute list are reused for all the elements.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+final class StAXConnector implements Locator {
+
+	private final XmlVisitor next;
+	private final TagName tagName = new TagName();
+	private final AttributesImpl atts = new AttributesImpl();
+	private XMLStreamReader reader;
+
+	StAXConnector(XmlVisitor next) {
+		this.next = next;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *      If the reader is neither at a start tag nor at the start of the document.
+	 */
+	void bridge(XMLStreamReader reader) throws XMLStreamException, SAXException {
+		int event = reader.getEventType();
+		if (event == XMLStreamConstants.START_DOCUMENT) {
+			while (!reader.isStartElement())
+				event = reader.next();
+		}
+		if (event != XMLStreamConstants.START_ELEMENT)
+			throw new IllegalStateException("The reader is not at a start tag but at event " + event);
+
+		this.reader = reader;
+		try {
+			next.startDocument(this);
+			int depth = 0;
+			while (true) {
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					startElement();
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					setName();
+					tagName.atts = null;
+					next.endElement(tagName);
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					next.text(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				default:
+					// comments and processing instructions
+					break;
+				}
+				if (depth == 0)
+					break;
+				event = reader.next();
+			}
+			next.endDocument();
+			if (reader.hasNext())
+				reader.next();
+		} finally {
+			this.reader = null;
+		}
+	}
+
+	private void startElement() throws SAXException {
+		atts.clear();
+		for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+			String uri = reader.getAttributeNamespace(i);
+			String local = reader.getAttributeLocalName(i);
+			String prefix = reader.getAttributePrefix(i);
+			atts.addAttribute(uri == null ? "" : uri, local,
+					prefix == null || prefix.isEmpty() ? local : prefix + ':' + local,
+					reader.getAttributeType(i), reader.getAttributeValue(i));
+		}
+		setName();
+		tagName.atts = atts;
+		next.startElement(tagName);
+	}
+
+	private void setName() {
+		String uri = reader.getNamespaceURI();
+		String prefix = reader.getPrefix();
+		if (prefix == null)
+			prefix = "";
+		tagName.uri = uri == null ? "" : uri;
+		tagName.local = reader.getLocalName();
+		tagName.prefix = prefix;
+		tagName.qname = prefix.isEmpty() ? tagName.local : prefix + ':' + tagName.local;
+	}
+
+	@Override
+	public String getPublicId() {
+		Location location = reader == null ? null : reader.getLocation();
+		return location == null ? null : location.getPublicId();
+	}
+
+	@Override
+	public String getSystemId() {
+		Location location = reader == null ? null : reader.getLocation();
+		return location == null ? null : location.getSystemId();
+	}
+
+	@Override
+	public int getLineNumber() {
+		Location location = reader == null ? null : reader.getLocation();
+		return location == null ? -1 : location.getLineNumber();
+	}
+
+	@Override
+	public int getColumnNumber() {
+		Location location = reader == null ? null : reader.getLocation();
+		return location == null ? -1 : location.getColumnNumber();
+	}
+}
@@ -0,0 +1,81 @@
+package com.run.saxb;
+
+/**
+ * Bounded table of the string values bound by an unmarshaller, so that a value
+ * that repeats throughout the documents, like a status or a currency code,
+ * is a single {@link String} in the content trees instead of one per occurrence.
+ *
+ * <p>
+ * Values are looked up by the characters that the parser hands over, so a value
+ * that is in the table doesn't allocate at all. The table has a fixed number of
+ * slots, picked by the hash of the characters, and a slot is replaced when another
+ * value falls in it. Values longer than {@link #MAX_LENGTH} are not kept, since
+ * they seldom repeat.
+ *
+ * <p>
+ * Not thread-safe. Each unmarshaller has its own table.
+ *
+ * @see Unmarshaller#setInterning(int)
+ */
+final class StringTable {
+
+	/**
+	 * Maximum length of the values kept in the table.
+	 */
+	static final int MAX_LENGTH = 64;
+
+	private final String[] values;
+	private final int[] hashes;
+
+	/**
+	 * @param capacity
+	 *      Number of slots, rounded up to a power of two.
+	 */
+	StringTable(int capacity) {
+		int n = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.values = new String[n];
+		this.hashes = new int[n];
+	}
+
+	/**
+	 * Gets the value of a range of characters.
+	 */
+	String intern(char[] ch, int start, int length) {
+		if (length > MAX_LENGTH)
+			return new String(ch, start, length);
+		int h = 0;
+		for (int i = start, end = start + length; i < end; i++)
+			h = 31 * h + ch[i];
+		int slot = (h ^ (h >>> 16)) & (values.length - 1);
+		String value = values[slot];
+		if (value != null && hashes[slot] == h && value.length() == length) {
+			int i = 0;
+			while (i < length && value.charAt(i) == ch[start + i])
+				i++;
+			if (i == length)
+				return value;
+		}
+		value = new String(ch, start, length);
+		values[slot] = value;
+		hashes[slot] = h;
+		return value;
+	}
+
+	/**
+	 * Gets the value of a string that the parser has already made,
+	 * such as the value of an attribute.
+	 */
+	String intern(String s) {
+		if (s.length() > MAX_LENGTH)
+			return s;
+		// the same hash as String.hashCode(), which is usually cached
+		int h = s.hashCode();
+		int slot = (h ^ (h >>> 16)) & (values.length - 1);
+		String value = values[slot];
+		if (value != null && hashes[slot] == h && value.equals(s))
+			return value;
+		values[slot] = s;
+		hashes[slot] = h;
+		return s;
+	}
+}
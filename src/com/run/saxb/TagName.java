@@ -25,6 +25,7 @@
 package com.run.saxb;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 /**
  * Represents an XML tag name (and attributes for start tags.)
@@ -63,6 +64,18 @@ public class TagName {
      */
     public String qname;
     
+    /**
+     * The prefix of the tag. Computed from {@link #qname} on demand
+     * when the input doesn't report it.
+     */
+    public String prefix;
+    
+    /**
+     * Used only for the startElement event.
+     * Otherwise the value is undefined.
+     */
+    public Attributes atts;
+    
     public TagName() {
     	
     }
@@ -71,6 +84,7 @@ public class TagName {
         this.uri = element.getNamespaceURI();
         this.local = element.getLocalName();
         this.qname = element.getTagName();
+        this.prefix = element.getPrefix() != null ? element.getPrefix() : "";
     }
 
     /**
@@ -81,14 +95,16 @@ public class TagName {
     }
 
     /**
-     * Gets the prefix. This is slow.
+     * Gets the prefix, as reported by the parser.
      *
      * @return can be "" but never null.
      */
     public final String getPrefix() {
-        int idx = qname.indexOf(':');
-        if (idx < 0) return "";
-        else         return qname.substring(0, idx);
+        if (prefix == null) {
+            int idx = qname.indexOf(':');
+            prefix = idx < 0 ? "" : qname.substring(0, idx);
+        }
+        return prefix;
     }
 
     @Override
@@ -1,25 +1,32 @@
 package com.run.saxb;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
-import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * The <tt>Unmarshaller</tt> class governs the process of deserializing XML
@@ -62,6 +69,15 @@ import org.xml.sax.SAXException;
  * </blockquote>
  *
  * <p>
+ * Validating while unmarshalling, against the {@link Facets} of the properties:
+ * <blockquote>
+ *    <pre>
+ *       u.setValidating( true );
+ *       Object o = u.unmarshal( is );
+ *    </pre>
+ * </blockquote>
+ *
+ * <p>
  * Unmarshalling from a <tt>org.w3c.dom.Node</tt>:
  * <blockquote>
  *    <pre>
@@ -76,6 +92,22 @@ import org.xml.sax.SAXException;
  *       Object o = u.unmarshal( doc );
  *    </pre>
  * </blockquote>
+ *
+ * <p>
+ * Unmarshalling an element embedded in a larger document, 
+ * from a <tt>javax.xml.stream.XMLStreamReader</tt>:
+ * <blockquote>
+ *    <pre>
+ *       XMLStreamReader xsr = XMLInputFactory.newInstance().createXMLStreamReader( ... );
+ *       xsr.nextTag();    // the feed
+ *       xsr.nextTag();    // the first entry
+ *       while (xsr.isStartElement()) {
+ *           Entry entry = u.unmarshal( xsr, Entry.class );
+ *           if (xsr.isWhiteSpace())
+ *               xsr.nextTag();
+ *       }
+ *    </pre>
+ * </blockquote>
  * 
  * @author <ul><li>Ryan Shoemaker, Sun Microsystems, Inc.</li><li>Kohsuke Kawaguchi, Sun Microsystems, Inc.</li><li>Joe Fialli, Sun Microsystems, Inc.</li></ul>
  * @see JAXBContext
@@ -85,13 +117,149 @@ import org.xml.sax.SAXException;
 public class Unmarshaller {
 
 	private SAXBContextImpl grammar;
-	private DocumentBuilder parser;
+	/**
+	 * Default number of records per chunk in parallel unmarshalling.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+	
+	private final XMLReader reader;
+	private final UnmarshallingContext context;
+	private final DOMScanner scanner;
+	private StAXConnector staxConnector;
+	
+	/**
+	 * Tracks the beans released while a binary target is reset.
+	 */
+	private final IdentitySet released = new IdentitySet(16);
+	
+	/**
+	 * The bean the root element is bound to by the <tt>unmarshal</tt> method
+	 * being run, or null to select it by the name of the root element.
+	 */
+	private BeanInfo<?> declaredType;
+	private DataFormat format = DataFormat.XML;
+	private boolean parallel;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private boolean validating;
+	private int interning;
 	
 	public Unmarshaller(SAXBContextImpl context) {
 		this.grammar = context;
-		try {
-			this.parser = grammar.dbf.newDocumentBuilder();
-		} catch (ParserConfigurationException e) { }
+		this.context = new UnmarshallingContext(context);
+		this.reader = context.createReader();
+		reader.setContentHandler(new SAXConnector(this.context));
+		this.scanner = new DOMScanner(this.context);
+	}
+	
+	/**
+	 * Gets the format that this unmarshaller reads from streams and files.
+	 */
+	public DataFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Sets the format that this unmarshaller reads from streams and files.
+	 * {@link DataFormat#BINARY} can't be read from a <tt>Reader</tt>.
+	 * DOM nodes and StAX readers are always read as XML.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the parameter is null
+	 */
+	public void setFormat(DataFormat format) {
+		if (format == null)
+			throw new IllegalArgumentException("format");
+		this.format = format;
+	}
+	
+	public boolean isParallel() {
+		return parallel;
+	}
+	
+	/**
+	 * Turns parallel unmarshalling of large documents on or off. It is off by default.
+	 * 
+	 * <p>
+	 * The child elements of the root that bind to a collection property are the
+	 * records of the document. When there are more than two chunks of records, 
+	 * they are parsed and bound concurrently on the common fork-join pool, 
+	 * and added to the collection in document order.
+	 * This only applies to the XML format read from streams and files, 
+	 * which are read into memory first.
+	 * 
+	 * @see ParallelUnmarshaller
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	public boolean isValidating() {
+		return validating;
+	}
+	
+	/**
+	 * Turns validation on or off. It is off by default.
+	 * 
+	 * <p>
+	 * In validating mode, the XML input is checked against the constraints of 
+	 * the bound classes as it is bound: the required properties, the occurrences 
+	 * of the properties and the {@link Facets} of their values. Unknown elements are 
+	 * rejected too. The first violation fails the unmarshalling with a 
+	 * {@link JAXBException} whose cause is a {@link org.xml.sax.SAXParseException}
+	 * with the line and column of the violation, and the path of the element in 
+	 * its message.
+	 * 
+	 * <p>
+	 * Validating documents aren't unmarshalled in parallel. 
+	 * The binary format and DOM nodes are not validated.
+	 */
+	public void setValidating(boolean validating) {
+		this.validating = validating;
+		context.setValidating(validating);
+	}
+	
+	public int getInterning() {
+		return interning;
+	}
+	
+	/**
+	 * Turns the interning of string values on or off. It is off by default.
+	 * 
+	 * <p>
+	 * When on, the values of <tt>String</tt> properties and collection items that
+	 * repeat, such as status or currency codes, are bound to the same 
+	 * <tt>String</tt> instead of one per occurrence, which cuts the memory that
+	 * large content trees retain. The values are kept in a table of a fixed number 
+	 * of slots, which is kept across documents, and are looked up by the characters
+	 * of the input without creating a string first. Values longer than 64 
+	 * characters are not interned.
+	 * 
+	 * @param capacity
+	 *      The number of values the table can hold, or 0 to turn interning off.
+	 * @throws IllegalArgumentException
+	 *      If the parameter is negative
+	 */
+	public void setInterning(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity");
+		this.interning = capacity;
+		context.setStringTable(capacity == 0 ? null : new StringTable(capacity));
+	}
+	
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * Sets the number of records per chunk in parallel unmarshalling.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If the parameter is not positive
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize");
+		this.chunkSize = chunkSize;
 	}
 	
     /**
@@ -108,6 +276,20 @@ public class Unmarshaller {
      *     If any unexpected errors occur while unmarshalling
      */
     public Object unmarshal(File f) throws JAXBException {
+    	if (format == DataFormat.BINARY) {
+    		try (InputStream is = new FileInputStream(f)) {
+    			return unmarshalBinary(is);
+    		} catch (IOException e) {
+    			throw new JAXBException(e);
+    		}
+    	}
+    	if (parallel && !validating && format == DataFormat.XML) {
+    		try (InputStream is = new FileInputStream(f)) {
+    			return unmarshalParallel(is);
+    		} catch (IOException e) {
+    			throw new JAXBException(e);
+    		}
+    	}
     	URL url;
         try {
             // copied from JAXP
@@ -141,6 +323,10 @@ public class Unmarshaller {
      *     If any unexpected errors occur while unmarshalling
      */
     public Object unmarshal(InputStream is) throws JAXBException {
+    	if (format == DataFormat.BINARY)
+    		return unmarshalBinary(is);
+    	if (parallel && !validating && format == DataFormat.XML)
+    		return unmarshalParallel(is);
     	return unmarshal0(new InputSource(is));
     }
     
@@ -161,6 +347,8 @@ public class Unmarshaller {
      * @since JAXB2.0
      */
     public Object unmarshal(Reader reader) throws JAXBException {
+    	if (format == DataFormat.BINARY)
+    		throw new JAXBException("The binary format can't be read from a Reader");
     	return unmarshal0(new InputSource(reader));
     }
 
@@ -171,6 +359,10 @@ public class Unmarshaller {
      * <p>
      * Implements <a href="#unmarshalGlobal">Unmarshal Global Root Element</a>.
      *
+     * <p>
+     * The tree is walked in place and bound in the same way as a stream, 
+     * including validation. No copy of it is made.
+     *
      * @param node
      *      the document/element to unmarshal XML data from.
      *      The caller must support at least Document and Element.
@@ -178,60 +370,419 @@ public class Unmarshaller {
      *
      * @throws JAXBException
      *     If any unexpected errors occur while unmarshalling
-     * @see #unmarshal(org.w3c.dom.Node, Class)
+     * @throws IllegalArgumentException
+     *      If the node is neither a document nor an element.
      */
     public Object unmarshal(Node node) throws JAXBException {
-    	return unmarshalRoot(node);
+    	try {
+    		scanner.scan(node);
+    		return context.getResult();
+    	} catch (SAXException e) {
+    		throw new JAXBException(e);
+    	}
     }
     
-    private Object unmarshal0(InputSource is) throws JAXBException  {
+    /**
+     * Unmarshal XML data from the specified XML Source and return the
+     * resulting content tree.
+     *
+     * <p>
+     * Implements <a href="#unmarshalGlobal">Unmarshal Global Root Element</a>.
+     *
+     * <p>
+     * A {@link SAXSource} is parsed with its own <tt>XMLReader</tt> if it has one, 
+     * which must be namespace aware. Its content handler is replaced.
+     * A {@link StreamSource} is read like the stream it wraps, in the
+     * {@link #getFormat() format} of this unmarshaller. A {@link DOMSource}
+     * and a {@link StAXSource} over an <tt>XMLStreamReader</tt> are bound
+     * in place.
+     *
+     * @param source the XML Source to unmarshal XML data from
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling
+     * @throws IllegalArgumentException
+     *      If the Source parameter is null, or of an unsupported kind
+     */
+    public Object unmarshal(Source source) throws JAXBException {
+    	if (source == null)
+    		throw new IllegalArgumentException("source");
+    	if (source instanceof SAXSource) {
+    		SAXSource ss = (SAXSource) source;
+    		XMLReader r = ss.getXMLReader();
+    		if (r == null)
+    			return unmarshal0(ss.getInputSource());
+    		r.setContentHandler(new SAXConnector(context));
+    		try {
+    			r.parse(ss.getInputSource());
+    			return context.getResult();
+    		} catch (IOException | SAXException e) {
+    			throw new JAXBException(e);
+    		}
+    	}
+    	if (source instanceof StreamSource) {
+    		StreamSource ss = (StreamSource) source;
+    		if (ss.getInputStream() != null)
+    			return unmarshal(ss.getInputStream());
+    		if (ss.getReader() != null)
+    			return unmarshal(ss.getReader());
+    		if (format == DataFormat.BINARY || parallel && !validating && format == DataFormat.XML) {
+    			try (InputStream is = new URL(ss.getSystemId()).openStream()) {
+    				return unmarshal(is);
+    			} catch (IOException e) {
+    				throw new JAXBException(e);
+    			}
+    		}
+    		return unmarshal0(new InputSource(ss.getSystemId()));
+    	}
+    	if (source instanceof DOMSource)
+    		return unmarshal(((DOMSource) source).getNode());
+    	if (source instanceof StAXSource && ((StAXSource) source).getXMLStreamReader() != null)
+    		return unmarshal(((StAXSource) source).getXMLStreamReader());
+    	throw new IllegalArgumentException("Unsupported source: " + source);
+    }
+    
+    /**
+     * Unmarshal XML data from the specified pull parser and return the
+     * resulting content tree.
+     *
+     * <p>
+     * Implements <a href="#unmarshalGlobal">Unmarshal Global Root Element</a>.
+     *
+     * <p>
+     * This method assumes that the parser is on a START_DOCUMENT or
+     * START_ELEMENT event.  Unmarshalling will be done from this 
+     * start event to the corresponding end event.  If this method 
+     * returns successfully, the <tt>reader</tt> will be pointing at 
+     * the token right after the end event, so an element embedded in 
+     * a larger document can be bound without buffering it.
+     *
+     * @param reader
+     *      The parser to be used.
+     * @return
+     *      the newly created root object of the java content tree.
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling
+     * @throws IllegalArgumentException
+     *      If the <tt>reader</tt> parameter is null
+     * @throws IllegalStateException
+     *      If <tt>reader</tt> is not pointing to a START_DOCUMENT or
+     *      START_ELEMENT  event.
+     */
+    public Object unmarshal(XMLStreamReader reader) throws JAXBException {
+    	if (reader == null)
+    		throw new IllegalArgumentException("reader");
+    	if (staxConnector == null)
+    		staxConnector = new StAXConnector(context);
     	try {
-    		Document doc =  parser.parse(is);
-    		return unmarshalRoot(doc);
-    	} catch (IOException | SAXException e) {
+    		staxConnector.bridge(reader);
+    		return context.getResult();
+    	} catch (XMLStreamException | SAXException e) {
     		throw new JAXBException(e);
     	}
     }
     
-    private Object unmarshalRoot(Node node) {
-    	Element e;
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-        	e = (Element) node;
-        } else if(node.getNodeType() == Node.DOCUMENT_NODE) {
-        	e = ((Document) node).getDocumentElement();
-        } else {
-            throw new IllegalArgumentException("Unexpected node type: " + node);
-        }
-        
-        QName qname = grammar.createQName(e);
-        BeanInfo<?> bean = grammar.selectRoot(qname);
-        Object saxbElement = bean.createInstance();
-        
-    	System.out.println(saxbElement);
-    	
-    	NodeList children = e.getChildNodes();
-    	for (int i = 0; i < children.getLength(); i++) {
-    		Node child = children.item(i);
-    		if (child.getNodeType() == Node.ELEMENT_NODE) {
-    			
-    		}
+    /**
+     * Unmarshal the element the pull parser is on to a bean of the given class, 
+     * whatever the name of the element.
+     *
+     * <p>
+     * The element is bound in the same way as {@link #unmarshal(XMLStreamReader)}, 
+     * and the reader is left at the token right after its end.
+     *
+     * @param reader
+     *      The parser to be used.
+     * @param declaredType
+     *      A class bound by the context, to hold the element.
+     * @return the newly created root object of the java content tree.
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null
+     */
+    public <T> T unmarshal(XMLStreamReader reader, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(reader));
+    	} finally {
+    		setDeclaredType(null);
     	}
-		return saxbElement;
     }
     
-    static final QName createQName(Element e) {
-    	return new QName(e.getNamespaceURI(), e.getLocalName(), getPrefix(e));
+    /**
+     * Unmarshal XML data from the specified file to a bean of the given class,
+     * whatever the name of the root element.
+     *
+     * <p>
+     * The root element is bound to <tt>declaredType</tt> directly, without
+     * looking it up among the root elements of the context, so the class 
+     * doesn't have to be a root of the context, and the document can name
+     * its root element as it likes. The binary format is the exception:
+     * a binary document is always bound to the class it was written from,
+     * which must then be <tt>declaredType</tt>.
+     *
+     * @param f the file to unmarshal XML data from
+     * @param declaredType
+     *      A class bound by the context, to hold the root element.
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null
+     */
+    public <T> T unmarshal(File f, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(f));
+    	} finally {
+    		setDeclaredType(null);
+    	}
+    }
+    
+    /**
+     * Unmarshal XML data from the specified InputStream to a bean of the given class,
+     * whatever the name of the root element.
+     *
+     * @param is the InputStream to unmarshal XML data from
+     * @param declaredType
+     *      A class bound by the context, to hold the root element.
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null
+     * @see #unmarshal(File, Class)
+     */
+    public <T> T unmarshal(InputStream is, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(is));
+    	} finally {
+    		setDeclaredType(null);
+    	}
+    }
+    
+    /**
+     * Unmarshal XML data from the specified Reader to a bean of the given class,
+     * whatever the name of the root element.
+     *
+     * @param reader the Reader to unmarshal XML data from
+     * @param declaredType
+     *      A class bound by the context, to hold the root element.
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null
+     * @see #unmarshal(File, Class)
+     */
+    public <T> T unmarshal(Reader reader, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(reader));
+    	} finally {
+    		setDeclaredType(null);
+    	}
+    }
+    
+    /**
+     * Unmarshal XML data from the specified DOM tree to a bean of the given class,
+     * whatever the name of the root element.
+     *
+     * @param node
+     *      the document/element to unmarshal XML data from.
+     * @param declaredType
+     *      A class bound by the context, to hold the element.
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null, or if the node is neither a document
+     *      nor an element.
+     * @see #unmarshal(File, Class)
+     */
+    public <T> T unmarshal(Node node, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(node));
+    	} finally {
+    		setDeclaredType(null);
+    	}
+    }
+    
+    /**
+     * Unmarshal XML data from the specified XML Source to a bean of the given class,
+     * whatever the name of the root element.
+     *
+     * @param source the XML Source to unmarshal XML data from
+     * @param declaredType
+     *      A class bound by the context, to hold the root element.
+     * @return the newly created root object of the java content tree
+     *
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling, or if
+     *     <tt>declaredType</tt> is not bound by the context.
+     * @throws IllegalArgumentException
+     *      If any parameter is null, or if the Source is of an unsupported kind
+     * @see #unmarshal(File, Class)
+     * @see #unmarshal(Source)
+     */
+    public <T> T unmarshal(Source source, Class<T> declaredType) throws JAXBException {
+    	setDeclaredType(getBeanInfo(declaredType));
+    	try {
+    		return declaredType.cast(unmarshal(source));
+    	} finally {
+    		setDeclaredType(null);
+    	}
     }
     
     /**
-     * Gets the prefix. This is slow.
+     * Unmarshal XML data from the specified InputStream into an existing
+     * content tree, and return its root.
+     *
+     * <p>
+     * The properties of <tt>target</tt> are cleared and bound again. Collections 
+     * are emptied and refilled, so their capacity is reused, and nested beans are
+     * released to the {@link InstancePool}s of their classes, where the new beans 
+     * are taken from. A loop that unmarshals into the same target with pools 
+     * installed allocates next to nothing once it is warmed up.
+     * Documents aren't unmarshalled in parallel this way.
+     *
+     * @param is the InputStream to unmarshal XML data from
+     * @param target 
+     *      the root of the content tree. Its class must be bound to the 
+     *      root element of the document.
+     * @return <tt>target</tt>
      *
-     * @return can be "" but never null.
+     * @throws JAXBException
+     *     If any unexpected errors occur while unmarshalling. 
+     *     The target can be partially bound then.
+     * @throws IllegalArgumentException
+     *      If the target is null
+     * @see SAXBContextImpl#setInstancePool(Class, InstancePool)
+     */
+    public <T> T unmarshalInto(InputStream is, T target) throws JAXBException {
+    	if (target == null)
+    		throw new IllegalArgumentException("target");
+    	if (format == DataFormat.BINARY)
+    		unmarshalBinary(is, target);
+    	else
+    		unmarshal0(new InputSource(is), target);
+    	return target;
+    }
+    
+    /**
+     * Unmarshal XML data from the specified Reader into an existing
+     * content tree, and return its root.
+     *
+     * @see #unmarshalInto(InputStream, Object)
+     */
+    public <T> T unmarshalInto(Reader reader, T target) throws JAXBException {
+    	if (target == null)
+    		throw new IllegalArgumentException("target");
+    	if (format == DataFormat.BINARY)
+    		throw new JAXBException("The binary format can't be read from a Reader");
+    	unmarshal0(new InputSource(reader), target);
+    	return target;
+    }
+    
+    private BeanInfo<?> getBeanInfo(Class<?> declaredType) throws JAXBException {
+    	if (declaredType == null)
+    		throw new IllegalArgumentException("declaredType");
+    	BeanInfo<?> beanInfo = grammar.getBeanInfo(declaredType);
+    	if (beanInfo == null)
+    		throw new JAXBException(declaredType + " is not known to this context");
+    	return beanInfo;
+    }
+    
+    private void setDeclaredType(BeanInfo<?> declaredType) {
+    	this.declaredType = declaredType;
+    	context.setDeclaredType(declaredType);
+    }
+    
+    private Object unmarshal0(InputSource is) throws JAXBException  {
+    	return unmarshal0(is, null);
+    }
+    
+    private Object unmarshal0(InputSource is, Object target) throws JAXBException  {
+    	context.setTarget(target);
+    	try {
+    		if (format == DataFormat.JSON)
+    			unmarshalJson(is);
+    		else
+    			reader.parse(is);
+    		return context.getResult();
+    	} catch (IOException | SAXException e) {
+    		throw new JAXBException(e);
+    	} finally {
+    		context.setTarget(null);
+    	}
+    }
+    
+    /**
+     * Reads a JSON document. Streams are decoded as UTF-8.
      */
-    public static final String getPrefix(Element e) {
-    	String qname = e.getTagName();
-        int idx = qname.indexOf(':');
-        if (idx < 0) return "";
-        else         return qname.substring(0, idx);
+    private void unmarshalJson(InputSource is) throws IOException, SAXException {
+    	Reader r = is.getCharacterStream();
+    	if (r == null && is.getByteStream() != null)
+    		r = new InputStreamReader(is.getByteStream(), StandardCharsets.UTF_8);
+    	boolean opened = r == null;
+    	if (opened)
+    		r = new InputStreamReader(new URL(is.getSystemId()).openStream(), StandardCharsets.UTF_8);
+    	context.setUnqualified(true);
+    	try {
+    		new JsonScanner(grammar, context, r).scan();
+    	} finally {
+    		context.setUnqualified(false);
+    		if (opened)
+    			r.close();
+    	}
+    }
+    
+    private Object unmarshalBinary(InputStream is) throws JAXBException {
+    	return unmarshalBinary(is, null);
+    }
+    
+    private Object unmarshalBinary(InputStream is, Object target) throws JAXBException {
+    	try {
+    		return new BinaryDecoder(grammar, is).decode(target, declaredType, released);
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	}
+    }
+    
+    private Object unmarshalParallel(InputStream is) throws JAXBException {
+    	byte[] doc;
+    	int length = 0;
+    	byte[] buf = grammar.bufferPool.acquireBytes(65536);
+    	try {
+    		doc = new byte[buf.length];
+    		for (int n; (n = is.read(buf)) > 0; length += n) {
+    			if (length + n > doc.length)
+    				doc = Arrays.copyOf(doc, Math.max(doc.length * 2, length + n));
+    			System.arraycopy(buf, 0, doc, length, n);
+    		}
+    	} catch (IOException e) {
+    		throw new JAXBException(e);
+    	} finally {
+    		grammar.bufferPool.releaseBytes(buf);
+    	}
+    	
+    	Object result = new ParallelUnmarshaller(grammar, chunkSize, declaredType, interning).unmarshal(doc, length);
+    	if (result != null)
+    		return result;
+    	return unmarshal0(new InputSource(new ByteArrayInputStream(doc, 0, length)));
     }
 }
\ No newline at end of file
@@ -0,0 +1,606 @@
+package com.run.saxb;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.Transducer;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.StringAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
+
+/**
+ * Binds the events of a document to a content tree as they arrive,
+ * without building a tree of the document first.
+ *
+ * <p>
+ * The elements that are being bound are kept on a stack of frames.
+ * A bean frame holds a new instance of a bean, and a leaf frame collects
+ * the text of a leaf property. A bean is set to the property of its parent
+ * when its end tag is reached, and so is the value of a leaf.
+ * Elements that don't match any property are skipped with their content.
+ *
+ * <p>
+ * An immutable bean can't be created before all its content is known. Its frame
+ * holds a buffer for the arguments of its creator instead, and the bean is 
+ * created at its end tag. The buffers are kept for each depth.
+ *
+ * <h2>Validation</h2>
+ * <p>
+ * In validating mode, the {@link Constraint}s of the {@link BeanInfo}s are
+ * checked as the elements are bound: the facets of a value as soon as it's
+ * complete, the maximum occurrences of a property as soon as it repeats, and the
+ * required properties of a bean at its end tag. The first violation aborts
+ * the unmarshalling with a {@link SAXParseException} that carries the location
+ * in the document and the path of the element. Unknown elements are violations too.
+ *
+ * <h2>Subtypes</h2>
+ * <p>
+ * When the declared type of an element has bound subclasses, an <tt>xsi:type</tt>
+ * attribute selects the one the element is bound to, by the name of its 
+ * {@link BeanInfo}, from a table that the context computed once.
+ *
+ * <h2>Interning</h2>
+ * <p>
+ * With a {@link StringTable}, the values of string properties are taken from 
+ * the table, which looks them up by the characters collected for the leaf.
+ *
+ * <h2>References</h2>
+ * <p>
+ * Beans marshalled with {@link ReferenceMode#ID_REF} are registered by their id,
+ * and an element that refers to one of them binds that same bean.
+ * The references must come after the bean, as the marshaller writes them.
+ *
+ * <p>
+ * The stack is kept across documents, so this object should be reused.
+ * Not thread-safe.
+ */
+final class UnmarshallingContext implements XmlVisitor {
+
+	private final SAXBContextImpl grammar;
+
+	private boolean validating;
+
+	private Locator locator;
+
+	/**
+	 * The bean of each frame, the argument buffer of an immutable bean, 
+	 * or null for a leaf frame.
+	 */
+	private Object[] beans = new Object[16];
+
+	/**
+	 * Argument buffers for immutable beans, for each depth.
+	 * There's one buffer of each length in use at that depth.
+	 */
+	private Object[][][] arguments = new Object[16][][];
+
+	/**
+	 * The ids of immutable beans, registered when the bean is created.
+	 */
+	private String[] pendingIds = new String[16];
+
+	/**
+	 * The {@link BeanInfo} of each bean frame.
+	 */
+	private BeanInfo<?>[] infos = new BeanInfo<?>[16];
+
+	/**
+	 * The index of the property of the parent bean that each frame binds to.
+	 * -1 for the root.
+	 */
+	private int[] props = new int[16];
+
+	/**
+	 * Occurrences of the element properties of each bean frame.
+	 * Only maintained in validating mode. The arrays are reused.
+	 */
+	private int[][] counts = new int[16][];
+
+	/**
+	 * Number of frames.
+	 */
+	private int depth;
+
+	/**
+	 * Depth of the element being skipped, or 0.
+	 */
+	private int skipping;
+
+	/**
+	 * The text of the leaf frame on top of the stack.
+	 */
+	private char[] text = new char[256];
+	private int textLength;
+	private boolean collecting;
+
+	/**
+	 * Where string values are interned, or null.
+	 */
+	private StringTable strings;
+
+	/**
+	 * Beans that have an id, by id.
+	 */
+	private final Map<String, Object> ids = new HashMap<>();
+
+	/**
+	 * Tracks the beans released while the target is reset.
+	 */
+	private final IdentitySet released = new IdentitySet(16);
+
+	private Object result;
+
+	/**
+	 * The bean to bind the root element to, or null to create a new one.
+	 */
+	private Object target;
+
+	/**
+	 * The bean the root element is bound to whatever its name, or null to 
+	 * look it up among the root elements of the context.
+	 */
+	private BeanInfo<?> declaredType;
+
+	/**
+	 * True if the names of the input carry no namespace, as in JSON.
+	 * Elements are matched by their local name only then.
+	 */
+	private boolean unqualified;
+
+	UnmarshallingContext(SAXBContextImpl grammar) {
+		this.grammar = grammar;
+	}
+
+	void setValidating(boolean validating) {
+		this.validating = validating;
+	}
+
+	/**
+	 * Sets the bean that the root element of the next document is bound to.
+	 * Its properties are reset first. 
+	 *
+	 * @param target
+	 *      null to create a new bean.
+	 */
+	void setTarget(Object target) {
+		this.target = target;
+	}
+
+	/**
+	 * Sets the bean that the root element of the next documents is bound to,
+	 * without checking its name.
+	 *
+	 * @param declaredType
+	 *      null to select the bean by the name of the root element.
+	 */
+	void setDeclaredType(BeanInfo<?> declaredType) {
+		this.declaredType = declaredType;
+	}
+
+	void setUnqualified(boolean unqualified) {
+		this.unqualified = unqualified;
+	}
+
+	/**
+	 * @param strings
+	 *      The table to intern string values in, or null not to intern them.
+	 */
+	void setStringTable(StringTable strings) {
+		this.strings = strings;
+	}
+
+	/**
+	 * Gets the root of the content tree of the last document.
+	 */
+	Object getResult() {
+		return result;
+	}
+
+	@Override
+	public void startDocument(Locator locator) {
+		this.locator = locator;
+		this.result = null;
+		Arrays.fill(beans, null);
+		this.depth = 0;
+		this.skipping = 0;
+		this.collecting = false;
+		Arrays.fill(pendingIds, null);
+		if (!ids.isEmpty())
+			ids.clear();
+	}
+
+	@Override
+	public void endDocument() {
+		beans[0] = null;
+		locator = null;
+	}
+
+	@Override
+	public void startElement(TagName tagName) throws SAXException {
+		if (skipping > 0) {
+			skipping++;
+			return;
+		}
+		if (depth == 0) {
+			BeanInfo<?> beanInfo;
+			if (declaredType != null)
+				beanInfo = declaredType;
+			else if (unqualified)
+				beanInfo = grammar.selectRoot(tagName.local);
+			else
+				beanInfo = grammar.selectRoot(new QName(tagName.uri, tagName.local));
+			if (beanInfo == null)
+				throw new SAXParseException("unexpected root element " + tagName, locator);
+			Object root;
+			if (target == null) {
+				beanInfo = selectType(beanInfo, tagName.atts);
+				root = newBean(beanInfo);
+			} else {
+				if (!beanInfo.jaxbType.isInstance(target) || beanInfo.isImmutable())
+					throw new SAXParseException("root element " + tagName + " can't be bound to " 
+							+ target.getClass().getName(), locator);
+				root = target;
+				beanInfo.reset(root, released);
+			}
+			push(root, beanInfo, -1);
+			register(tagName.atts);
+			loadAttributes(beanInfo, tagName.atts);
+			return;
+		}
+
+		int parent = depth - 1;
+		BeanInfo<?> parentInfo = infos[parent];
+		int index;
+		if (beans[parent] == null)
+			index = -1;
+		else if (unqualified)
+			index = parentInfo.getElementIndex(tagName.local);
+		else
+			index = parentInfo.getElementIndex(tagName.uri, tagName.local);
+		if (index < 0) {
+			if (validating)
+				fail("unexpected element " + tagName);
+			skipping = 1;
+			return;
+		}
+		if (validating && ++counts[parent][index] > parentInfo.elementConstraints[index].maxOccurs)
+			fail("element " + parentInfo.elementNames[index].qName + " occurs more than "
+					+ parentInfo.elementConstraints[index].maxOccurs + " times");
+
+		Accessor acc = parentInfo.accessors[index];
+		BeanInfo<?> beanInfo = null;
+		if (acc instanceof BeanAccessor)
+			beanInfo = ((BeanAccessor) acc).beanInfo;
+		else if (acc instanceof ListAccessor)
+			beanInfo = ((ListAccessor) acc).itemInfo;
+
+		if (beanInfo != null) {
+			Attributes atts = tagName.atts;
+			if (atts.getLength() > 0 && bindReference(index, atts))
+				return;
+			beanInfo = selectType(beanInfo, atts);
+			push(newBean(beanInfo), beanInfo, index);
+			register(atts);
+			loadAttributes(beanInfo, atts);
+		} else {
+			push(null, parentInfo, index);
+			textLength = 0;
+			collecting = true;
+		}
+	}
+
+	@Override
+	public void endElement(TagName tagName) throws SAXException {
+		if (skipping > 0) {
+			skipping--;
+			return;
+		}
+		int d = depth - 1;
+		if (d == 0) {
+			if (validating)
+				checkOccurrences(d);
+			result = complete(0);
+			depth = 0;
+			return;
+		}
+
+		BeanInfo<?> parentInfo = infos[d - 1];
+		Accessor acc = parentInfo.accessors[props[d]];
+		if (beans[d] == null) {
+			collecting = false;
+			EnumTable table = acc instanceof EnumAccessor ? ((EnumAccessor) acc).table
+					: acc instanceof ListAccessor ? ((ListAccessor) acc).itemEnum : null;
+			if (table != null) {
+				if (validating)
+					checkValue(parentInfo.elementConstraints[props[d]], new String(text, 0, textLength));
+				Enum<?> constant = table.lookup(text, 0, textLength);
+				if (constant == null)
+					fail("'" + new String(text, 0, textLength) + "' is not a constant of " + table);
+				bind(d - 1, props[d], constant);
+				depth = d;
+				return;
+			}
+			String value = strings != null && isString(acc)
+					? strings.intern(text, 0, textLength) : new String(text, 0, textLength);
+			if (validating)
+				checkValue(parentInfo.elementConstraints[props[d]], value);
+			try {
+				if (acc instanceof TextAccessor) {
+					if (parentInfo.isImmutable())
+						bind(d - 1, props[d], Transducer.parse(((TextAccessor) acc).getType(), value));
+					else
+						((TextAccessor) acc).parse(beans[d - 1], value);
+				} else {
+					bind(d - 1, props[d], Transducer.parse(((ListAccessor) acc).itemType, value));
+				}
+			} catch (IllegalArgumentException e) {
+				fail("'" + value + "' is not a valid value: " + e.getMessage());
+			}
+		} else {
+			if (validating)
+				checkOccurrences(d);
+			bind(d - 1, props[d], complete(d));
+			beans[d] = null;
+		}
+		depth = d;
+	}
+
+	/**
+	 * Picks the subtype that the <tt>xsi:type</tt> attribute of an element names, 
+	 * if the element has one and its declared type has subtypes.
+	 */
+	private BeanInfo<?> selectType(BeanInfo<?> declared, Attributes atts) throws SAXException {
+		if (declared.subtypes == null || atts.getLength() == 0)
+			return declared;
+		String typeName = unqualified ? atts.getValue(JsonEncoder.TYPE_ATTRIBUTE) 
+				: atts.getValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type");
+		if (typeName == null)
+			return declared;
+		BeanInfo<?> type = declared.getType(typeName.trim());
+		if (type == null)
+			fail(typeName + " is not a subtype of " + declared.beanName);
+		return type;
+	}
+
+	/**
+	 * Gets what a new bean frame binds to: a new instance of the bean, 
+	 * or an argument buffer for an immutable bean.
+	 */
+	private Object newBean(BeanInfo<?> beanInfo) {
+		if (!beanInfo.isImmutable())
+			return beanInfo.createInstance();
+		if (depth >= arguments.length)
+			arguments = Arrays.copyOf(arguments, Math.max(depth + 1, arguments.length * 2));
+		int n = beanInfo.getArgumentCount();
+		Object[][] buffers = arguments[depth];
+		Object[] args = null;
+		if (buffers == null) {
+			buffers = arguments[depth] = new Object[1][];
+		} else {
+			for (Object[] b: buffers) {
+				if (b != null && b.length == n)
+					args = b;
+			}
+		}
+		if (args == null) {
+			// the creator takes arrays of the exact length
+			args = new Object[n];
+			if (buffers[buffers.length - 1] != null)
+				buffers = arguments[depth] = Arrays.copyOf(buffers, buffers.length + 1);
+			buffers[buffers.length - 1] = args;
+		}
+		beanInfo.initArguments(args);
+		return args;
+	}
+
+	/**
+	 * Gets the bean of a bean frame that is complete,
+	 * creating it if it's immutable.
+	 */
+	private Object complete(int d) {
+		BeanInfo<?> beanInfo = infos[d];
+		if (!beanInfo.isImmutable())
+			return beans[d];
+		Object[] args = (Object[]) beans[d];
+		Object bean = beanInfo.createInstance(args);
+		Arrays.fill(args, null);
+		if (pendingIds[d] != null) {
+			ids.put(pendingIds[d], bean);
+			pendingIds[d] = null;
+		}
+		return bean;
+	}
+
+	/**
+	 * Sets a value to a property of the bean of a frame,
+	 * or adds it if the property is a collection.
+	 */
+	private void bind(int d, int prop, Object value) {
+		BeanInfo<?> beanInfo = infos[d];
+		Accessor acc = beanInfo.accessors[prop];
+		if (beanInfo.isImmutable()) {
+			Object[] args = (Object[]) beans[d];
+			int i = beanInfo.elementArgs[prop];
+			if (acc instanceof ListAccessor) {
+				@SuppressWarnings("unchecked")
+				Collection<Object> items = (Collection<Object>) args[i];
+				if (items == null)
+					args[i] = items = ((ListAccessor) acc).newCollection();
+				items.add(value);
+			} else {
+				args[i] = value;
+			}
+		} else if (acc instanceof ListAccessor) {
+			((ListAccessor) acc).addItem(beans[d], value);
+		} else {
+			acc.set(beans[d], value);
+		}
+	}
+
+	/**
+	 * Registers the bean on top of the stack if it has an id.
+	 */
+	private void register(Attributes atts) {
+		if (atts.getLength() == 0)
+			return;
+		String id = atts.getValue(XMLSerializer.ID_ATTRIBUTE);
+		if (id == null)
+			return;
+		if (infos[depth - 1].isImmutable())
+			pendingIds[depth - 1] = id;
+		else
+			ids.put(id, beans[depth - 1]);
+	}
+
+	/**
+	 * Binds the bean that an element refers to, and skips the element.
+	 *
+	 * @return false if the element is not a reference.
+	 */
+	private boolean bindReference(int prop, Attributes atts) throws SAXException {
+		String ref = atts.getValue(XMLSerializer.REF_ATTRIBUTE);
+		if (ref == null)
+			return false;
+		Object bean = ids.get(ref);
+		if (bean == null)
+			fail("undefined reference " + ref);
+		bind(depth - 1, prop, bean);
+		skipping = 1;
+		return true;
+	}
+
+	@Override
+	public void text(char[] ch, int start, int length) {
+		// the text of the unknown children of a leaf is skipped with them
+		if (!collecting || skipping > 0)
+			return;
+		if (textLength + length > text.length)
+			text = Arrays.copyOf(text, Math.max(textLength + length, text.length * 2));
+		System.arraycopy(ch, start, text, textLength, length);
+		textLength += length;
+	}
+
+	/**
+	 * Checks if a leaf property holds strings, whose values are interned.
+	 */
+	private static boolean isString(Accessor acc) {
+		if (acc instanceof ListAccessor)
+			return ((ListAccessor) acc).itemType == String.class;
+		return acc instanceof StringAccessor;
+	}
+
+	private void push(Object bean, BeanInfo<?> beanInfo, int prop) {
+		if (depth == beans.length) {
+			int n = depth * 2;
+			beans = Arrays.copyOf(beans, n);
+			infos = Arrays.copyOf(infos, n);
+			props = Arrays.copyOf(props, n);
+			counts = Arrays.copyOf(counts, n);
+			pendingIds = Arrays.copyOf(pendingIds, n);
+		}
+		beans[depth] = bean;
+		infos[depth] = beanInfo;
+		props[depth] = prop;
+		if (validating && bean != null) {
+			int n = beanInfo.accessors.length;
+			int[] c = counts[depth];
+			if (c == null || c.length < n)
+				counts[depth] = new int[Math.max(n, 8)];
+			else
+				Arrays.fill(c, 0, n, 0);
+		}
+		depth++;
+	}
+
+	/**
+	 * Binds the attributes of the bean on top of the stack.
+	 * Attributes that don't match any property are ignored.
+	 */
+	private void loadAttributes(BeanInfo<?> beanInfo, Attributes atts) throws SAXException {
+		if (beanInfo.attributes.length == 0)
+			return;
+		Object bean = beans[depth - 1];
+		for (int i = 0, n = atts.getLength(); i < n; i++) {
+			// attribute properties are unqualified, so xsi:type, xml:lang 
+			// or soap:mustUnderstand are never bound to them
+			String uri = atts.getURI(i);
+			if (uri != null && !uri.isEmpty())
+				continue;
+			int index = beanInfo.getAttributeIndex(atts.getLocalName(i));
+			if (index < 0)
+				continue;
+			String value = atts.getValue(i);
+			if (strings != null && beanInfo.attributes[index] instanceof StringAccessor)
+				value = strings.intern(value);
+			if (validating)
+				checkValue(beanInfo.attributeConstraints[index], value);
+			try {
+				if (beanInfo.isImmutable())
+					((Object[]) bean)[beanInfo.attributeArgs[index]] = Transducer.parse(beanInfo.attributes[index].getType(), value);
+				else
+					beanInfo.attributes[index].parse(bean, value);
+			} catch (IllegalArgumentException e) {
+				fail("attribute " + beanInfo.attributeNames[index] + ": '" + value + "' is not a valid value: " 
+						+ e.getMessage());
+			}
+		}
+		if (validating && beanInfo.hasRequiredAttributes) {
+			for (int i = 0; i < beanInfo.attributes.length; i++) {
+				if (beanInfo.attributeConstraints[i].minOccurs > 0 && atts.getIndex("", beanInfo.attributeNames[i]) < 0)
+					fail("required attribute " + beanInfo.attributeNames[i] + " is missing");
+			}
+		}
+	}
+
+	private void checkValue(Constraint constraint, String value) throws SAXException {
+		String violation = constraint.checkValue(value);
+		if (violation != null)
+			fail(violation);
+	}
+
+	/**
+	 * Checks that the required properties of a bean frame occurred.
+	 */
+	private void checkOccurrences(int d) throws SAXException {
+		BeanInfo<?> beanInfo = infos[d];
+		int[] c = counts[d];
+		for (int i = 0; i < beanInfo.accessors.length; i++) {
+			if (c[i] < beanInfo.elementConstraints[i].minOccurs)
+				fail("element " + beanInfo.elementNames[i].qName + " occurs " + c[i] + " times, expected at least "
+						+ beanInfo.elementConstraints[i].minOccurs);
+		}
+	}
+
+	private void fail(String message) throws SAXException {
+		throw new SAXParseException(message + " in " + getPath(), locator);
+	}
+
+	/**
+	 * Gets the path of the current element, like <tt>/order/lines/quantity</tt>.
+	 */
+	private String getPath() {
+		StringBuilder path = new StringBuilder();
+		for (int d = 0; d < depth; d++) {
+			path.append('/');
+			if (d == 0)
+				path.append(infos[0].name.qName);
+			else
+				path.append(infos[d - 1].elementNames[props[d]].qName);
+		}
+		return path.toString();
+	}
+}
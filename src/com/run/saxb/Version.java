@@ -0,0 +1,40 @@
+package com.run.saxb;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field of a bean that holds its version, an integral number 
+ * that changes whenever the bean is modified.
+ *
+ * <p>
+ * The version of a bean covers its own fields and the beans below it that 
+ * have no version of their own. An incremental {@link Marshaller} keeps what it 
+ * wrote for a versioned bean, and writes it again as is while the version of 
+ * the bean and of the versioned beans below it are unchanged.
+ *
+ * <p>
+ * The field is marshalled like any other, unless it is <tt>transient</tt>.
+ *
+ * <p>
+ * <b>Usage: </b>
+ * <pre>
+ *     class Settings {
+ *         &#64;Version transient int modCount;
+ *         String theme;
+ *
+ *         void setTheme(String theme) {
+ *             this.theme = theme;
+ *             modCount++;
+ *         }
+ *     }
+ * </pre>
+ *
+ * @see Marshaller#setIncremental(boolean)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Version {
+}
@@ -0,0 +1,208 @@
+package com.run.saxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.Transducer;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.FieldAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
+
+/**
+ * Runs the marshalling and unmarshalling of a context on synthetic content
+ * trees, so that the code paths of its beans are loaded and compiled before
+ * the first real document, and lists the classes of the binding for a
+ * class data sharing archive.
+ *
+ * <p>
+ * A synthetic tree is built for each root: every property has a value, every
+ * collection has an item of its type and of each of its subtypes, and nested
+ * beans are created down to {@link #MAX_DEPTH} levels, which is enough to reach
+ * every bound class of common models without building huge trees from
+ * recursive ones.
+ *
+ * @see SAXBContextImpl#warmUp(int)
+ * @see SAXBContextImpl#writeClassList(Appendable)
+ */
+final class WarmUp {
+
+	private static final int MAX_DEPTH = 8;
+
+	private final SAXBContextImpl grammar;
+
+	WarmUp(SAXBContextImpl grammar) {
+		this.grammar = grammar;
+	}
+
+	/**
+	 * Marshals and unmarshals a synthetic tree of each root in each format.
+	 */
+	void run(int rounds) throws JAXBException {
+		List<Object> trees = new ArrayList<>(grammar.roots.length);
+		for (BeanInfo<?> root: grammar.roots) {
+			if (isInstantiable(root))
+				trees.add(create(root, 0));
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for (DataFormat format: DataFormat.values()) {
+			Marshaller m = grammar.createMarshaller();
+			m.setFormat(format);
+			Unmarshaller u = grammar.createUnmarshaller();
+			u.setFormat(format);
+			for (int i = 0; i < rounds; i++) {
+				for (Object tree: trees) {
+					os.reset();
+					m.marshal(tree, os);
+					u.unmarshal(new ByteArrayInputStream(os.toByteArray()));
+				}
+			}
+		}
+	}
+
+	private static boolean isInstantiable(BeanInfo<?> beanInfo) {
+		int modifiers = beanInfo.jaxbType.getModifiers();
+		return !Modifier.isAbstract(modifiers) && !Modifier.isInterface(modifiers);
+	}
+
+	/**
+	 * Creates a bean whose properties all have a value.
+	 *
+	 * @return null if the bean is too deep, or can't be created.
+	 */
+	private Object create(BeanInfo<?> beanInfo, int depth) {
+		if (depth > MAX_DEPTH || !isInstantiable(beanInfo))
+			return null;
+		if (!beanInfo.isImmutable()) {
+			Object bean = beanInfo.createInstance();
+			for (Accessor acc: beanInfo.accessors)
+				fill(bean, acc, depth);
+			for (TextAccessor acc: beanInfo.attributes)
+				acc.parse(bean, sample(acc.getType()));
+			return bean;
+		}
+		Object[] args = new Object[beanInfo.getArgumentCount()];
+		beanInfo.initArguments(args);
+		for (int i = 0; i < beanInfo.accessors.length; i++)
+			args[beanInfo.elementArgs[i]] = value(beanInfo.accessors[i], depth);
+		for (int i = 0; i < beanInfo.attributes.length; i++) {
+			Class<?> type = beanInfo.attributes[i].getType();
+			args[beanInfo.attributeArgs[i]] = Transducer.parse(type, sample(type));
+		}
+		return beanInfo.createInstance(args);
+	}
+
+	private void fill(Object bean, Accessor acc, int depth) {
+		if (acc instanceof TextAccessor) {
+			TextAccessor text = (TextAccessor) acc;
+			text.parse(bean, sample(text.getType()));
+		} else if (acc instanceof BeanAccessor) {
+			Object child = create(((BeanAccessor) acc).beanInfo, depth + 1);
+			if (child != null)
+				((BeanAccessor) acc).set(bean, child);
+		} else if (acc instanceof ListAccessor) {
+			ListAccessor list = (ListAccessor) acc;
+			for (Object item: items(list, depth))
+				list.addItem(bean, item);
+		}
+	}
+
+	/**
+	 * Gets the value of a property of an immutable bean.
+	 */
+	private Object value(Accessor acc, int depth) {
+		if (acc instanceof TextAccessor) {
+			Class<?> type = ((TextAccessor) acc).getType();
+			return Transducer.parse(type, sample(type));
+		}
+		if (acc instanceof BeanAccessor)
+			return create(((BeanAccessor) acc).beanInfo, depth + 1);
+		if (acc instanceof ListAccessor) {
+			Collection<Object> items = ((ListAccessor) acc).newCollection();
+			items.addAll(items((ListAccessor) acc, depth));
+			return items;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets an item of the type of a collection, and one of each of its subtypes.
+	 */
+	private List<Object> items(ListAccessor list, int depth) {
+		List<Object> items = new ArrayList<>();
+		if (list.itemInfo == null) {
+			items.add(Transducer.parse(list.itemType, sample(list.itemType)));
+			return items;
+		}
+		Object item = create(list.itemInfo, depth + 1);
+		if (item != null)
+			items.add(item);
+		if (list.itemInfo.subtypes != null) {
+			for (BeanInfo<?> subtype: list.itemInfo.subtypes) {
+				item = create(subtype, depth + 1);
+				if (item != null)
+					items.add(item);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Gets a lexical representation of a value of a leaf type.
+	 */
+	private static String sample(Class<?> type) {
+		if (type.isEnum()) {
+			Object[] constants = type.getEnumConstants();
+			return constants.length > 0 ? EnumTable.of(type).print((Enum<?>) constants[0]) : "";
+		}
+		if (type == boolean.class || type == Boolean.class)
+			return "true";
+		if (type == String.class)
+			return "warm-up";
+		return "1";
+	}
+
+	/**
+	 * Writes the classes of the binding: the bound classes, the types of their
+	 * properties and the accessors that bind them, one per line, in the format
+	 * of the class lists of the JVM.
+	 */
+	void writeClassList(Appendable out) throws IOException {
+		Set<String> names = new TreeSet<>();
+		for (BeanInfo<?> beanInfo: grammar.beanInfoMap.values()) {
+			add(names, beanInfo.jaxbType);
+			for (Accessor acc: beanInfo.accessors)
+				add(names, acc);
+			for (Accessor acc: beanInfo.attributes)
+				add(names, acc);
+		}
+		for (String name: names)
+			out.append(name).append('\n');
+	}
+
+	private static void add(Set<String> names, Accessor acc) {
+		add(names, acc.getClass());
+		if (acc instanceof FieldAccessor)
+			add(names, ((FieldAccessor) acc).getType());
+		if (acc instanceof ListAccessor) {
+			add(names, ((ListAccessor) acc).itemType);
+			add(names, ((ListAccessor) acc).newCollection().getClass());
+		}
+	}
+
+	private static void add(Set<String> names, Class<?> type) {
+		if (!type.isPrimitive() && !type.isArray())
+			names.add(type.getName().replace('.', '/'));
+	}
+}
@@ -0,0 +1,428 @@
+package com.run.saxb;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.run.saxb.output.XmlOutput;
+import com.run.saxb.output.XmlWriterOutput;
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.Transducer;
+import com.run.saxb.transducer.accessor.Accessor;
+import com.run.saxb.transducer.accessor.BeanAccessor;
+import com.run.saxb.transducer.accessor.ListAccessor;
+
+/**
+ * Receives the content tree from {@link BeanInfo}s and sends it
+ * to the {@link XmlOutput}.
+ *
+ * <p>
+ * This object is created for each marshalling operation and carries
+ * the options of the {@link Marshaller} down the object graph.
+ *
+ * <h2>Parallel marshalling</h2>
+ * <p>
+ * When enabled, collections of more than one chunk of items are cut into
+ * chunks which are marshalled into their own buffers on the common
+ * {@link ForkJoinPool}. The buffers are written out in document order as
+ * they complete, with a bounded number of chunks in flight, so the output
+ * is exactly the one of the serial path. Only text outputs are marshalled
+ * in parallel, and items inside a chunk are always marshalled serially.
+ *
+ * <h2>References</h2>
+ * <p>
+ * With a {@link ReferenceMode} other than {@link ReferenceMode#NONE}, the beans
+ * are tracked by identity in an {@link IdentitySet} that the marshaller reuses.
+ * To check cycles, the set holds the beans that are being marshalled. For ID/IDREF,
+ * the object graph is walked once before marshalling to find the beans that are 
+ * reachable more than once, and the set holds their ids as they are assigned.
+ * Collections aren't marshalled in parallel then.
+ *
+ * <h2>Incremental marshalling</h2>
+ * <p>
+ * With a {@link FragmentCache}, the element of a bean that has a {@link Version},
+ * other than the root, is marshalled into a buffer of its own by a nested 
+ * serializer, kept in the cache, and written out from there. The nested serializer 
+ * records the versioned beans it writes, so that the cache can tell when the 
+ * fragment is out of date.
+ * This only applies to text outputs without references, and collections 
+ * aren't marshalled in parallel then.
+ *
+ * <h2>Subtypes</h2>
+ * <p>
+ * A bean whose class is a bound subclass of the declared type of its property
+ * is marshalled with the {@link BeanInfo} of the subclass, and its element
+ * carries an <tt>xsi:type</tt> attribute with the name of the subclass. 
+ * The subclasses of each bean are found once by the context.
+ *
+ * <h2>Memoized elements</h2>
+ * <p>
+ * The element of an immutable bean whose class has a {@link FragmentMemo} is 
+ * marshalled once into a buffer of its own, by a nested serializer, and copied 
+ * from the memo every time the bean is written again. This also only applies 
+ * to text outputs without references.
+ *
+ * <p>
+ * Not thread-safe.
+ */
+public final class XMLSerializer {
+	
+	/**
+	 * Attribute with the id of a bean that is referenced elsewhere.
+	 */
+	static final String ID_ATTRIBUTE = "saxb-id";
+	
+	/**
+	 * Attribute with the id of the bean an empty element refers to.
+	 */
+	static final String REF_ATTRIBUTE = "saxb-ref";
+	
+	/**
+	 * Tags in {@link #objects} for the ID/IDREF mode, besides the ids.
+	 */
+	private static final int SEEN = 0;
+	private static final int SHARED = -2;
+	
+	final SAXBContextImpl grammar;
+	
+	final XmlOutput out;
+	
+	private final boolean parallel;
+	
+	private final int chunkSize;
+	
+	private final ReferenceMode references;
+	
+	private final IdentitySet objects;
+	
+	private int lastId;
+	
+	private final FragmentCache fragments;
+	
+	/**
+	 * Whether the {@link FragmentMemo}s of the beans are used.
+	 */
+	private final boolean memos;
+	
+	/**
+	 * The nearest versioned beans written by this serializer, with their 
+	 * {@link BeanInfo}s and versions. Only recorded for a fragment.
+	 */
+	private final List<Object> versioned = new ArrayList<>();
+	private final List<BeanInfo<?>> versionedInfos = new ArrayList<>();
+	private long[] versions;
+	private boolean recording;
+	
+	/**
+	 * @param objects
+	 *      The set to track the beans in. Cleared before use. 
+	 *      Can be null with {@link ReferenceMode#NONE}.
+	 * @param fragments
+	 *      The cache for incremental marshalling, or null.
+	 */
+	XMLSerializer(SAXBContextImpl grammar, XmlOutput out, boolean parallel, int chunkSize,
+			ReferenceMode references, IdentitySet objects, FragmentCache fragments) {
+		this.grammar = grammar;
+		this.out = out;
+		// fragments are written as is, so they can't be spliced into formatted output
+		boolean splices = out instanceof XmlWriterOutput && !((XmlWriterOutput) out).isFormatted()
+				&& references == ReferenceMode.NONE;
+		this.fragments = splices ? fragments : null;
+		this.parallel = parallel && splices && this.fragments == null;
+		this.memos = splices;
+		this.chunkSize = chunkSize;
+		this.references = references;
+		this.objects = objects;
+	}
+	
+	/**
+	 * Writes an element whose content is the given text.
+	 */
+	public void leafElement(Name name, String text) throws IOException {
+		out.beginStartTag(name);
+		out.endStartTag();
+		out.text(text);
+		out.endTag(name);
+	}
+	
+	/**
+	 * Writes an element whose content is an enum constant, copying its text
+	 * from the {@link EnumTable} into text outputs.
+	 */
+	public void enumElement(Name name, EnumTable table, Enum<?> value) throws IOException {
+		char[] text = table.getXml(value);
+		if (text == null || !(out instanceof XmlWriterOutput)) {
+			leafElement(name, table.print(value));
+			return;
+		}
+		out.beginStartTag(name);
+		out.endStartTag();
+		((XmlWriterOutput) out).text(text, 0, text.length);
+		out.endTag(name);
+	}
+	
+	/**
+	 * Writes the root element, which declares all the namespaces of the context
+	 * so that none of the other elements has to.
+	 */
+	public void rootElement(BeanInfo<?> beanInfo, Object root) throws IOException {
+		if (references != ReferenceMode.NONE) {
+			objects.clear();
+			lastId = 0;
+			if (references == ReferenceMode.ID_REF)
+				findShared(beanInfo, root);
+		}
+		out.beginStartTag(beanInfo.name);
+		namespaceDeclarations();
+		beanContent(beanInfo, beanInfo.name, root);
+	}
+	
+	private void namespaceDeclarations() throws IOException {
+		for (int i = 1; i < grammar.nsUris.length; i++)
+			out.namespaceDeclaration(grammar.prefixes[i], grammar.nsUris[i]);
+	}
+	
+	/**
+	 * Writes an element for a bean, using its {@link BeanInfo} for the content.
+	 */
+	public void childElement(BeanInfo<?> beanInfo, Name name, Object child) throws IOException {
+		BeanInfo<?> type = beanInfo.getType(child);
+		if (fragments != null && type.version != null) {
+			cachedElement(type, type != beanInfo, name, child);
+			return;
+		}
+		if (memos) {
+			FragmentMemo memo = type.getFragmentMemo();
+			if (memo != null) {
+				memoizedElement(memo, type, type != beanInfo, name, child);
+				return;
+			}
+		}
+		out.beginStartTag(name);
+		if (type != beanInfo)
+			out.attribute(grammar.xsiType, type.name.qName);
+		beanContent(type, name, child);
+	}
+	
+	/**
+	 * Writes the element of a versioned bean from the {@link FragmentCache},
+	 * after marshalling it into the cache if it's not there or out of date.
+	 */
+	private void cachedElement(BeanInfo<?> beanInfo, boolean typed, Name name, Object bean) throws IOException {
+		long version = beanInfo.getVersion(bean);
+		FragmentCache.Fragment f = fragments.get(bean, name, version);
+		if (f == null) {
+			CharArrayWriter buffer = new CharArrayWriter(256);
+			XmlWriterOutput fragmentOut = new XmlWriterOutput(buffer, grammar.bufferPool);
+			XMLSerializer serializer = new XMLSerializer(grammar, fragmentOut, false, chunkSize, 
+					ReferenceMode.NONE, null, fragments);
+			serializer.recording = true;
+			try {
+				fragmentOut.beginStartTag(name);
+				if (typed)
+					fragmentOut.attribute(grammar.xsiType, beanInfo.name.qName);
+				serializer.beanContent(beanInfo, name, bean);
+			} finally {
+				fragmentOut.finish();
+			}
+			int n = serializer.versioned.size();
+			f = fragments.put(bean, name, version, buffer.toCharArray(), serializer.versioned, 
+					serializer.versionedInfos, n == 0 ? null : Arrays.copyOf(serializer.versions, n));
+		}
+		
+		if (recording) {
+			int n = versioned.size();
+			if (versions == null)
+				versions = new long[8];
+			else if (n == versions.length)
+				versions = Arrays.copyOf(versions, n * 2);
+			versioned.add(bean);
+			versionedInfos.add(beanInfo);
+			versions[n] = version;
+		}
+		
+		((XmlWriterOutput) out).write(f.text, 0, f.text.length);
+	}
+	
+	/**
+	 * Writes the element of an immutable bean from its {@link FragmentMemo},
+	 * after marshalling it into the memo if it's not there.
+	 */
+	private void memoizedElement(FragmentMemo memo, BeanInfo<?> beanInfo, boolean typed, Name name, Object bean) throws IOException {
+		char[] text = memo.get(bean, name);
+		if (text == null) {
+			CharArrayWriter buffer = new CharArrayWriter(256);
+			XmlWriterOutput fragmentOut = new XmlWriterOutput(buffer, grammar.bufferPool);
+			XMLSerializer serializer = new XMLSerializer(grammar, fragmentOut, false, chunkSize, 
+					ReferenceMode.NONE, null, null);
+			try {
+				fragmentOut.beginStartTag(name);
+				if (typed)
+					fragmentOut.attribute(grammar.xsiType, beanInfo.name.qName);
+				serializer.beanContent(beanInfo, name, bean);
+			} finally {
+				fragmentOut.finish();
+			}
+			text = buffer.toCharArray();
+			memo.put(bean, name, text);
+		}
+		((XmlWriterOutput) out).write(text, 0, text.length);
+	}
+	
+	/**
+	 * Writes the rest of the element of a bean, after the start of its start tag.
+	 */
+	private void beanContent(BeanInfo<?> beanInfo, Name name, Object bean) throws IOException {
+		if (references == ReferenceMode.CHECK_CYCLES) {
+			if (!objects.add(bean))
+				throw new IOException("A cycle is detected in the object graph at " + name.qName 
+						+ ". This will cause infinitely deep XML: " + bean);
+		} else if (references == ReferenceMode.ID_REF) {
+			int id = objects.get(bean);
+			if (id > 0) {
+				out.attribute(REF_ATTRIBUTE, Integer.toString(id));
+				out.endStartTag();
+				out.endTag(name);
+				return;
+			}
+			if (id == SHARED) {
+				objects.put(bean, ++lastId);
+				out.attribute(ID_ATTRIBUTE, Integer.toString(lastId));
+			}
+		}
+		beanInfo.serializeAttributes(bean, this);
+		out.endStartTag();
+		beanInfo.serializeBody(bean, this);
+		out.endTag(name);
+		if (references == ReferenceMode.CHECK_CYCLES)
+			objects.remove(bean);
+	}
+	
+	/**
+	 * Walks the beans reachable from the given one, the same way as they are
+	 * marshalled, and tags the ones that are reached more than once as shared.
+	 */
+	private void findShared(BeanInfo<?> beanInfo, Object bean) {
+		int tag = objects.get(bean);
+		if (tag != IdentitySet.ABSENT) {
+			if (tag == SEEN)
+				objects.put(bean, SHARED);
+			return;
+		}
+		objects.put(bean, SEEN);
+		for (Accessor acc: beanInfo.accessors) {
+			if (acc instanceof BeanAccessor) {
+				Object child = acc.get(bean);
+				if (child != null)
+					findShared(((BeanAccessor) acc).beanInfo.getType(child), child);
+			} else if (acc instanceof ListAccessor && ((ListAccessor) acc).itemInfo != null) {
+				ListAccessor list = (ListAccessor) acc;
+				Collection<Object> items = list.getList(bean);
+				if (items == null)
+					continue;
+				for (Object item: items) {
+					if (item != null)
+						findShared(list.itemInfo.getType(item), item);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes an element for each item of a collection property.
+	 */
+	public void items(ListAccessor list, Name name, Collection<Object> items) throws IOException {
+		if (parallel && items.size() > chunkSize) {
+			parallelItems(list, name, items);
+			return;
+		}
+		for (Object item: items)
+			item(list, name, item);
+	}
+	
+	private void item(ListAccessor list, Name name, Object item) throws IOException {
+		if (item == null)
+			return;
+		if (list.itemInfo != null)
+			childElement(list.itemInfo, name, item);
+		else if (list.itemEnum != null)
+			enumElement(name, list.itemEnum, (Enum<?>) item);
+		else
+			leafElement(name, Transducer.print(item));
+	}
+	
+	private void parallelItems(final ListAccessor list, final Name name, Collection<Object> items) throws IOException {
+		final List<Object> all = items instanceof List && items instanceof RandomAccess 
+				? (List<Object>) items : new ArrayList<>(items);
+		
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int window = Math.max(2, pool.getParallelism() * 2);
+		ArrayDeque<ForkJoinTask<CharArrayWriter>> inflight = new ArrayDeque<>(window);
+		try {
+			for (int from = 0; from < all.size(); from += chunkSize) {
+				final int start = from;
+				final int end = Math.min(from + chunkSize, all.size());
+				inflight.add(pool.submit(new Callable<CharArrayWriter>() {
+					@Override
+					public CharArrayWriter call() throws IOException {
+						return chunk(list, name, all, start, end);
+					}
+				}));
+				if (inflight.size() >= window)
+					((XmlWriterOutput) out).write(await(inflight.poll()));
+			}
+			while (!inflight.isEmpty())
+				((XmlWriterOutput) out).write(await(inflight.poll()));
+		} finally {
+			for (ForkJoinTask<?> task: inflight)
+				task.cancel(false);
+		}
+	}
+	
+	/**
+	 * Waits for a chunk, and rethrows what it failed with, as the serial path would.
+	 */
+	private static CharArrayWriter await(ForkJoinTask<CharArrayWriter> task) throws IOException {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a chunk");
+		}
+	}
+	
+	/**
+	 * Marshals a range of items into a buffer of their own.
+	 */
+	private CharArrayWriter chunk(ListAccessor list, Name name, List<Object> items, int start, int end) throws IOException {
+		CharArrayWriter buffer = new CharArrayWriter(chunkSize * 64);
+		XmlWriterOutput chunkOut = new XmlWriterOutput(buffer, grammar.bufferPool);
+		try {
+			XMLSerializer serializer = new XMLSerializer(grammar, chunkOut, false, chunkSize, ReferenceMode.NONE, null, null);
+			for (int i = start; i < end; i++)
+				serializer.item(list, name, items.get(i));
+		} finally {
+			chunkOut.finish();
+		}
+		return buffer;
+	}
+}
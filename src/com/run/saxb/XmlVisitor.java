@@ -0,0 +1,43 @@
+package com.run.saxb;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * Walks the XML infoset and receives callbacks for the events it finds.
+ *
+ * <p>
+ * This is the event pipeline of the unmarshaller. Each kind of input
+ * has its own connector that turns it into these callbacks,
+ * so that all of them are bound by the same code.
+ */
+public interface XmlVisitor {
+
+    /**
+     * Notifies a start of the document.
+     *
+     * @param locator
+     *      This live object returns the location information as the parsing progresses.
+     *      Can be null if the input has no location information.
+     */
+	void startDocument(Locator locator) throws SAXException;
+
+	void endDocument() throws SAXException;
+
+    /**
+     * Notifies a start of an element.
+     *
+     * @param tagName
+     *      The name and the attributes of the element. Reused by the caller,
+     *      so it must not be retained.
+     */
+	void startElement(TagName tagName) throws SAXException;
+
+	void endElement(TagName tagName) throws SAXException;
+
+    /**
+     * Text events. Adjacent text can be reported in several calls,
+     * and the characters are only valid during the call.
+     */
+	void text(char[] ch, int start, int length) throws SAXException;
+}
@@ -0,0 +1,77 @@
+package com.run.saxb.output;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.run.saxb.Name;
+
+/**
+ * {@link XmlOutput} that builds a DOM tree under the given node.
+ */
+public final class DOMOutput implements XmlOutput {
+	
+	private final Document document;
+	
+	/**
+	 * The node that receives the next child.
+	 */
+	private Node current;
+	
+	/**
+	 * @param node
+	 *      The content is appended as children of this node.
+	 *      It must accept children (a Document, DocumentFragment or Element.)
+	 */
+	public DOMOutput(Node node) {
+		this.document = node.getNodeType() == Node.DOCUMENT_NODE 
+				? (Document) node : node.getOwnerDocument();
+		this.current = node;
+	}
+
+	@Override
+	public void startDocument() {
+	}
+
+	@Override
+	public void endDocument() {
+	}
+
+	@Override
+	public void beginStartTag(Name name) {
+		current = current.appendChild(document.createElementNS(
+				name.nsUri.isEmpty() ? null : name.nsUri, name.qName));
+	}
+	
+	@Override
+	public void namespaceDeclaration(String prefix, String nsUri) {
+		((Element) current).setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, 
+				prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, nsUri);
+	}
+
+	@Override
+	public void attribute(String localName, String value) {
+		((Element) current).setAttribute(localName, value);
+	}
+
+	@Override
+	public void attribute(Name name, String value) {
+		((Element) current).setAttributeNS(name.nsUri, name.qName, value);
+	}
+
+	@Override
+	public void endStartTag() {
+	}
+
+	@Override
+	public void endTag(Name name) {
+		current = current.getParentNode();
+	}
+
+	@Override
+	public void text(String value) {
+		current.appendChild(document.createTextNode(value));
+	}
+}
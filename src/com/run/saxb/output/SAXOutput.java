@@ -0,0 +1,126 @@
+package com.run.saxb.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.run.saxb.Name;
+
+/**
+ * {@link XmlOutput} that sends the content as events to a SAX {@link ContentHandler}.
+ *
+ * <p>
+ * The attributes of a start tag are collected until {@link #endStartTag()}, 
+ * where <tt>startElement</tt> is sent. Namespace declarations become 
+ * <tt>startPrefixMapping</tt> and <tt>endPrefixMapping</tt> events around the
+ * element; they are not reported as attributes. A single attribute list and
+ * character buffer are reused for the whole document.
+ */
+public final class SAXOutput implements XmlOutput {
+	
+	private final ContentHandler handler;
+	private final AttributesImpl atts = new AttributesImpl();
+	private char[] buf = new char[256];
+	
+	/**
+	 * The element whose start tag is being written.
+	 */
+	private Name current;
+	
+	/**
+	 * The prefixes declared on the root element.
+	 */
+	private final List<String> prefixes = new ArrayList<>();
+	private int depth;
+	
+	public SAXOutput(ContentHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void startDocument() throws IOException {
+		try {
+			handler.startDocument();
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		try {
+			handler.endDocument();
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void beginStartTag(Name name) {
+		current = name;
+		atts.clear();
+	}
+
+	@Override
+	public void namespaceDeclaration(String prefix, String nsUri) throws IOException {
+		try {
+			handler.startPrefixMapping(prefix, nsUri);
+			prefixes.add(prefix);
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void attribute(String localName, String value) {
+		atts.addAttribute("", localName, localName, "CDATA", value);
+	}
+
+	@Override
+	public void attribute(Name name, String value) {
+		atts.addAttribute(name.nsUri, name.localName, name.qName, "CDATA", value);
+	}
+
+	@Override
+	public void endStartTag() throws IOException {
+		try {
+			handler.startElement(current.nsUri, current.localName, current.qName, atts);
+			depth++;
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void endTag(Name name) throws IOException {
+		try {
+			handler.endElement(name.nsUri, name.localName, name.qName);
+			if (--depth == 0) {
+				for (int i = prefixes.size() - 1; i >= 0; i--)
+					handler.endPrefixMapping(prefixes.get(i));
+				prefixes.clear();
+			}
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void text(String value) throws IOException {
+		int len = value.length();
+		if (len == 0)
+			return;
+		if (buf.length < len)
+			buf = new char[Math.max(len, buf.length * 2)];
+		value.getChars(0, len, buf, 0);
+		try {
+			handler.characters(buf, 0, len);
+		} catch (SAXException e) {
+			throw new IOException(e);
+		}
+	}
+}
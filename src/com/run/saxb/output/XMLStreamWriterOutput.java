@@ -0,0 +1,100 @@
+package com.run.saxb.output;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.run.saxb.Name;
+
+/**
+ * {@link XmlOutput} that sends the content to a StAX {@link XMLStreamWriter}.
+ *
+ * <p>
+ * Only the root element and its content are written. The start and the end
+ * of the document are left to the owner of the writer, so that the content 
+ * can be embedded in a document that is being written. The writer is flushed 
+ * at the end, but not closed.
+ */
+public final class XMLStreamWriterOutput implements XmlOutput {
+	
+	private final XMLStreamWriter out;
+	
+	public XMLStreamWriterOutput(XMLStreamWriter out) {
+		this.out = out;
+	}
+
+	@Override
+	public void startDocument() {
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		try {
+			out.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void beginStartTag(Name name) throws IOException {
+		try {
+			out.writeStartElement(name.prefix, name.localName, name.nsUri);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void namespaceDeclaration(String prefix, String nsUri) throws IOException {
+		try {
+			if (prefix.isEmpty())
+				out.writeDefaultNamespace(nsUri);
+			else
+				out.writeNamespace(prefix, nsUri);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void attribute(String localName, String value) throws IOException {
+		try {
+			out.writeAttribute(localName, value);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void attribute(Name name, String value) throws IOException {
+		try {
+			out.writeAttribute(name.prefix, name.nsUri, name.localName, value);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void endStartTag() {
+	}
+
+	@Override
+	public void endTag(Name name) throws IOException {
+		try {
+			out.writeEndElement();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void text(String value) throws IOException {
+		try {
+			out.writeCharacters(value);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+}
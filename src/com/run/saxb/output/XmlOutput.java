@@ -0,0 +1,78 @@
+package com.run.saxb.output;
+
+import java.io.IOException;
+
+import com.run.saxb.Name;
+
+/**
+ * Well-formed XML writer.
+ *
+ * <p>
+ * Implementations of this interface are used by the marshaller
+ * to receive the content of the document, and they decide
+ * how the XML is actually represented (text, DOM, ...).
+ *
+ * <h2>Call Sequence</h2>
+ * <p>
+ * The marshaller calls the methods in the following order:
+ * <pre>
+ * CALLSEQUENCE  :=  {@link #startDocument()} ELEMENT {@link #endDocument()}
+ *
+ * ELEMENT       :=  {@link #beginStartTag(Name)} NSDECL* ATTRIBUTE* {@link #endStartTag()} CONTENTS {@link #endTag(Name)}
+ *
+ * NSDECL        :=  {@link #namespaceDeclaration(String, String)}
+ *
+ * ATTRIBUTE     :=  {@link #attribute(String, String)}
+ *
+ * CONTENTS      :=  (ELEMENT | {@link #text(String)})*
+ * </pre>
+ *
+ * <p>
+ * Element names come with their prefix already resolved, and namespaces are
+ * only declared on the root element, so implementations don't need to
+ * keep track of the namespace bindings.
+ */
+public interface XmlOutput {
+	
+	/**
+	 * Called at the very beginning.
+	 */
+	void startDocument() throws IOException;
+	
+	/**
+	 * Called at the very end. This is the last method to be invoked.
+	 */
+	void endDocument() throws IOException;
+	
+	/**
+	 * Writes the start of a tag. Attributes, if any, follow.
+	 */
+	void beginStartTag(Name name) throws IOException;
+	
+	/**
+	 * Declares a namespace on the element that was just started.
+	 */
+	void namespaceDeclaration(String prefix, String nsUri) throws IOException;
+	
+	/**
+	 * Writes an unqualified attribute.
+	 */
+	void attribute(String localName, String value) throws IOException;
+	
+	/**
+	 * Writes a qualified attribute, whose namespace is declared on the root.
+	 */
+	void attribute(Name name, String value) throws IOException;
+	
+	/**
+	 * Called when the start tag is complete, after all its attributes.
+	 */
+	void endStartTag() throws IOException;
+	
+	void endTag(Name name) throws IOException;
+	
+	/**
+	 * Writes character content. The value is escaped as necessary.
+	 */
+	void text(String value) throws IOException;
+}
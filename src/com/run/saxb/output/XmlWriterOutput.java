@@ -0,0 +1,327 @@
+package com.run.saxb.output;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.run.saxb.BufferPool;
+import com.run.saxb.Name;
+
+/**
+ * {@link XmlOutput} that writes XML text to a {@link Writer}.
+ *
+ * <p>
+ * Characters are collected in a buffer taken from a {@link BufferPool}
+ * and handed to the writer in blocks. {@link #finish()} must be called
+ * when the output is no longer used, to give the buffer back.
+ *
+ * <p>
+ * The output is the same as the one of the JAXP identity transformer 
+ * with the default output properties, so switching between the two
+ * doesn't change a single byte.
+ *
+ * <p>
+ * When formatted, each element starts on a line of its own, indented by its depth,
+ * and the end tag of an element with child elements is on a line of its own too.
+ * Elements with text content stay on one line, so their text is unchanged. 
+ * The line separator and the indentation of each depth are kept in a table, 
+ * so that each line costs a single copy.
+ */
+public class XmlWriterOutput implements XmlOutput {
+	
+	private static final String XML_DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+	
+	protected final Writer out;
+	private final BufferPool pool;
+	private char[] buf;
+	private int len;
+	
+	/**
+	 * True if the last start tag is written up to its attributes,
+	 * but not closed yet. This is how empty elements end up as <tt>&lt;a/></tt>.
+	 */
+	private boolean pendingStartTag;
+	
+	/**
+	 * The line separator followed by the indentation of each depth,
+	 * or null if the output is not formatted. Grows with the depth.
+	 */
+	private char[][] indents;
+	private final String indent;
+	private final String lineSeparator;
+	
+	/**
+	 * Depth of the next start tag.
+	 */
+	private int depth;
+	
+	/**
+	 * True if the content of the current element so far is text, in which case
+	 * its end tag follows on the same line.
+	 */
+	private boolean textContent;
+	
+	/**
+	 * True if something is written before the root, so that it starts a new line.
+	 */
+	private boolean prolog;
+	
+	public XmlWriterOutput(Writer out, BufferPool pool) {
+		this(out, pool, null, null);
+	}
+	
+	/**
+	 * Creates a formatted output.
+	 * 
+	 * @param indent
+	 *      The indentation of one level of depth, or null for an output
+	 *      that is not formatted.
+	 * @param lineSeparator
+	 *      The end of lines of a formatted output.
+	 */
+	public XmlWriterOutput(Writer out, BufferPool pool, String indent, String lineSeparator) {
+		this.out = out;
+		this.pool = pool;
+		this.buf = pool.acquireChars(8192);
+		this.indent = indent;
+		this.lineSeparator = lineSeparator;
+		if (indent != null) {
+			indents = new char[16][];
+			for (int i = 0; i < indents.length; i++)
+				indents[i] = indentation(i);
+		}
+	}
+	
+	private char[] indentation(int depth) {
+		StringBuilder sb = new StringBuilder(lineSeparator.length() + indent.length() * depth);
+		sb.append(lineSeparator);
+		for (int i = 0; i < depth; i++)
+			sb.append(indent);
+		return sb.toString().toCharArray();
+	}
+	
+	/**
+	 * Checks if the elements are written on lines of their own.
+	 */
+	public boolean isFormatted() {
+		return indents != null;
+	}
+	
+	@Override
+	public void startDocument() throws IOException {
+		write(XML_DECL);
+		prolog = true;
+	}
+	
+	@Override
+	public void endDocument() throws IOException {
+		if (indents != null)
+			write(lineSeparator);
+		flushBuffer();
+		out.flush();
+	}
+	
+	@Override
+	public void beginStartTag(Name name) throws IOException {
+		closeStartTag();
+		if (indents != null) {
+			if (depth > 0 || prolog)
+				newLine(depth);
+			depth++;
+			textContent = false;
+		}
+		write('<');
+		write(name.qName);
+		pendingStartTag = true;
+	}
+	
+	@Override
+	public void namespaceDeclaration(String prefix, String nsUri) throws IOException {
+		write(prefix.isEmpty() ? " xmlns=\"" : " xmlns:");
+		if (!prefix.isEmpty()) {
+			write(prefix);
+			write("=\"");
+		}
+		escape(nsUri, true);
+		write('"');
+	}
+	
+	@Override
+	public void attribute(String localName, String value) throws IOException {
+		write(' ');
+		write(localName);
+		write("=\"");
+		escape(value, true);
+		write('"');
+	}
+	
+	@Override
+	public void attribute(Name name, String value) throws IOException {
+		attribute(name.qName, value);
+	}
+	
+	@Override
+	public void endStartTag() {
+		// deferred until we know whether the element is empty
+	}
+	
+	@Override
+	public void endTag(Name name) throws IOException {
+		if (indents != null) {
+			depth--;
+			boolean inline = textContent;
+			textContent = false;
+			if (!pendingStartTag && !inline)
+				newLine(depth);
+		}
+		if (pendingStartTag) {
+			write("/>");
+			pendingStartTag = false;
+			return;
+		}
+		write("</");
+		write(name.qName);
+		write('>');
+	}
+	
+	@Override
+	public void text(String value) throws IOException {
+		if (value.isEmpty())
+			return;
+		closeStartTag();
+		textContent = true;
+		escape(value, false);
+	}
+	
+	/**
+	 * Writes text content that is already escaped, as is.
+	 */
+	public void text(char[] text, int start, int length) throws IOException {
+		if (length == 0)
+			return;
+		closeStartTag();
+		textContent = true;
+		append(text, start, length);
+	}
+	
+	/**
+	 * Starts a new line, indented by the given depth.
+	 */
+	private void newLine(int depth) throws IOException {
+		if (depth >= indents.length) {
+			char[][] grown = new char[Math.max(depth + 1, indents.length * 2)][];
+			System.arraycopy(indents, 0, grown, 0, indents.length);
+			for (int i = indents.length; i < grown.length; i++)
+				grown[i] = indentation(i);
+			indents = grown;
+		}
+		char[] line = indents[depth];
+		append(line, 0, line.length);
+	}
+	
+	/**
+	 * Writes content that was marshalled into a separate buffer, as is.
+	 * The content must be a sequence of complete elements.
+	 */
+	public void write(CharArrayWriter fragment) throws IOException {
+		closeStartTag();
+		flushBuffer();
+		fragment.writeTo(out);
+	}
+	
+	/**
+	 * Writes content that was marshalled before, as is.
+	 * The content must be a sequence of complete elements.
+	 */
+	public void write(char[] fragment, int start, int length) throws IOException {
+		closeStartTag();
+		append(fragment, start, length);
+	}
+	
+	private void append(char[] fragment, int start, int length) throws IOException {
+		if (length > buf.length - len) {
+			flushBuffer();
+			out.write(fragment, start, length);
+			return;
+		}
+		System.arraycopy(fragment, start, buf, len, length);
+		len += length;
+	}
+	
+	/**
+	 * Writes out the buffered characters and gives the buffer back to the pool.
+	 * The output can't be used afterwards.
+	 */
+	public void finish() throws IOException {
+		if (buf == null)
+			return;
+		try {
+			flushBuffer();
+		} finally {
+			pool.releaseChars(buf);
+			buf = null;
+		}
+	}
+	
+	private void closeStartTag() throws IOException {
+		if (pendingStartTag) {
+			write('>');
+			pendingStartTag = false;
+		}
+	}
+	
+	private void escape(String s, boolean attribute) throws IOException {
+		int start = 0;
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			String ref;
+			switch (s.charAt(i)) {
+			case '&':  ref = "&amp;";  break;
+			case '<':  ref = "&lt;";   break;
+			case '>':  ref = "&gt;";   break;
+			case '\r': ref = "&#13;";  break;
+			case '"':  ref = attribute ? "&quot;" : null; break;
+			case '\n': ref = attribute ? "&#10;" : null;  break;
+			case '\t': ref = attribute ? "&#9;" : null;   break;
+			default:   ref = null;
+			}
+			if (ref != null) {
+				write(s, start, i);
+				write(ref);
+				start = i + 1;
+			} else if (Character.isHighSurrogate(s.charAt(i)) && i + 1 < n) {
+				// written as a character reference, like the transformer does
+				write(s, start, i);
+				write("&#" + s.codePointAt(i) + ';');
+				start = ++i + 1;
+			}
+		}
+		write(s, start, n);
+	}
+	
+	private void write(char c) throws IOException {
+		if (len == buf.length)
+			flushBuffer();
+		buf[len++] = c;
+	}
+	
+	private void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+	
+	private void write(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (len == buf.length)
+				flushBuffer();
+			int n = Math.min(end - start, buf.length - len);
+			s.getChars(start, start + n, buf, len);
+			len += n;
+			start += n;
+		}
+	}
+	
+	private void flushBuffer() throws IOException {
+		out.write(buf, 0, len);
+		len = 0;
+	}
+}
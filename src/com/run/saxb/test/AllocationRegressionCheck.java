@@ -0,0 +1,166 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.run.saxb.BeanInfo;
+import com.run.saxb.BoundedInstancePool;
+import com.run.saxb.ClassFactory;
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Runs the hot paths of the library on a representative order document and
+ * checks the bytes allocated and the time spent per bean against fixed budgets,
+ * so that a change that makes them allocate or take more fails instead of
+ * going unnoticed.
+ * <br/>
+ * Each path is warmed up first, then measured in steady state. The allocation
+ * is measured with the HotSpot extension of <tt>ThreadMXBean</tt>, and is stable
+ * from one run to the next; the time budgets are loose, so that they only catch
+ * a path that gets several times slower. Exits with the status 1 if any budget
+ * is exceeded.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class AllocationRegressionCheck {
+
+	private static final int ROUNDS = 200;
+
+	private static final List<String> failures = new ArrayList<>();
+
+	/**
+	 * Keeps the beans that are created reachable, so that they're not optimized away.
+	 */
+	private static Object[] sink;
+
+	public static void main(String[] args) throws Exception {
+		final int size = Bench.size(args, 1000);
+
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		final Order order = Orders.create(size);
+		final BeanInfo<Line> lineInfo = context.getBeanInfo(Line.class);
+		sink = new Object[size];
+
+		// a line takes 40 bytes with compressed references, 56 without
+		check("ClassFactory.create", size, 64, 1, new Bench.Operation() {
+			@Override
+			void run() {
+				for (int i = 0; i < sink.length; i++)
+					sink[i] = ClassFactory.create(Line.class);
+			}
+		});
+		check("BeanInfo.createInstance", size, 64, 1, new Bench.Operation() {
+			@Override
+			void run() {
+				for (int i = 0; i < sink.length; i++)
+					sink[i] = lineInfo.createInstance();
+			}
+		});
+		final BoundedInstancePool<Line> pool = new BoundedInstancePool<>(size);
+		check("BeanInfo.createInstance pooled", size, 0, 1, new Bench.Operation() {
+			@Override
+			void run() {
+				lineInfo.setInstancePool(pool);
+				for (int i = 0; i < sink.length; i++)
+					sink[i] = lineInfo.createInstance();
+				for (int i = 0; i < sink.length; i++)
+					pool.release((Line) sink[i]);
+				lineInfo.setInstancePool(null);
+			}
+		});
+
+		for (DataFormat format: DataFormat.values()) {
+			final Marshaller m = context.createMarshaller();
+			m.setFormat(format);
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			m.marshal(order, os);
+			final byte[] doc = os.toByteArray();
+			final long[] budget = budget(format);
+
+			// the bytes written go to the stream, which is reused
+			check(format + " marshal", size, budget[0], 20, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					os.reset();
+					m.marshal(order, os);
+				}
+			});
+
+			final Unmarshaller u = context.createUnmarshaller();
+			u.setFormat(format);
+			check(format + " unmarshal", size, budget[1], 50, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					u.unmarshal(new ByteArrayInputStream(doc));
+				}
+			});
+
+			final Order target = new Order();
+			check(format + " unmarshal into", size, budget[2], 50, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					context.setInstancePool(Line.class, pool);
+					u.unmarshalInto(new ByteArrayInputStream(doc), target);
+					context.setInstancePool(Line.class, null);
+				}
+			});
+		}
+
+		if (!failures.isEmpty()) {
+			System.out.println(failures.size() + " budget(s) exceeded:");
+			for (String failure: failures)
+				System.out.println("  " + failure);
+			System.exit(1);
+		}
+		System.out.println("all budgets met");
+	}
+
+	/**
+	 * Gets the bytes allocated per line when marshalling, unmarshalling,
+	 * and unmarshalling into the same tree, about half as much again as
+	 * they take now. Most of it is the text of the numbers, and the values
+	 * of the new beans.
+	 */
+	private static long[] budget(DataFormat format) {
+		switch (format) {
+		case BINARY:
+			return new long[] { 64, 128, 48 };
+		case JSON:
+			return new long[] { 96, 704, 640 };
+		default:
+			return new long[] { 160, 544, 464 };
+		}
+	}
+
+	/**
+	 * Measures an operation in steady state.
+	 *
+	 * @param beans
+	 *      Number of beans the operation works on.
+	 * @param maxBytes
+	 *      Budget of bytes allocated per bean.
+	 * @param maxMicros
+	 *      Budget of microseconds per bean.
+	 */
+	private static void check(String label, int beans, long maxBytes, double maxMicros, Bench.Operation op)
+			throws Exception {
+		Bench.Result result = Bench.measure(ROUNDS, op);
+		double bytesPerBean = result.bytes / beans;
+		double microsPerBean = result.millis * 1e3 / beans;
+
+		boolean ok = bytesPerBean <= maxBytes && microsPerBean <= maxMicros;
+		String line = String.format("%-30s allocated=%7.1f bytes (max %d) time=%6.3f us (max %.0f)",
+				label, bytesPerBean, maxBytes, microsPerBean, maxMicros);
+		System.out.println((ok ? "ok    " : "FAIL  ") + line);
+		if (!ok)
+			failures.add(line);
+	}
+}
@@ -0,0 +1,139 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+
+/**
+ * Measures the operations of the benchmarks and the checks of this package,
+ * and marshals and unmarshals their documents in memory.
+ * <br/>
+ * An operation is run for a number of rounds: the first half warms it up, and
+ * the second half is measured, both for the time and for the bytes allocated by
+ * the thread, through the HotSpot extension of <tt>ThreadMXBean</tt>.
+ */
+final class Bench {
+
+	/**
+	 * An operation that is measured, or checked.
+	 */
+	static abstract class Operation {
+		abstract void run() throws Exception;
+	}
+
+	/**
+	 * The time and the allocation of an operation, per round.
+	 */
+	static final class Result {
+		final double millis;
+		final double bytes;
+
+		Result(double millis, double bytes) {
+			this.millis = millis;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("time=%.2f ms allocated=%.0f bytes", millis, bytes);
+		}
+	}
+
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private Bench() {
+	}
+
+	/**
+	 * Runs an operation, and measures the second half of the rounds.
+	 */
+	static Result measure(int rounds, Operation op) throws Exception {
+		long id = Thread.currentThread().getId();
+		long time = 0, allocated = 0;
+		for (int i = 0; i < rounds; i++) {
+			long bytes = threads.getThreadAllocatedBytes(id);
+			long start = System.nanoTime();
+			op.run();
+			long end = System.nanoTime();
+			if (i >= rounds / 2) {
+				time += end - start;
+				allocated += threads.getThreadAllocatedBytes(id) - bytes;
+			}
+		}
+		int measured = rounds - rounds / 2;
+		return new Result(time / 1e6 / measured, (double) allocated / measured);
+	}
+
+	/**
+	 * Runs an operation, and prints its measure after a label.
+	 */
+	static Result print(String label, int rounds, Operation op) throws Exception {
+		Result result = measure(rounds, op);
+		System.out.printf("%-20s %s%n", label, result);
+		return result;
+	}
+
+	/**
+	 * Gets the size of the document, from the first argument if there's one.
+	 */
+	static int size(String[] args, int defaultSize) {
+		return args.length > 0 ? Integer.parseInt(args[0]) : defaultSize;
+	}
+
+	/**
+	 * Marshals a content tree with a marshaller set up by the caller.
+	 */
+	static byte[] marshal(Marshaller m, Object root) throws JAXBException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		m.marshal(root, os);
+		return os.toByteArray();
+	}
+
+	/**
+	 * Marshals a content tree in a format, with the other settings by default.
+	 */
+	static byte[] marshal(SAXBContextImpl context, Object root, DataFormat format) throws JAXBException {
+		Marshaller m = context.createMarshaller();
+		m.setFormat(format);
+		return marshal(m, root);
+	}
+
+	/**
+	 * Unmarshals a document with an unmarshaller set up by the caller.
+	 */
+	static Object unmarshal(Unmarshaller u, byte[] doc) throws JAXBException {
+		return u.unmarshal(new ByteArrayInputStream(doc));
+	}
+
+	/**
+	 * The characters of an XML or a JSON document, which are written in UTF-8.
+	 */
+	static String text(byte[] doc) {
+		return new String(doc, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The bytes of an XML or a JSON document, in UTF-8.
+	 */
+	static byte[] bytes(String doc) {
+		return doc.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *      If the condition doesn't hold.
+	 */
+	static void check(boolean condition, String message) {
+		if (!condition)
+			throw new IllegalStateException(message);
+	}
+}
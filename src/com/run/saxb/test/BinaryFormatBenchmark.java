@@ -0,0 +1,128 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Compares the size, the time and the allocation of {@link DataFormat#BINARY}
+ * and {@link DataFormat#JSON} against textual XML on a representative order
+ * document, and checks that every shape of order comes back from each format
+ * as it was, and that corrupt binary documents are rejected.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class BinaryFormatBenchmark {
+
+	private static final int ROUNDS = 50;
+
+	public static void main(String[] args) throws Exception {
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		Order order = Orders.create(Bench.size(args, 10000));
+
+		byte[] xml = run(context, order, DataFormat.XML);
+		byte[] binary = run(context, order, DataFormat.BINARY);
+		byte[] json = run(context, order, DataFormat.JSON);
+
+		System.out.printf("size    xml=%d bytes binary=%d bytes (%.1f%%) json=%d bytes (%.1f%%)%n",
+				xml.length, binary.length, 100.0 * binary.length / xml.length,
+				json.length, 100.0 * json.length / xml.length);
+
+		// round trip: binary or json -> object -> xml must give the same xml
+		for (final DataFormat format: new DataFormat[] { DataFormat.BINARY, DataFormat.JSON }) {
+			Orders.checkShapes(context, DataFormat.XML, format + " round trip doesn't match the xml form",
+					new Orders.RoundTrip() {
+				@Override
+				byte[] run(Order order) throws Exception {
+					Unmarshaller u = context.createUnmarshaller();
+					u.setFormat(format);
+					Object copy = Bench.unmarshal(u, Bench.marshal(context, order, format));
+					return Bench.marshal(context, copy, DataFormat.XML);
+				}
+			});
+		}
+		System.out.println("round trip ok");
+		checkCorrupt(context);
+		System.out.println("buffers " + context.getBufferPool().getStatistics());
+	}
+
+	/**
+	 * Checks that truncated documents, and a string whose length goes far
+	 * beyond the end of the document, are rejected without allocating that length.
+	 */
+	private static void checkCorrupt(SAXBContextImpl context) throws Exception {
+		Order order = Orders.create(2);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 100000)
+			sb.append("long value ").append(sb.length()).append(' ');
+		order.status = sb.toString();
+		byte[] doc = Bench.marshal(context, order, DataFormat.BINARY);
+		byte[] value = Bench.bytes(order.status);
+		int at = indexOf(doc, Arrays.copyOf(value, 32));
+		Bench.check(at > 0, "long string not found");
+
+		for (int end: new int[] { at - 1, at + 10, at + value.length / 2, doc.length - 1 })
+			reject(context, Arrays.copyOf(doc, end), "truncated at " + end + " of " + doc.length);
+		// the varint of the length is replaced by the largest length
+		int lengthBytes = 0;
+		for (int len = value.length; len != 0; len >>>= 7)
+			lengthBytes++;
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		os.write(doc, 0, at - lengthBytes);
+		os.write(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 });
+		os.write(doc, at, doc.length - at);
+		reject(context, os.toByteArray(), "string length beyond the document");
+	}
+
+	private static int indexOf(byte[] data, byte[] part) {
+		for (int i = 0; i + part.length <= data.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(data, i, i + part.length), part))
+				return i;
+		}
+		return -1;
+	}
+
+	private static void reject(SAXBContextImpl context, byte[] doc, String problem) {
+		Unmarshaller u = context.createUnmarshaller();
+		u.setFormat(DataFormat.BINARY);
+		try {
+			Bench.unmarshal(u, doc);
+		} catch (JAXBException expected) {
+			System.out.println(problem + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(problem + " accepted");
+	}
+
+	private static byte[] run(SAXBContextImpl context, final Object root, DataFormat format) throws Exception {
+		final Marshaller m = context.createMarshaller();
+		m.setFormat(format);
+		final Unmarshaller u = context.createUnmarshaller();
+		u.setFormat(format);
+		final byte[] data = Bench.marshal(m, root);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		Bench.print(format + " marshal", ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				os.reset();
+				m.marshal(root, os);
+			}
+		});
+		Bench.print(format + " unmarshal", ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				u.unmarshal(new ByteArrayInputStream(data));
+			}
+		});
+		return data;
+	}
+}
@@ -0,0 +1,55 @@
+package com.run.saxb.test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import com.run.saxb.ContextCache;
+import com.run.saxb.SAXBContext;
+
+/**
+ * Checks that the contexts created from the same context path and class loader
+ * are shared, that each class loader has its own, that the cache stays within
+ * its bound, and that it can be turned off.
+ */
+public class ContextCacheCheck {
+
+	private static final String PATH = "com.run.saxb.test.model";
+
+	public static void main(String[] args) throws Exception {
+		ClassLoader loader = ContextCacheCheck.class.getClassLoader();
+		ClassLoader other = new URLClassLoader(new URL[0], loader);
+		ContextCache cache = SAXBContext.getContextCache();
+		cache.clear();
+
+		SAXBContext context = SAXBContext.newInstance(PATH, loader);
+		Bench.check(SAXBContext.newInstance(PATH, loader) == context, "same path, different context");
+		Bench.check(SAXBContext.newInstance(PATH, other) != context, "other class loader, same context");
+
+		long evictions = cache.getStatistics().evictions;
+		int maxEntries = cache.getMaxEntries();
+		cache.setMaxEntries(1);
+		try {
+			ContextCache.Statistics statistics = cache.getStatistics();
+			Bench.check(statistics.entries == 1, "more entries than the bound: " + statistics);
+			Bench.check(statistics.evictions == evictions + 1, "eviction not counted: " + statistics);
+			// the context of the other class loader was the most recently used
+			Bench.check(SAXBContext.newInstance(PATH, loader) != context, "evicted context still returned");
+		} finally {
+			cache.setMaxEntries(maxEntries);
+		}
+
+		cache.setEnabled(false);
+		try {
+			Bench.check(cache.getStatistics().entries == 0, "contexts kept when the cache is off");
+			Bench.check(SAXBContext.newInstance(PATH, loader) != SAXBContext.newInstance(PATH, loader),
+					"same context when the cache is off");
+		} finally {
+			cache.setEnabled(true);
+		}
+		context = SAXBContext.newInstance(PATH, loader);
+		Bench.check(SAXBContext.newInstance(PATH, loader) == context, "cache not back on");
+
+		System.out.println(cache.getStatistics());
+		System.out.println("context cache ok");
+	}
+}
@@ -0,0 +1,118 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.SubtypeCheck.Circle;
+import com.run.saxb.test.SubtypeCheck.Shape;
+import com.run.saxb.test.model.Customer;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Checks that every overload of <tt>unmarshal</tt> with a declared type binds
+ * the root element to that type whatever its name, in every format, including
+ * classes that are not roots of the context and subtypes selected by
+ * <tt>xsi:type</tt>, and that roots of the wrong type are rejected without
+ * affecting the next calls.
+ */
+public class DeclaredTypeCheck {
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Order.class, SubtypeCheck.Drawing.class));
+
+		File file = File.createTempFile("declared", ".xml");
+		try {
+			for (Order shape: Orders.shapes()) {
+				String doc = Bench.text(Bench.marshal(context, shape, DataFormat.XML));
+				String renamed = doc.replace("<Order", "<purchase").replace("</Order>", "</purchase>");
+				byte[] bytes = Bench.bytes(renamed);
+				Files.write(file.toPath(), bytes);
+				DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+				dbf.setNamespaceAware(true);
+
+				Unmarshaller u = context.createUnmarshaller();
+				check(context, doc, u.unmarshal(file, Order.class), "file");
+				check(context, doc, u.unmarshal(new ByteArrayInputStream(bytes), Order.class), "stream");
+				check(context, doc, u.unmarshal(new StringReader(renamed), Order.class), "reader");
+				check(context, doc, u.unmarshal(dbf.newDocumentBuilder().parse(file), Order.class), "node");
+				check(context, doc, u.unmarshal(new StreamSource(file), Order.class), "source");
+				check(context, doc, u.unmarshal(XMLInputFactory.newInstance().createXMLStreamReader(
+						new StringReader(renamed)), Order.class), "stream reader");
+				u.setParallel(true);
+				u.setChunkSize(2);
+				check(context, doc, u.unmarshal(new ByteArrayInputStream(bytes), Order.class), "parallel stream");
+
+				String json = Bench.text(Bench.marshal(context, shape, DataFormat.JSON));
+				u = context.createUnmarshaller();
+				u.setFormat(DataFormat.JSON);
+				check(context, doc, u.unmarshal(new StringReader(json.replaceFirst("\"Order\"", "\"purchase\"")), Order.class), "json");
+
+				u = context.createUnmarshaller();
+				u.setFormat(DataFormat.BINARY);
+				byte[] binary = Bench.marshal(context, shape, DataFormat.BINARY);
+				check(context, doc, u.unmarshal(new ByteArrayInputStream(binary), Order.class), "binary");
+				reject(u, binary, Customer.class, "binary document of another type");
+			}
+		} finally {
+			file.delete();
+		}
+
+		// a class that is not a root of the context, and a subtype
+		Unmarshaller u = context.createUnmarshaller();
+		Customer customer = u.unmarshal(new StringReader("<buyer><name>RuN</name><id>7</id></buyer>"), Customer.class);
+		Bench.check("RuN".equals(customer.name) && customer.id == 7, "customer not bound");
+		Shape shape = u.unmarshal(new StringReader("<item xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'"
+				+ " xsi:type='Circle'><color>red</color><radius>2</radius></item>"), Shape.class);
+		Bench.check(shape instanceof Circle && ((Circle) shape).radius == 2 && "red".equals(shape.color),
+				"subtype not selected: " + shape);
+
+		byte[] purchase = Bench.bytes("<purchase><number>1</number></purchase>");
+		reject(u, purchase, ValidationCheck.Invoice.class, "type unknown to the context");
+		try {
+			u.unmarshal(new ByteArrayInputStream(purchase), (Class<?>) null);
+			throw new IllegalStateException("null type accepted");
+		} catch (IllegalArgumentException expected) {
+		}
+		u.setValidating(true);
+		reject(u, Bench.marshal(context, Orders.create(1), DataFormat.XML), Customer.class, "order bound to a customer");
+		u.setValidating(false);
+
+		// the declared type is gone once the call returns
+		reject(u, purchase, null, "unknown root after a declared type");
+		Order order = (Order) Bench.unmarshal(u, Bench.marshal(context, Orders.create(1), DataFormat.XML));
+		Bench.check(order.lines.size() == 1, "root not bound after a declared type");
+		System.out.println("declared types ok");
+	}
+
+	private static void check(SAXBContextImpl context, String expected, Order order, String input) throws JAXBException {
+		Bench.check(expected.equals(Bench.text(Bench.marshal(context, order, DataFormat.XML))), input + " doesn't match: " + expected);
+	}
+
+	/**
+	 * Unmarshals the document to the given type, or to the type of its root if null,
+	 * and expects it to fail.
+	 */
+	private static void reject(Unmarshaller u, byte[] doc, Class<?> declaredType, String problem) {
+		try {
+			if (declaredType == null)
+				Bench.unmarshal(u, doc);
+			else
+				u.unmarshal(new ByteArrayInputStream(doc), declaredType);
+		} catch (JAXBException expected) {
+			System.out.println(problem + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(problem + " accepted");
+	}
+}
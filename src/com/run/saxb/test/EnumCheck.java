@@ -0,0 +1,111 @@
+package com.run.saxb.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlEnumValue;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.transducer.EnumTable;
+
+/**
+ * Checks that the constants of enum types are printed and parsed back through
+ * their tables, by name and by {@link XmlEnumValue}, including representations
+ * that must be escaped, and that unknown values are rejected.
+ */
+public class EnumCheck {
+
+	public enum Status {
+		OPEN, CLOSED, ON_HOLD, SHIPPED, CANCELLED, RETURNED, REFUNDED, ARCHIVED
+	}
+
+	public enum Grade {
+		@XmlEnumValue("A+") A_PLUS,
+		@XmlEnumValue("a&b<c>") ESCAPED,
+		@XmlEnumValue("\"quoted\"") QUOTED,
+		@XmlEnumValue("Gr\u00fc\u00df \ud83d\ude00") SURROGATES,
+		@XmlEnumValue("") EMPTY,
+		PLAIN
+	}
+
+	/**
+	 * Names that differ in a single character, or only by their order.
+	 */
+	public enum Code {
+		AA, AB, BA, BB, AAA, AAB, ABA, BAA, A0, A1, A2, A3, A4, A5, A6, A7, A8, A9
+	}
+
+	public static class Ticket {
+		public Status status;
+		public Grade grade;
+		public Code code;
+		public List<Grade> grades;
+	}
+
+	public static void main(String[] args) throws Exception {
+		for (Class<?> type: Arrays.<Class<?>>asList(Status.class, Grade.class, Code.class))
+			checkTable(type);
+
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Ticket.class));
+		for (Grade grade: Grade.values()) {
+			Ticket ticket = new Ticket();
+			ticket.status = Status.values()[grade.ordinal() % Status.values().length];
+			ticket.grade = grade;
+			ticket.code = Code.values()[grade.ordinal() * 2];
+			ticket.grades = new ArrayList<>(Arrays.asList(Grade.values()));
+			for (DataFormat format: DataFormat.values()) {
+				byte[] doc = Bench.marshal(context, ticket, format);
+				Unmarshaller u = context.createUnmarshaller();
+				u.setFormat(format);
+				Ticket copy = (Ticket) Bench.unmarshal(u, doc);
+				Bench.check(copy.status == ticket.status && copy.grade == grade && copy.code == ticket.code
+						&& copy.grades.equals(ticket.grades), format + ": " + grade + " not read back");
+			}
+		}
+
+		Ticket ticket = new Ticket();
+		ticket.status = Status.ON_HOLD;
+		String xml = Bench.text(Bench.marshal(context, ticket, DataFormat.XML));
+		Bench.check(xml.contains("ON_HOLD"), "status not written: " + xml);
+		try {
+			Bench.unmarshal(context.createUnmarshaller(), Bench.bytes(xml.replace("ON_HOLD", "ON_HOLDS")));
+			throw new IllegalStateException("unknown constant accepted");
+		} catch (JAXBException expected) {
+			System.out.println("rejected: " + expected.getMessage());
+		}
+		System.out.println("enums ok");
+	}
+
+	/**
+	 * Prints and parses back every constant, from strings and from characters,
+	 * and looks up values that are not constants.
+	 */
+	private static void checkTable(Class<?> type) {
+		EnumTable table = EnumTable.of(type);
+		for (Object constant: type.getEnumConstants()) {
+			Enum<?> e = (Enum<?>) constant;
+			String lexical = table.print(e);
+			Bench.check(table.parse(lexical) == e, table + ": parse " + lexical);
+			Bench.check(table.parse(" \t" + lexical + "\n") == e, table + ": parse with whitespace " + lexical);
+			char[] ch = ("<<" + lexical + ">>").toCharArray();
+			Bench.check(table.lookup(ch, 2, lexical.length()) == e, table + ": lookup " + lexical);
+			char[] xml = table.getXml(e);
+			Bench.check(xml == null || new String(xml).equals(lexical), table + ": xml form of " + lexical);
+			Bench.check(table.get(e.ordinal()) == e, table + ": ordinal of " + lexical);
+			for (String unknown: new String[] { lexical + "X", "X" + lexical, lexical.toLowerCase() + "?" }) {
+				char[] u = unknown.toCharArray();
+				Bench.check(table.lookup(u, 0, u.length) == null, table + ": lookup of " + unknown);
+				try {
+					table.parse(unknown);
+					throw new IllegalStateException(table + ": parse of " + unknown);
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+		}
+		Bench.check(table.lookup(new char[0], 0, 0) == null || type == Grade.class, table + ": lookup of nothing");
+	}
+}
@@ -0,0 +1,113 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Compares unformatted output, formatted output, and formatting through
+ * an indenting <tt>Transformer</tt> on a DOM, on a representative order document.
+ * Checks that every shape of order, formatted with each kind of indentation
+ * and end of lines, reads back as the unformatted document does, and that
+ * the options that don't apply to formatted output leave it unchanged.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class FormattedOutputBenchmark {
+
+	private static final int ROUNDS = 200;
+
+	public static void main(String[] args) throws Exception {
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		final Order order = Orders.create(Bench.size(args, 10000));
+
+		final Marshaller compact = context.createMarshaller();
+		final Marshaller formatted = context.createMarshaller();
+		formatted.setFormatted(true);
+		final Marshaller dom = context.createMarshaller();
+		final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Bench.print("compact", ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				os.reset();
+				compact.marshal(order, os);
+			}
+		});
+		Bench.print("formatted", ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				os.reset();
+				formatted.marshal(order, os);
+			}
+		});
+		Bench.print("transformer", ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				os.reset();
+				Document doc = dbf.newDocumentBuilder().newDocument();
+				dom.marshal(order, doc);
+				transformer.transform(new DOMSource(doc), new StreamResult(os));
+			}
+		});
+
+		for (final String indent: new String[] { "    ", "\t", "" }) {
+			for (final String lineSeparator: new String[] { "\n", "\r\n", "\r" }) {
+				Orders.checkShapes(context, DataFormat.XML, "formatted output doesn't read back with indent '" + indent + "'",
+						new Orders.RoundTrip() {
+					@Override
+					byte[] run(Order order) throws Exception {
+						Marshaller m = context.createMarshaller();
+						m.setIndent(indent);
+						m.setLineSeparator(lineSeparator);
+						byte[] doc = Bench.marshal(m, order);
+
+						// none of these apply to formatted output
+						m.setParallel(true);
+						m.setChunkSize(1);
+						m.setIncremental(true);
+						Bench.check(Arrays.equals(doc, Bench.marshal(m, order)), "formatted output changed by other options");
+						return Bench.marshal(compact, Bench.unmarshal(context.createUnmarshaller(), doc));
+					}
+				});
+			}
+		}
+
+		Marshaller m = context.createMarshaller();
+		for (String indent: new String[] { " x", "\n" })
+			rejects(m, indent, true);
+		for (String lineSeparator: new String[] { "", " ", "\n\t" })
+			rejects(m, lineSeparator, false);
+		System.out.println("formatted output ok");
+	}
+
+	private static void rejects(Marshaller m, String value, boolean indent) {
+		try {
+			if (indent)
+				m.setIndent(value);
+			else
+				m.setLineSeparator(value);
+		} catch (IllegalArgumentException expected) {
+			return;
+		}
+		throw new IllegalStateException((indent ? "indent" : "line separator") + " accepted: '" + value + "'");
+	}
+}
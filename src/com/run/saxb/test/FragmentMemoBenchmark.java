@@ -0,0 +1,193 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAttribute;
+
+import com.run.saxb.FragmentMemo;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+
+/**
+ * Marshals trades that all refer to a few currency and country beans,
+ * with and without a {@link FragmentMemo} on these classes, and checks
+ * that both produce the same bytes: with memos by identity and by value,
+ * bounds small enough to evict, names that must be escaped, beans written
+ * under several element names, books of different shapes, and parallel
+ * and formatted output.
+ * <br/>
+ * The optional argument is the number of trades.
+ */
+public class FragmentMemoBenchmark {
+
+	private static final int ROUNDS = 200;
+
+	public static final class Currency {
+		@XmlAttribute final String code;
+		final String name;
+		final int digits;
+
+		public Currency(String code, String name, int digits) {
+			this.code = code;
+			this.name = name;
+			this.digits = digits;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Currency))
+				return false;
+			Currency c = (Currency) o;
+			return code.equals(c.code) && name.equals(c.name) && digits == c.digits;
+		}
+
+		@Override
+		public int hashCode() {
+			return code.hashCode();
+		}
+	}
+
+	public static final class Country {
+		@XmlAttribute final String code;
+		final String name;
+		final Currency currency;
+
+		public Country(String code, String name, Currency currency) {
+			this.code = code;
+			this.name = name;
+			this.currency = currency;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Country))
+				return false;
+			Country c = (Country) o;
+			return code.equals(c.code) && name.equals(c.name) && currency.equals(c.currency);
+		}
+
+		@Override
+		public int hashCode() {
+			return code.hashCode();
+		}
+	}
+
+	public static class Trade {
+		long id;
+		double amount;
+		Currency currency;
+		Country country;
+		Currency settlement;
+	}
+
+	public static class Book {
+		String desk;
+		List<Trade> trades = new ArrayList<>();
+	}
+
+	private static final Currency[] CURRENCIES = {
+			new Currency("EUR", "Euro", 2), new Currency("USD", "US Dollar", 2),
+			new Currency("JPY", "Yen", 0), new Currency("GBP", "Pound Sterling", 2),
+			new Currency("BAM", "Convertible Mark <&>", 2), new Currency("XOF", "Franc \"CFA\" \ud83d\udcb6", 0) };
+
+	private static final Country[] COUNTRIES = {
+			new Country("FR", "France", CURRENCIES[0]), new Country("DE", "Germany", CURRENCIES[0]),
+			new Country("US", "United States of America", CURRENCIES[1]), new Country("JP", "Japan", CURRENCIES[2]),
+			new Country("GB", "United Kingdom", CURRENCIES[3]), new Country("BA", "Bosnia & Herzegovina", CURRENCIES[4]),
+			new Country("CI", "C\u00f4te d'Ivoire", CURRENCIES[5]) };
+
+	public static void main(String[] args) throws Exception {
+		final Book book = createBook(Bench.size(args, 10000), false);
+
+		SAXBContextImpl plain = new SAXBContextImpl(Arrays.asList(Book.class));
+		SAXBContextImpl memoized = new SAXBContextImpl(Arrays.asList(Book.class));
+		FragmentMemo currencyMemo = new FragmentMemo(64, 1 << 16, false);
+		FragmentMemo countryMemo = new FragmentMemo(64, 1 << 16, false);
+		memoized.setFragmentMemo(Currency.class, currencyMemo);
+		memoized.setFragmentMemo(Country.class, countryMemo);
+
+		final ByteArrayOutputStream os = new ByteArrayOutputStream(1 << 20);
+		for (SAXBContextImpl context: new SAXBContextImpl[] { plain, memoized }) {
+			final Marshaller m = context.createMarshaller();
+			Bench.print(context == plain ? "full" : "memoized", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					os.reset();
+					m.marshal(book, os);
+				}
+			});
+		}
+		System.out.println("currencies " + currencyMemo.getStatistics());
+		System.out.println("countries  " + countryMemo.getStatistics());
+
+		List<Book> books = new ArrayList<>();
+		books.add(new Book());
+		books.add(createBook(1, false));
+		books.add(createBook(50, false));
+		books.add(createBook(50, true));
+		Book sparse = createBook(20, true);
+		sparse.trades.get(0).currency = null;
+		sparse.trades.get(1).country = null;
+		sparse.desk = null;
+		books.add(sparse);
+
+		for (boolean byValue: new boolean[] { false, true }) {
+			// bounds too small for all the fragments, so that they're evicted and written again
+			for (long maxChars: new long[] { 1 << 16, 64 }) {
+				memoized.setFragmentMemo(Currency.class, new FragmentMemo(3, maxChars, byValue));
+				memoized.setFragmentMemo(Country.class, new FragmentMemo(3, maxChars, byValue));
+				for (Book b: books) {
+					for (int options = 0; options < 3; options++) {
+						Bench.check(Arrays.equals(marshal(plain, b, options), marshal(memoized, b, options)),
+								"memoized output doesn't match, byValue=" + byValue + " maxChars=" + maxChars
+								+ " options=" + options + " trades=" + b.trades.size());
+					}
+				}
+			}
+		}
+		System.out.println("output identical");
+	}
+
+	/**
+	 * @param copies
+	 *      true for trades that refer to copies of the reference beans,
+	 *      which are equal but not the same.
+	 */
+	private static Book createBook(int size, boolean copies) {
+		Book book = new Book();
+		book.desk = "rates";
+		for (int i = 0; i < size; i++) {
+			Trade trade = new Trade();
+			trade.id = i;
+			trade.amount = i * 1.25;
+			Country country = COUNTRIES[i % COUNTRIES.length];
+			trade.country = copies ? new Country(country.code, country.name, copy(country.currency)) : country;
+			trade.currency = trade.country.currency;
+			trade.settlement = copies ? copy(CURRENCIES[i % 2]) : CURRENCIES[i % 2];
+			book.trades.add(trade);
+		}
+		return book;
+	}
+
+	private static Currency copy(Currency c) {
+		return new Currency(c.code, c.name, c.digits);
+	}
+
+	/**
+	 * @param options
+	 *      0 for plain output, 1 for parallel, 2 for formatted.
+	 */
+	private static byte[] marshal(SAXBContextImpl context, Object root, int options) throws JAXBException {
+		Marshaller m = context.createMarshaller();
+		if (options == 1) {
+			m.setParallel(true);
+			m.setChunkSize(4);
+		}
+		m.setFormatted(options == 2);
+		return Bench.marshal(m, root);
+	}
+}
@@ -0,0 +1,157 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAttribute;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.ReferenceMode;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+
+/**
+ * Checks that immutable beans, created through a constructor or a factory method,
+ * come back from every format as they were, nested in each other, in collections
+ * and in mutable beans, with the defaults of missing values, and that they can't
+ * be the target of an unmarshalling.
+ */
+public class ImmutableCheck {
+
+	/**
+	 * Bound through its constructor.
+	 */
+	public static final class Point {
+		@XmlAttribute
+		final int x;
+		@XmlAttribute
+		final int y;
+		final String label;
+
+		public Point(int x, int y, String label) {
+			this.x = x;
+			this.y = y;
+			this.label = label;
+		}
+	}
+
+	/**
+	 * Bound through its factory method; the constructor takes other parameters.
+	 */
+	public static final class Money {
+		final long cents;
+		final String currency;
+
+		private Money(String currency, long cents) {
+			this.cents = cents;
+			this.currency = currency;
+		}
+
+		static Money of(long cents, String currency) {
+			return new Money(currency, cents);
+		}
+	}
+
+	/**
+	 * An immutable bean holding other ones and a collection of them.
+	 */
+	public static final class Path {
+		final Point start;
+		final List<Point> points;
+		final Money cost;
+		final boolean closed;
+
+		public Path(Point start, List<Point> points, Money cost, boolean closed) {
+			this.start = start;
+			this.points = points;
+			this.cost = cost;
+			this.closed = closed;
+		}
+	}
+
+	public static class Chart {
+		public String name;
+		public Path route;
+		public List<Path> paths;
+		public Point origin;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Chart.class, Path.class));
+		Chart chart = chart();
+
+		for (DataFormat format: DataFormat.values()) {
+			byte[] doc = Bench.marshal(context, chart, format);
+			for (boolean parallel: new boolean[] { false, true }) {
+				Unmarshaller u = context.createUnmarshaller();
+				u.setFormat(format);
+				u.setParallel(parallel);
+				u.setChunkSize(1);
+				// twice, so that the argument buffers are reused
+				for (int i = 0; i < 2; i++) {
+					Chart copy = (Chart) Bench.unmarshal(u, doc);
+					Bench.check(Arrays.equals(doc, Bench.marshal(context, copy, format)),
+							format + ": round trip doesn't match");
+					Bench.check(copy.route.cost.cents == 1999 && "a&b <\u00e9>".equals(copy.route.start.label),
+							format + ": values of the route not read back");
+				}
+				// into a mutable target, and as an immutable root
+				Chart target = u.unmarshalInto(new ByteArrayInputStream(doc), new Chart());
+				Bench.check(Arrays.equals(doc, Bench.marshal(context, target, format)),
+						format + ": round trip into a target doesn't match");
+				byte[] path = Bench.marshal(context, chart.route, format);
+				Path route = (Path) Bench.unmarshal(u, path);
+				Bench.check(Arrays.equals(path, Bench.marshal(context, route, format)),
+						format + ": immutable root doesn't match");
+			}
+		}
+
+		// missing values are the defaults of their types
+		Unmarshaller u = context.createUnmarshaller();
+		Path empty = (Path) Bench.unmarshal(u, Bench.bytes("<Path><start x='3'/></Path>"));
+		Bench.check(empty.start.x == 3 && empty.start.y == 0 && empty.start.label == null, "defaults of a point");
+		Bench.check(empty.points == null && empty.cost == null && !empty.closed, "defaults of a path");
+
+		// an immutable bean shared by reference is created once
+		Path shared = chart.paths.get(0);
+		chart.route = shared;
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(ReferenceMode.ID_REF);
+		byte[] doc = Bench.marshal(m, chart);
+		Chart copy = (Chart) Bench.unmarshal(u, doc);
+		Bench.check(copy.route == copy.paths.get(0), "shared immutable bean not restored");
+		Bench.check(Arrays.equals(doc, Bench.marshal(m, copy)),
+				"round trip with references doesn't match");
+
+		for (DataFormat format: DataFormat.values()) {
+			try {
+				u = context.createUnmarshaller();
+				u.setFormat(format);
+				u.unmarshalInto(new ByteArrayInputStream(Bench.marshal(context, shared, format)), shared);
+				throw new IllegalStateException(format + ": immutable target accepted");
+			} catch (JAXBException expected) {
+				System.out.println(format + ": " + expected.getMessage());
+			}
+		}
+		System.out.println("immutable beans ok");
+	}
+
+	private static Chart chart() {
+		Chart chart = new Chart();
+		chart.name = "chart";
+		chart.origin = new Point(0, 0, null);
+		List<Point> points = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			points.add(new Point(i, -i, i % 2 == 0 ? "p" + i : null));
+		chart.route = new Path(new Point(1, 2, "a&b <\u00e9>"), points, Money.of(1999, "EUR"), true);
+		chart.paths = new ArrayList<>();
+		chart.paths.add(new Path(new Point(7, 7, "\ud83d\ude00"), new ArrayList<Point>(), null, false));
+		chart.paths.add(new Path(null, points.subList(1, 3), Money.of(-5, null), true));
+		chart.paths.add(new Path(null, null, null, false));
+		return chart;
+	}
+}
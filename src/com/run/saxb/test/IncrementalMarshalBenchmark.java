@@ -0,0 +1,231 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Version;
+
+/**
+ * Marshals a large configuration again and again with one change between
+ * the rounds, with and without incremental marshalling, and checks that 
+ * both produce the same bytes after each kind of change: values that must
+ * be escaped, sections added, removed, reordered, emptied and shared, an
+ * empty configuration, and several configurations marshalled in turn.
+ * <br/>
+ * The optional argument is the number of sections.
+ */
+public class IncrementalMarshalBenchmark {
+	
+	private static final int ROUNDS = 200;
+	
+	public static class Entry {
+		String key;
+		String value;
+	}
+	
+	public static class Section {
+		@Version transient int version;
+		String name;
+		List<Entry> entries = new ArrayList<>();
+	}
+	
+	public static class Config {
+		@Version transient int version;
+		String owner;
+		List<Section> sections = new ArrayList<>();
+	}
+	
+	/**
+	 * A change to a configuration, which bumps the versions of what it changes.
+	 */
+	private static abstract class Change {
+		final String name;
+		
+		Change(String name) {
+			this.name = name;
+		}
+		
+		abstract void apply(Config config);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		final int size = Bench.size(args, 1000);
+		
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Config.class));
+		final Config config = createConfig(size);
+		final Marshaller full = context.createMarshaller();
+		final Marshaller incremental = context.createMarshaller();
+		incremental.setIncremental(true);
+		
+		final ByteArrayOutputStream os = new ByteArrayOutputStream(1 << 20);
+		final int[] round = new int[1];
+		for (final Marshaller m: new Marshaller[] { full, incremental }) {
+			Bench.print(m == full ? "full" : "incremental", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					int i = round[0]++;
+					Section section = config.sections.get(i * 7919 % size);
+					section.entries.get(i % 20).value = "changed " + i;
+					section.version++;
+					os.reset();
+					m.marshal(config, os);
+				}
+			});
+		}
+		
+		Config small = createConfig(8);
+		Config other = createConfig(3);
+		for (Change change: changes()) {
+			change.apply(small);
+			check(context, incremental, small, change.name);
+			// another tree in between must not disturb the fragments of the first
+			check(context, incremental, other, change.name + ", other tree");
+		}
+		System.out.println("output identical");
+	}
+	
+	private static List<Change> changes() {
+		List<Change> changes = new ArrayList<>();
+		changes.add(new Change("no change") {
+			@Override
+			void apply(Config config) {
+			}
+		});
+		changes.add(new Change("escaped value") {
+			@Override
+			void apply(Config config) {
+				Section section = config.sections.get(1);
+				section.entries.get(0).value = "<&> \"quoted\" \r\n\t Gr\u00fc\u00df \ud83d\ude00";
+				section.version++;
+			}
+		});
+		changes.add(new Change("null value and name") {
+			@Override
+			void apply(Config config) {
+				Section section = config.sections.get(2);
+				section.entries.get(1).value = null;
+				section.name = null;
+				section.version++;
+			}
+		});
+		changes.add(new Change("long value") {
+			@Override
+			void apply(Config config) {
+				Section section = config.sections.get(3);
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < 1000; i++)
+					sb.append("long value ").append(i);
+				section.entries.get(2).value = sb.toString();
+				section.version++;
+			}
+		});
+		changes.add(new Change("section added") {
+			@Override
+			void apply(Config config) {
+				config.sections.add(2, createSection(100));
+				config.version++;
+			}
+		});
+		changes.add(new Change("section removed") {
+			@Override
+			void apply(Config config) {
+				config.sections.remove(4);
+				config.version++;
+			}
+		});
+		changes.add(new Change("sections reordered") {
+			@Override
+			void apply(Config config) {
+				Collections.reverse(config.sections);
+				config.version++;
+			}
+		});
+		changes.add(new Change("section emptied") {
+			@Override
+			void apply(Config config) {
+				Section section = config.sections.get(0);
+				section.entries.clear();
+				section.version++;
+			}
+		});
+		changes.add(new Change("section shared") {
+			@Override
+			void apply(Config config) {
+				config.sections.add(config.sections.get(1));
+				config.version++;
+			}
+		});
+		changes.add(new Change("shared section changed") {
+			@Override
+			void apply(Config config) {
+				Section section = config.sections.get(1);
+				section.entries.get(0).key = "shared & changed";
+				section.version++;
+			}
+		});
+		changes.add(new Change("owner changed") {
+			@Override
+			void apply(Config config) {
+				config.owner = "<ops>";
+				config.version++;
+			}
+		});
+		changes.add(new Change("empty config") {
+			@Override
+			void apply(Config config) {
+				config.sections.clear();
+				config.owner = null;
+				config.version++;
+			}
+		});
+		changes.add(new Change("sections back") {
+			@Override
+			void apply(Config config) {
+				for (int i = 0; i < 4; i++)
+					config.sections.add(createSection(200 + i));
+				config.version++;
+			}
+		});
+		return changes;
+	}
+	
+	private static void check(SAXBContextImpl context, Marshaller incremental, Config config, String change) 
+			throws JAXBException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		context.createMarshaller().marshal(config, expected);
+		// twice, to write the fragments once kept
+		for (int i = 0; i < 2; i++) {
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			incremental.marshal(config, actual);
+			Bench.check(Arrays.equals(expected.toByteArray(), actual.toByteArray()),
+					"incremental output doesn't match after: " + change);
+		}
+	}
+	
+	private static Config createConfig(int size) {
+		Config config = new Config();
+		config.owner = "ops";
+		for (int i = 0; i < size; i++)
+			config.sections.add(createSection(i));
+		return config;
+	}
+	
+	private static Section createSection(int i) {
+		Section section = new Section();
+		section.name = "section" + i;
+		for (int j = 0; j < 20; j++) {
+			Entry entry = new Entry();
+			entry.key = "key" + j;
+			entry.value = "value " + i + "." + j;
+			section.entries.add(entry);
+		}
+		return section;
+	}
+}
@@ -0,0 +1,123 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAttribute;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Unmarshals a document of records whose string values are drawn from a few
+ * codes, with and without interning, and shows the time per document and
+ * the heap retained by the content tree. Checks that interning binds the same
+ * values for every shape of order, in element text and in attributes, for
+ * empty, long and escaped values, with tables small enough for values to
+ * collide, and that repeated values are bound to the same string.
+ * <br/>
+ * The optional argument is the number of records.
+ */
+public class InterningBenchmark {
+
+	private static final int ROUNDS = 50;
+
+	private static final String[] STATUSES = { "NEW", "OPEN", "FILLED", "CANCELLED", "REJECTED" };
+	private static final String[] CURRENCIES = { "EUR", "USD", "JPY", "GBP", "CHF", "AUD" };
+
+	public static class Payment {
+		@XmlAttribute String currency;
+		String status;
+		String channel;
+		long amount;
+	}
+
+	public static class Ledger {
+		String name;
+		List<Payment> payments = new ArrayList<>();
+	}
+
+	/**
+	 * Keeps the last content tree reachable while the heap is measured.
+	 */
+	private static Object result;
+
+	public static void main(String[] args) throws Exception {
+		int size = Bench.size(args, 100000);
+
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Ledger.class));
+		Ledger ledger = new Ledger();
+		ledger.name = "daily";
+		for (int i = 0; i < size; i++) {
+			Payment payment = new Payment();
+			payment.currency = CURRENCIES[i % CURRENCIES.length];
+			payment.status = STATUSES[i % STATUSES.length];
+			payment.channel = i % 3 == 0 ? "web" : "branch";
+			payment.amount = i * 100L;
+			ledger.payments.add(payment);
+		}
+		byte[] doc = Bench.marshal(context, ledger, DataFormat.XML);
+
+		run(context, doc, 0);
+		run(context, doc, 1024);
+
+		Ledger copy = (Ledger) unmarshal(context, doc, DataFormat.XML, 1024);
+		for (int i = CURRENCIES.length; i < Math.min(size, 1000); i++) {
+			Payment p = copy.payments.get(i);
+			Bench.check(p.currency == copy.payments.get(i % CURRENCIES.length).currency,
+					"attribute value not interned: " + p.currency);
+			Bench.check(p.status == copy.payments.get(i % STATUSES.length).status,
+					"element value not interned: " + p.status);
+		}
+
+		final SAXBContextImpl orders = new SAXBContextImpl(Arrays.asList(Order.class));
+		for (final DataFormat format: new DataFormat[] { DataFormat.XML, DataFormat.JSON }) {
+			for (final int capacity: new int[] { 1, 2, 1024 }) {
+				Orders.checkShapes(orders, format, format + ": interned content doesn't match with " + capacity + " slots",
+						new Orders.RoundTrip() {
+					@Override
+					byte[] run(Order order) throws Exception {
+						Object bound = unmarshal(orders, Bench.marshal(orders, order, format), format, capacity);
+						return Bench.marshal(orders, bound, format);
+					}
+				});
+			}
+		}
+		System.out.println("content identical");
+	}
+
+	private static void run(SAXBContextImpl context, final byte[] doc, int interning) throws Exception {
+		result = null;
+		long baseline = usedHeap();
+		final Unmarshaller u = context.createUnmarshaller();
+		u.setInterning(interning);
+		Bench.Result measure = Bench.measure(ROUNDS, new Bench.Operation() {
+			@Override
+			void run() throws Exception {
+				result = u.unmarshal(new ByteArrayInputStream(doc));
+			}
+		});
+		long retained = usedHeap() - baseline;
+		System.out.printf("interning=%-5d %s retained=%.1f MB%n", interning, measure, retained / 1e6);
+	}
+
+	private static Object unmarshal(SAXBContextImpl context, byte[] doc, DataFormat format, int interning) 
+			throws JAXBException {
+		Unmarshaller u = context.createUnmarshaller();
+		u.setFormat(format);
+		u.setInterning(interning);
+		return Bench.unmarshal(u, doc);
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
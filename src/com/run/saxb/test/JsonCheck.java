@@ -0,0 +1,88 @@
+package com.run.saxb.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Checks that every shape of order comes back from its JSON form as it was,
+ * that documents written by hand are read like the ones the marshaller writes,
+ * and that malformed documents are rejected.
+ */
+public class JsonCheck {
+
+	public static void main(String[] args) throws Exception {
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+
+		for (final DataFormat format: new DataFormat[] { DataFormat.JSON, DataFormat.XML }) {
+			Orders.checkShapes(context, format, "json round trip doesn't match the " + format + " form",
+					new Orders.RoundTrip() {
+				@Override
+				byte[] run(Order order) throws Exception {
+					Object copy = unmarshal(context, Bench.text(Bench.marshal(context, order, DataFormat.JSON)));
+					return Bench.marshal(context, copy, format);
+				}
+			});
+		}
+
+		Order order = Orders.create(2);
+		order.lines.get(0).price = Double.NaN;
+		order.lines.get(1).price = Double.NEGATIVE_INFINITY;
+		Order copy = (Order) unmarshal(context, Bench.text(Bench.marshal(context, order, DataFormat.JSON)));
+		Bench.check(Double.isNaN(copy.lines.get(0).price) && copy.lines.get(1).price == Double.NEGATIVE_INFINITY,
+				"non finite values not read back");
+
+		order = new Order();
+		order.lines = new ArrayList<>();
+		String json = Bench.text(Bench.marshal(context, order, DataFormat.JSON));
+		Bench.check(!json.contains("lines"), "empty collection written: " + json);
+
+		copy = (Order) unmarshal(context, "\n{ \"Order\" : {\n"
+				+ "  \"number\" : 7, \"status\" : \"a\\\"b\\\\c\\/d\\u00fc\\ud83d\\ude00\\n\",\n"
+				+ "  \"customer\" : null,\n"
+				+ "  \"lines\" : [ { \"@sku\" : \"S1\", \"@cur\" : \"EUR\", \"quantity\" : 2, \"price\" : 1.5e1, \"shipped\" : true },\n"
+				+ "              null, { \"quantity\" : -3 } ]\n"
+				+ "} }\n");
+		Bench.check(copy.number == 7 && "a\"b\\c/d\u00fc\ud83d\ude00\n".equals(copy.status) && copy.customer == null,
+				"scalars of a written document not read");
+		Bench.check(copy.lines.size() == 2, "null item bound");
+		Line line = copy.lines.get(0);
+		Bench.check("S1".equals(line.sku) && "EUR".equals(line.currency) && line.quantity == 2
+				&& line.price == 15 && line.shipped, "line of a written document not read");
+		Bench.check(copy.lines.get(1).quantity == -3 && copy.lines.get(1).sku == null, "second line not read");
+
+		reject(context, "attribute after an element", "{\"Order\":{\"lines\":[{\"quantity\":1,\"@sku\":\"S\"}]}}");
+		reject(context, "root not an object", "{\"Order\":[]}");
+		reject(context, "content after the root", "{\"Order\":{}} {}");
+		reject(context, "unterminated string", "{\"Order\":{\"status\":\"open}}");
+		reject(context, "bad escape", "{\"Order\":{\"status\":\"\\x\"}}");
+		reject(context, "missing colon", "{\"Order\" {}}");
+		reject(context, "unterminated object", "{\"Order\":{\"number\":1");
+		reject(context, "not a number", "{\"Order\":{\"number\":\"one\"}}");
+		reject(context, "unknown root", "{\"Invoice\":{}}");
+		System.out.println("json ok");
+	}
+
+	private static Object unmarshal(SAXBContextImpl context, String json) throws JAXBException {
+		Unmarshaller u = context.createUnmarshaller();
+		u.setFormat(DataFormat.JSON);
+		return Bench.unmarshal(u, Bench.bytes(json));
+	}
+
+	private static void reject(SAXBContextImpl context, String problem, String json) {
+		try {
+			unmarshal(context, json);
+		} catch (JAXBException expected) {
+			System.out.println(problem + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(problem + " accepted: " + json);
+	}
+}
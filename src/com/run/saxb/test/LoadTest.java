@@ -0,0 +1,291 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+
+import com.run.saxb.BeanInfo;
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Customer;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Drives marshalling and unmarshalling from many threads against one shared
+ * context, and reports the throughput and the latency percentiles.
+ * <br/>
+ * Each thread works through a set of order documents: the shapes of order
+ * of up to 128 lines, and orders of different sizes.
+ * Every document that is marshalled must be identical to the one marshalled
+ * by a single thread beforehand, and every document that is unmarshalled must
+ * give that same document when it's marshalled again, so a race that corrupts
+ * a content tree or the output shows up as a mismatch. The threads also check
+ * that the context still maps each bound class and each root element to the
+ * same <tt>BeanInfo</tt> as before the load. Exits with the status 1 if
+ * there was any error.
+ * <br/>
+ * Run with the optional arguments
+ * <tt>[threads] [seconds] [platform|virtual] [xml|binary|json]</tt>.
+ * Virtual threads need a runtime that has them.
+ */
+public class LoadTest {
+
+	private static final int DOCUMENTS = 16;
+
+	/**
+	 * Maximum number of errors that are printed.
+	 */
+	private static final int MAX_REPORTED = 10;
+
+	/**
+	 * Latencies in nanoseconds, in buckets of about 1% of their value,
+	 * in the fashion of HdrHistogram.
+	 */
+	static final class Histogram {
+
+		/** Values below are counted exactly, values above in 64 buckets per power of two. */
+		private static final int EXACT = 128;
+
+		private final long[] counts = new long[EXACT + 57 * 64];
+		private long total;
+		private long max;
+
+		void record(long value) {
+			counts[index(Math.max(value, 0))]++;
+			total++;
+			max = Math.max(max, value);
+		}
+
+		void add(Histogram other) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += other.counts[i];
+			total += other.total;
+			max = Math.max(max, other.max);
+		}
+
+		private static int index(long value) {
+			if (value < EXACT)
+				return (int) value;
+			int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+			return EXACT + (shift - 1) * 64 + (int) (value >>> shift) - 64;
+		}
+
+		/**
+		 * Gets the highest value that falls in a bucket.
+		 */
+		private static long highest(int index) {
+			if (index < EXACT)
+				return index;
+			int shift = (index - EXACT) / 64 + 1;
+			long sub = (index - EXACT) % 64 + 64;
+			return (sub << shift) + (1L << shift) - 1;
+		}
+
+		long getTotal() {
+			return total;
+		}
+
+		/**
+		 * Gets the value below which the given fraction of the values fall.
+		 */
+		long getPercentile(double fraction) {
+			long rank = (long) Math.ceil(fraction * total);
+			long count = 0;
+			for (int i = 0; i < counts.length; i++) {
+				count += counts[i];
+				if (count >= rank && count > 0)
+					return Math.min(highest(i), max);
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f us",
+					getPercentile(0.5) / 1e3, getPercentile(0.9) / 1e3, getPercentile(0.99) / 1e3,
+					getPercentile(0.999) / 1e3, max / 1e3);
+		}
+	}
+
+	/**
+	 * Marshals and unmarshals the documents until the deadline.
+	 */
+	private static final class Worker implements Runnable {
+		final int id;
+		final Histogram marshal = new Histogram();
+		final Histogram unmarshal = new Histogram();
+
+		Worker(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void run() {
+			try {
+				start.await();
+				Marshaller m = context.createMarshaller();
+				m.setFormat(format);
+				Unmarshaller u = context.createUnmarshaller();
+				u.setFormat(format);
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+				for (int i = id; System.nanoTime() < deadline; i++) {
+					int doc = i % DOCUMENTS;
+
+					os.reset();
+					long begin = System.nanoTime();
+					m.marshal(orders[doc], os);
+					long end = System.nanoTime();
+					marshal.record(end - begin);
+					if (!Arrays.equals(os.toByteArray(), expected[doc]))
+						error("thread " + id + ": document " + doc + " marshalled differently");
+
+					begin = System.nanoTime();
+					Object copy = u.unmarshal(new ByteArrayInputStream(expected[doc]));
+					end = System.nanoTime();
+					unmarshal.record(end - begin);
+					os.reset();
+					m.marshal(copy, os);
+					if (!Arrays.equals(os.toByteArray(), expected[doc]))
+						error("thread " + id + ": document " + doc + " unmarshalled differently");
+
+					if (i % 64 == 0)
+						checkContext(id);
+				}
+			} catch (Throwable e) {
+				error("thread " + id + ": " + e);
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+	private static SAXBContextImpl context;
+	private static DataFormat format;
+	private static Order[] orders;
+	private static byte[][] expected;
+	private static long deadline;
+
+	private static final Class<?>[] CLASSES = { Order.class, Customer.class, Line.class };
+	private static BeanInfo<?>[] beanInfos;
+	private static QName[] rootNames;
+	private static BeanInfo<?>[] roots;
+
+	private static final CountDownLatch start = new CountDownLatch(1);
+	private static CountDownLatch done;
+	private static final AtomicInteger errors = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		boolean virtual = args.length > 2 && args[2].equals("virtual");
+		format = args.length > 3 ? DataFormat.valueOf(args[3].toUpperCase()) : DataFormat.XML;
+
+		context = new SAXBContextImpl(Arrays.asList(Order.class));
+		orders = new Order[DOCUMENTS];
+		expected = new byte[DOCUMENTS][];
+		Marshaller m = context.createMarshaller();
+		m.setFormat(format);
+		List<Order> shapes = new ArrayList<>();
+		for (Order shape: Orders.shapes()) {
+			if (shape.lines == null || shape.lines.size() <= 128)
+				shapes.add(shape);
+		}
+		for (int i = 0; i < DOCUMENTS; i++) {
+			orders[i] = i < shapes.size() ? shapes.get(i) : Orders.create(1 << (i % 8));
+			orders[i].number = i;
+			expected[i] = Bench.marshal(m, orders[i]);
+		}
+
+		beanInfos = new BeanInfo<?>[CLASSES.length];
+		rootNames = new QName[CLASSES.length];
+		roots = new BeanInfo<?>[CLASSES.length];
+		for (int i = 0; i < CLASSES.length; i++) {
+			beanInfos[i] = context.getBeanInfo(CLASSES[i]);
+			rootNames[i] = context.createQName(beanInfos[i]);
+			roots[i] = context.selectRoot(rootNames[i]);
+		}
+
+		ThreadFactory factory = virtual ? virtualThreadFactory() : new ThreadFactory() {
+			private int count;
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "load-" + count++);
+			}
+		};
+		List<Worker> workers = new ArrayList<>(threads);
+		done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker(i);
+			workers.add(worker);
+			factory.newThread(worker).start();
+		}
+		System.out.printf("%d %s threads, %s, %d s%n", threads, virtual ? "virtual" : "platform", format, seconds);
+
+		long begin = System.nanoTime();
+		deadline = begin + seconds * 1000000000L;
+		start.countDown();
+		done.await();
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+
+		Histogram marshal = new Histogram();
+		Histogram unmarshal = new Histogram();
+		for (Worker worker: workers) {
+			marshal.add(worker.marshal);
+			unmarshal.add(worker.unmarshal);
+		}
+		System.out.printf("marshal   %8.0f ops/s %s%n", marshal.getTotal() / elapsed, marshal);
+		System.out.printf("unmarshal %8.0f ops/s %s%n", unmarshal.getTotal() / elapsed, unmarshal);
+		checkContext(-1);
+
+		if (errors.get() > 0) {
+			System.out.println(errors.get() + " error(s)");
+			System.exit(1);
+		}
+		System.out.println("no errors");
+	}
+
+	/**
+	 * Checks that the context still has the same bean infos and roots.
+	 */
+	private static void checkContext(int id) {
+		for (int i = 0; i < CLASSES.length; i++) {
+			if (context.getBeanInfo(CLASSES[i]) != beanInfos[i])
+				error("thread " + id + ": bean info of " + CLASSES[i].getSimpleName() + " changed");
+			if (context.selectRoot(rootNames[i]) != roots[i])
+				error("thread " + id + ": root " + rootNames[i] + " changed");
+		}
+	}
+
+	private static void error(String message) {
+		if (errors.incrementAndGet() <= MAX_REPORTED)
+			System.out.println("ERROR " + message);
+	}
+
+	/**
+	 * Gets the factory of virtual threads through reflection, so that the
+	 * driver still compiles and runs on runtimes that don't have them.
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("This runtime has no virtual threads", e);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package com.run.saxb.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.billing.Invoice;
+import com.run.saxb.test.billing.Item;
+import com.run.saxb.test.soap.Envelope;
+
+/**
+ * Checks that the beans of two namespaces, one with a declared prefix and one
+ * whose prefix is generated around a declared one, are written to a stream, a
+ * DOM, SAX events and an {@link XMLStreamWriter} with every namespace declared
+ * on the root only, and read back from each, in parallel too, whatever the
+ * prefixes of the document and with default namespaces. Elements and
+ * attributes of other namespaces are skipped, and roots of other namespaces
+ * are rejected.
+ */
+public class NamespaceCheck {
+
+	private static final String SOAP = "http://schemas.xmlsoap.org/soap/envelope/";
+	private static final String AUDIT = "urn:run:audit";
+	private static final String BILLING = "urn:run:billing";
+
+	/**
+	 * Checks that every prefix is mapped before the root starts.
+	 */
+	static final class Declarations extends XMLFilterImpl {
+		int depth;
+		int prefixes;
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			Bench.check(depth == 0, "prefix " + prefix + " mapped inside the root");
+			prefixes++;
+			super.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			Bench.check(!uri.isEmpty(), "element " + qName + " not qualified");
+			depth++;
+			super.startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			depth--;
+			super.endElement(uri, localName, qName);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Envelope.class, Invoice.class));
+		Envelope envelope = envelope(6);
+		String expected = Bench.text(Bench.marshal(context, envelope, DataFormat.XML));
+		String billing = checkPrefixes(expected);
+
+		for (Object root: new Object[] { envelope, envelope(0), envelope.body.get(0) }) {
+			String doc = Bench.text(Bench.marshal(context, root, DataFormat.XML));
+			checkDeclarations(doc, "stream");
+			check(context, doc, read(context, doc), "stream");
+			Marshaller m = context.createMarshaller();
+			check(context, doc, toDom(context, m, root), "dom");
+			check(context, doc, read(context, toSax(m, root)), "sax");
+			check(context, doc, toStax(context, m, root), "stax");
+		}
+
+		// other prefixes, and default namespaces, for the root and for the payloads
+		String[] renamed = {
+			expected.replace("soap:", "s:").replace("xmlns:soap=", "xmlns:s="),
+			expected.replace("soap:", "").replace("xmlns:soap=", "xmlns="),
+			expected.replace(billing + ":", "").replace("xmlns:" + billing + "=", "xmlns="),
+		};
+		for (String doc: renamed) {
+			check(context, expected, read(context, doc), "renamed: " + doc);
+			// the last record breaks, after the quantity of its last item
+			int at = doc.lastIndexOf("quantity>") + "quantity>".length();
+			String malformed = doc.substring(0, at) + "&" + doc.substring(at);
+			int serial = column(context.createUnmarshaller(), malformed);
+			for (int chunkSize: new int[] { 1, 2 }) {
+				Unmarshaller u = context.createUnmarshaller();
+				u.setParallel(true);
+				u.setChunkSize(chunkSize);
+				check(context, expected, Bench.unmarshal(u, Bench.bytes(doc)), "parallel with chunks of " + chunkSize + ": " + doc);
+				Bench.check(column(u, malformed) < serial, "not split into records with chunks of " + chunkSize + ": " + doc);
+			}
+		}
+
+		checkForeign(context, expected, billing);
+
+		// a context of the payloads alone generates the first free prefix
+		String payload = Bench.text(Bench.marshal(new SAXBContextImpl(Arrays.<Class<?>>asList(Invoice.class)),
+				envelope.body.get(0), DataFormat.XML));
+		Bench.check(payload.contains("<ns1:Invoice xmlns:ns1=\"" + BILLING + "\""), "payload prefix not generated: " + payload);
+		System.out.println("namespaces ok");
+	}
+
+	/**
+	 * Checks the prefixes of the envelope: the declared ones, and the one
+	 * generated for the payloads, which must not take the prefix declared
+	 * for the audit namespace.
+	 *
+	 * @return the prefix of the payloads.
+	 */
+	private static String checkPrefixes(String doc) {
+		Bench.check(doc.contains("xmlns:soap=\"" + SOAP + "\"") && doc.contains("xmlns:ns3=\"" + AUDIT + "\""),
+				"declared prefixes not used: " + doc);
+		int end = doc.indexOf("=\"" + BILLING + "\"");
+		Bench.check(end > 0, "payload namespace not declared: " + doc);
+		String billing = doc.substring(doc.lastIndexOf("xmlns:", end) + "xmlns:".length(), end);
+		Bench.check(!billing.equals("soap") && !billing.equals("ns3"), "payload prefix " + billing + " taken twice");
+		Bench.check(doc.contains("<" + billing + ":customer>"), "payload not qualified: " + doc);
+		return billing;
+	}
+
+	/**
+	 * Checks that the root declares the namespaces, and that no other element does.
+	 */
+	private static void checkDeclarations(String doc, String output) {
+		int root = doc.indexOf('<', doc.startsWith("<?") ? doc.indexOf("?>") : 0);
+		int end = doc.indexOf('>', root);
+		Bench.check(doc.substring(root, end).contains("xmlns:soap=\"" + SOAP + "\""),
+				output + ": root doesn't declare the namespaces: " + doc);
+		Bench.check(doc.indexOf("xmlns", end) < 0, output + ": namespace declared below the root: " + doc);
+	}
+
+	/**
+	 * Checks that a same-named element of another namespace is skipped, or
+	 * rejected when validating, as are attributes of other namespaces and
+	 * roots of other namespaces.
+	 */
+	private static void checkForeign(SAXBContextImpl context, String expected, String billing) throws Exception {
+		String[] foreign = {
+			expected.replace("<soap:header>", "<x:header xmlns:x='urn:x'>bad</x:header><soap:header>"),
+			expected.replace("</" + billing + ":customer>", "</" + billing + ":customer><soap:customer>bad</soap:customer>"),
+			expected.replace("<" + billing + ":note>", "<note xmlns=''>bad</note><" + billing + ":note>"),
+		};
+		for (String doc: foreign) {
+			Bench.check(!doc.equals(expected), "nothing replaced");
+			check(context, expected, read(context, doc), "foreign element: " + doc);
+			Unmarshaller u = context.createUnmarshaller();
+			u.setValidating(true);
+			reject(u, doc, "foreign element when validating");
+		}
+
+		Envelope copy = (Envelope) Bench.unmarshal(context.createUnmarshaller(), Bench.bytes(expected.replace(" id=\"e1\"",
+				" z:id='bad' id='e1' soap:id='bad' xmlns:z='urn:z'")));
+		Bench.check("e1".equals(copy.id), "attribute of another namespace bound: " + copy.id);
+		Invoice invoice = (Invoice) Bench.unmarshal(context.createUnmarshaller(), Bench.bytes("<b:Invoice xmlns:b='" + BILLING
+				+ "' b:id='bad' b:revision='x'><b:customer>c</b:customer></b:Invoice>"));
+		Bench.check(invoice.id == null && invoice.revision == 0, "qualified attribute bound: " + invoice.id);
+
+		reject(context.createUnmarshaller(), expected.replace("soap:Envelope", "x:Envelope").replace(" id=\"e1\"",
+				" id=\"e1\" xmlns:x='urn:x'"), "root of another namespace");
+		reject(context.createUnmarshaller(), "<Invoice><customer>c</customer></Invoice>", "root without a namespace");
+	}
+
+	private static Envelope envelope(int invoices) {
+		Envelope envelope = new Envelope();
+		envelope.id = "e1";
+		envelope.header = "a&b <\u00e9>";
+		envelope.body = new ArrayList<>();
+		for (int i = 0; i < invoices; i++) {
+			Invoice invoice = new Invoice();
+			invoice.id = "i" + i;
+			invoice.revision = i;
+			invoice.customer = i % 2 == 0 ? "c" + i : null;
+			invoice.items = new ArrayList<>();
+			for (int j = 0; j <= i % 3; j++) {
+				Item item = new Item();
+				item.sku = "s" + j;
+				item.quantity = j + 1;
+				item.note = j == 0 ? "n" : null;
+				invoice.items.add(item);
+			}
+			envelope.body.add(invoice);
+		}
+		return envelope;
+	}
+
+	private static Object read(SAXBContextImpl context, String doc) throws JAXBException {
+		return context.createUnmarshaller().unmarshal(new StringReader(doc));
+	}
+
+	/**
+	 * Compares a content tree read back with the document written to a stream.
+	 */
+	private static void check(SAXBContextImpl context, String expected, Object copy, String input) throws JAXBException {
+		Bench.check(expected.equals(Bench.text(Bench.marshal(context, copy, DataFormat.XML))), input + " doesn't match");
+	}
+
+	/**
+	 * The column of the error in a malformed document. A document split into
+	 * records reports it in its chunk, which starts after the records before.
+	 */
+	private static int column(Unmarshaller u, String doc) {
+		try {
+			Bench.unmarshal(u, Bench.bytes(doc));
+		} catch (JAXBException expected) {
+			Bench.check(expected.getCause() instanceof SAXParseException, "not a parse error: " + expected);
+			return ((SAXParseException) expected.getCause()).getColumnNumber();
+		}
+		throw new IllegalStateException("malformed document accepted: " + doc);
+	}
+
+	private static void reject(Unmarshaller u, String doc, String problem) {
+		try {
+			Bench.unmarshal(u, Bench.bytes(doc));
+		} catch (JAXBException expected) {
+			System.out.println(problem + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(problem + " accepted: " + doc);
+	}
+
+	/**
+	 * Marshals into a DOM, checks its declarations, and reads it back from the DOM.
+	 */
+	private static Object toDom(SAXBContextImpl context, Marshaller m, Object root) throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document dom = dbf.newDocumentBuilder().newDocument();
+		m.marshal(root, dom);
+		Element element = dom.getDocumentElement();
+		Bench.check(element.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "soap"), "dom: root doesn't declare the namespaces");
+		checkDeclarations(element.getFirstChild());
+		return context.createUnmarshaller().unmarshal(dom);
+	}
+
+	private static void checkDeclarations(Node node) {
+		for (; node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			Bench.check(node.getNamespaceURI() != null, "dom: element " + node.getNodeName() + " not qualified");
+			NamedNodeMap atts = node.getAttributes();
+			for (int i = 0; i < atts.getLength(); i++)
+				Bench.check(!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(atts.item(i).getNamespaceURI()),
+						"dom: namespace declared below the root: " + atts.item(i));
+			checkDeclarations(node.getFirstChild());
+		}
+	}
+
+	private static String toSax(Marshaller m, Object root) throws Exception {
+		StringWriter out = new StringWriter();
+		TransformerHandler serializer = ((SAXTransformerFactory) SAXTransformerFactory.newInstance()).newTransformerHandler();
+		serializer.setResult(new StreamResult(out));
+		Declarations events = new Declarations();
+		events.setContentHandler(serializer);
+		m.marshal(root, events);
+		Bench.check(events.prefixes == 3, "sax: " + events.prefixes + " prefixes mapped");
+		String doc = out.toString();
+		checkDeclarations(doc, "sax");
+		return doc;
+	}
+
+	/**
+	 * Marshals into an {@link XMLStreamWriter}, checks its declarations, and
+	 * reads it back from an {@link javax.xml.stream.XMLStreamReader}.
+	 */
+	private static Object toStax(SAXBContextImpl context, Marshaller m, Object root) throws Exception {
+		StringWriter out = new StringWriter();
+		XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+		writer.writeStartDocument();
+		m.marshal(root, writer);
+		writer.writeEndDocument();
+		writer.close();
+		String doc = out.toString();
+		checkDeclarations(doc, "stax");
+		return context.createUnmarshaller().unmarshal(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(doc)));
+	}
+}
@@ -0,0 +1,106 @@
+package com.run.saxb.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.test.model.Customer;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Creates the orders that the benchmarks and the checks marshal.
+ */
+final class Orders {
+
+	/**
+	 * Writes an order, or writes it and reads it back, through the path
+	 * under check.
+	 */
+	static abstract class RoundTrip {
+		abstract byte[] run(Order order) throws Exception;
+	}
+
+	private static final String[] CURRENCIES = { "EUR", "USD", "GBP", "AUD" };
+
+	private Orders() {
+	}
+
+	/**
+	 * Creates an order with the given number of lines.
+	 */
+	static Order create(int size) {
+		Order order = new Order();
+		order.number = 20161019L;
+		order.status = "OPEN";
+		order.customer = new Customer();
+		order.customer.name = "RuN";
+		order.customer.country = "AU";
+		order.customer.id = 42;
+		order.lines = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Line line = new Line();
+			line.sku = "SKU-" + (i % 500);
+			line.currency = CURRENCIES[i % CURRENCIES.length];
+			line.quantity = i % 17;
+			line.price = (i % 1000) / 4.0;
+			line.shipped = i % 3 == 0;
+			order.lines.add(line);
+		}
+		return order;
+	}
+
+	/**
+	 * Creates orders of different shapes, for the checks that the output of
+	 * an optimized path is the same as the one of the plain path: no lines
+	 * and no customer, a line without attributes, values that must be escaped
+	 * or have surrogates, empty and long values, and a large order.
+	 */
+	static List<Order> shapes() {
+		List<Order> shapes = new ArrayList<>();
+
+		Order empty = new Order();
+		shapes.add(empty);
+
+		Order bare = create(1);
+		bare.lines.get(0).sku = null;
+		bare.lines.get(0).currency = null;
+		bare.customer.name = "";
+		shapes.add(bare);
+
+		Order escaped = create(3);
+		escaped.status = "<&> \"quoted\" 'single'\r\n\ttabbed";
+		escaped.customer.name = "Gr\u00fc\u00df \ud83d\ude00 \u65e5\u672c";
+		escaped.lines.get(0).sku = "a&b<c>\"d\"";
+		escaped.lines.get(1).currency = "  spaced  ";
+		shapes.add(escaped);
+
+		Order long_ = create(2);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			sb.append("long value ").append(i).append(' ');
+		long_.status = sb.toString();
+		long_.lines.get(1).sku = sb.toString();
+		shapes.add(long_);
+
+		shapes.add(create(5000));
+		return shapes;
+	}
+
+	/**
+	 * Checks that every shape comes out of a path as the given context writes
+	 * it in a format, with the other settings by default.
+	 *
+	 * @throws IllegalStateException
+	 *      With the message and the number of the shape, if one doesn't match.
+	 */
+	static void checkShapes(SAXBContextImpl context, DataFormat format, String message, RoundTrip path)
+			throws Exception {
+		List<Order> shapes = shapes();
+		for (int i = 0; i < shapes.size(); i++)
+			Bench.check(Arrays.equals(Bench.marshal(context, shapes.get(i), format), path.run(shapes.get(i))),
+					message + " (shape " + i + ")");
+	}
+}
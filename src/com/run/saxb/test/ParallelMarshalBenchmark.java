@@ -0,0 +1,53 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Compares serial and parallel marshalling of a large order document,
+ * and checks that both produce the same bytes for every shape of order,
+ * with chunks small enough for the small orders to be cut too.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class ParallelMarshalBenchmark {
+	
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) throws Exception {
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		final Order order = Orders.create(Bench.size(args, 1000000));
+		
+		for (final boolean parallel: new boolean[] { false, true }) {
+			final Marshaller m = context.createMarshaller();
+			m.setParallel(parallel);
+			final ByteArrayOutputStream os = new ByteArrayOutputStream(1 << 20);
+			Bench.print(parallel ? "parallel" : "serial", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					os.reset();
+					m.marshal(order, os);
+				}
+			});
+		}
+		
+		for (final int chunkSize: new int[] { 1, 2, 1000 }) {
+			Orders.checkShapes(context, DataFormat.XML,
+					"parallel output doesn't match the serial output with chunks of " + chunkSize, new Orders.RoundTrip() {
+				@Override
+				byte[] run(Order order) throws Exception {
+					Marshaller m = context.createMarshaller();
+					m.setParallel(true);
+					m.setChunkSize(chunkSize);
+					return Bench.marshal(m, order);
+				}
+			});
+		}
+		System.out.println("output identical");
+	}
+}
@@ -0,0 +1,79 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBException;
+
+import org.xml.sax.SAXParseException;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Compares serial and parallel unmarshalling of a large order document,
+ * checks that both bind the same content for every shape of order, with
+ * chunks small enough for the small orders to be cut too, and that a
+ * malformed record fails both the same way.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class ParallelUnmarshalBenchmark {
+	
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		final byte[] doc = Bench.marshal(context, Orders.create(Bench.size(args, 1000000)), DataFormat.XML);
+		
+		for (boolean parallel: new boolean[] { false, true }) {
+			final Unmarshaller u = context.createUnmarshaller();
+			u.setParallel(parallel);
+			Bench.print(parallel ? "parallel" : "serial", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					u.unmarshal(new ByteArrayInputStream(doc));
+				}
+			});
+		}
+		
+		for (final int chunkSize: new int[] { 1, 2, 1000 }) {
+			for (final boolean parallel: new boolean[] { false, true }) {
+				Orders.checkShapes(context, DataFormat.XML,
+						(parallel ? "parallel" : "serial") + " content doesn't match with chunks of " + chunkSize,
+						new Orders.RoundTrip() {
+					@Override
+					byte[] run(Order order) throws Exception {
+						byte[] xml = Bench.marshal(context, order, DataFormat.XML);
+						return Bench.marshal(context, unmarshal(context, xml, parallel, chunkSize), DataFormat.XML);
+					}
+				});
+			}
+		}
+		
+		// a record in the middle of the document that doesn't parse
+		String xml = Bench.text(Bench.marshal(context, Orders.create(100), DataFormat.XML));
+		int middle = xml.indexOf("</lines>", xml.length() / 2);
+		byte[] malformed = Bench.bytes(xml.substring(0, middle) + "</line>" + xml.substring(middle + 8));
+		for (boolean parallel: new boolean[] { false, true }) {
+			try {
+				unmarshal(context, malformed, parallel, 2);
+				throw new IllegalStateException("malformed record accepted");
+			} catch (JAXBException expected) {
+				Bench.check(expected.getCause() instanceof SAXParseException, "not a parse error: " + expected);
+				System.out.println((parallel ? "parallel" : "serial") + " rejected: " + expected.getMessage());
+			}
+		}
+		System.out.println("content identical");
+	}
+	
+	private static Object unmarshal(SAXBContextImpl context, byte[] doc, boolean parallel, int chunkSize) 
+			throws JAXBException {
+		Unmarshaller u = context.createUnmarshaller();
+		u.setParallel(parallel);
+		u.setChunkSize(chunkSize);
+		return Bench.unmarshal(u, doc);
+	}
+}
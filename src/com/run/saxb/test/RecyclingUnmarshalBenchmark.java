@@ -0,0 +1,129 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.run.saxb.BoundedInstancePool;
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.ReferenceMode;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.ReferenceCheck.Group;
+import com.run.saxb.test.ReferenceCheck.Person;
+import com.run.saxb.test.model.Customer;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Measures the time and the memory allocated per document when unmarshalling
+ * into new content trees, and into the same one with instance pools, and checks
+ * that the recycled tree holds each shape of order exactly, whatever shape 
+ * it held before, or shared beans and cycles.
+ * <br/>
+ * The optional argument is the number of order lines.
+ */
+public class RecyclingUnmarshalBenchmark {
+	
+	private static final int ROUNDS = 200;
+	
+	public static void main(String[] args) throws Exception {
+		int size = Bench.size(args, 1000);
+		
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		Order order = Orders.create(size);
+		
+		for (DataFormat format: DataFormat.values()) {
+			final byte[] doc = Bench.marshal(context, order, format);
+			final Unmarshaller u = context.createUnmarshaller();
+			u.setFormat(format);
+			Bench.print(format + " new", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					u.unmarshal(new ByteArrayInputStream(doc));
+				}
+			});
+			
+			context.setInstancePool(Line.class, new BoundedInstancePool<Line>(size));
+			final Order target = new Order();
+			Bench.print(format + " into", ROUNDS, new Bench.Operation() {
+				@Override
+				void run() throws Exception {
+					u.unmarshalInto(new ByteArrayInputStream(doc), target);
+				}
+			});
+			context.setInstancePool(Line.class, null);
+		}
+		
+		// every shape after every other one, so that each is bound into a tree left by another
+		context.setInstancePool(Line.class, new BoundedInstancePool<Line>(16));
+		context.setInstancePool(Customer.class, new BoundedInstancePool<Customer>(4));
+		for (final DataFormat format: DataFormat.values()) {
+			final Unmarshaller u = context.createUnmarshaller();
+			u.setFormat(format);
+			final Order target = new Order();
+			for (Order before: Orders.shapes()) {
+				final byte[] previous = Bench.marshal(context, before, format);
+				Orders.checkShapes(context, format, format + ": recycled content tree doesn't match", new Orders.RoundTrip() {
+					@Override
+					byte[] run(Order order) throws Exception {
+						u.unmarshalInto(new ByteArrayInputStream(previous), target);
+						u.unmarshalInto(new ByteArrayInputStream(Bench.marshal(context, order, format)), target);
+						return Bench.marshal(context, target, format);
+					}
+				});
+			}
+		}
+		checkReferences();
+		System.out.println("content identical");
+	}
+	
+	/**
+	 * Unmarshals trees with shared beans and cycles, as references bind them,
+	 * into the same target, so that each bean is released once and the pool 
+	 * never hands out the same bean twice.
+	 */
+	private static void checkReferences() throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Group.class));
+		context.setInstancePool(Person.class, new BoundedInstancePool<Person>(16));
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(ReferenceMode.ID_REF);
+		byte[][] docs = { Bench.marshal(m, group(false)), Bench.marshal(m, group(true)) };
+		Unmarshaller u = context.createUnmarshaller();
+		Group target = new Group();
+		for (int i = 0; i < 8; i++) {
+			byte[] doc = docs[i % 2];
+			u.unmarshalInto(new ByteArrayInputStream(doc), target);
+			Bench.check(Arrays.equals(doc, Bench.marshal(m, target)), "recycled references don't match in round " + i);
+			Map<Person, Boolean> members = new IdentityHashMap<>();
+			for (Person member: target.members)
+				members.put(member, Boolean.TRUE);
+			Bench.check(members.size() == target.members.size(), "bean handed out twice in round " + i);
+		}
+	}
+	
+	/**
+	 * A group whose leader is also its first member, and with a cycle, 
+	 * the partner of the second member, and the other way round.
+	 */
+	private static Group group(boolean cycle) {
+		Group group = new Group();
+		group.title = cycle ? "cycle" : "shared";
+		group.members = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Person person = new Person();
+			person.name = "member " + i;
+			person.friends = new ArrayList<>();
+			group.members.add(person);
+		}
+		group.leader = group.members.get(0);
+		if (cycle) {
+			group.leader.partner = group.members.get(1);
+			group.members.get(1).partner = group.leader;
+		}
+		return group;
+	}
+}
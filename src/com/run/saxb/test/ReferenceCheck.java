@@ -0,0 +1,151 @@
+package com.run.saxb.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.ReferenceMode;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+
+/**
+ * Checks that shared beans and cycles come back as the same objects with
+ * {@link ReferenceMode#ID_REF}, that {@link ReferenceMode#CHECK_CYCLES} writes
+ * shared beans like the default mode and fails on cycles, and that undefined
+ * references are rejected.
+ */
+public class ReferenceCheck {
+
+	public static class Person {
+		public String name;
+		public Person partner;
+		public List<Person> friends;
+	}
+
+	public static class Group {
+		public String title;
+		public Person leader;
+		public List<Person> members;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Group.class));
+
+		// shared, but no cycle
+		Group shared = group(false);
+		String plain = marshal(context, shared, ReferenceMode.NONE);
+		Bench.check(plain.equals(marshal(context, shared, ReferenceMode.CHECK_CYCLES)),
+				"shared beans written differently when checking cycles");
+		String refs = marshal(context, shared, ReferenceMode.ID_REF);
+		Bench.check(refs.length() < plain.length(), "references don't shorten shared beans: " + refs);
+		checkShared(context, refs);
+
+		// the marshaller forgets the beans of the previous call
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(ReferenceMode.ID_REF);
+		Bench.check(refs.equals(Bench.text(Bench.marshal(m, shared))) && refs.equals(Bench.text(Bench.marshal(m, shared))),
+				"references of a previous call kept");
+
+		// cycles
+		Group cyclic = group(true);
+		try {
+			marshal(context, cyclic, ReferenceMode.CHECK_CYCLES);
+			throw new IllegalStateException("cycle not detected");
+		} catch (JAXBException expected) {
+			System.out.println("cycle: " + expected.getMessage());
+		}
+		refs = marshal(context, cyclic, ReferenceMode.ID_REF);
+		for (boolean parallel: new boolean[] { false, true }) {
+			Unmarshaller u = context.createUnmarshaller();
+			u.setParallel(parallel);
+			u.setChunkSize(1);
+			Group copy = checkShared(refs, u);
+			Person leader = copy.leader;
+			Bench.check(leader.partner.partner == leader, "cycle through partners not restored");
+			Bench.check(leader.friends.get(0) == leader, "bean that is its own friend not restored");
+			Bench.check(refs.equals(marshal(context, copy, ReferenceMode.ID_REF)), "round trip doesn't match: " + refs);
+		}
+
+		reject(context, "undefined reference", refs.replaceFirst("saxb-ref=\"[^\"]*\"", "saxb-ref=\"missing\""));
+		for (DataFormat format: new DataFormat[] { DataFormat.JSON, DataFormat.BINARY }) {
+			try {
+				m = context.createMarshaller();
+				m.setFormat(format);
+				m.setReferenceMode(ReferenceMode.ID_REF);
+				Bench.marshal(m, shared);
+				throw new IllegalStateException(format + " accepted references");
+			} catch (JAXBException expected) {
+				System.out.println(format + ": " + expected.getMessage());
+			}
+		}
+		System.out.println("references ok");
+	}
+
+	/**
+	 * A group whose leader is also a member and a friend of the other members.
+	 * With a cycle, the leader and the first member are partners, and the leader
+	 * is one of its own friends.
+	 */
+	private static Group group(boolean cycle) {
+		Group group = new Group();
+		group.title = "a&b <group>";
+		Person leader = person("leader");
+		group.leader = leader;
+		group.members = new ArrayList<>();
+		group.members.add(leader);
+		for (int i = 0; i < 4; i++) {
+			Person member = person("member " + i);
+			member.friends.add(leader);
+			group.members.add(member);
+		}
+		if (cycle) {
+			leader.partner = group.members.get(1);
+			group.members.get(1).partner = leader;
+			leader.friends.add(leader);
+		}
+		return group;
+	}
+
+	private static Person person(String name) {
+		Person person = new Person();
+		person.name = name;
+		person.friends = new ArrayList<>();
+		return person;
+	}
+
+	private static Group checkShared(SAXBContextImpl context, String xml) throws JAXBException {
+		return checkShared(xml, context.createUnmarshaller());
+	}
+
+	/**
+	 * Reads a group back and checks that the leader is a single object.
+	 */
+	private static Group checkShared(String xml, Unmarshaller u) throws JAXBException {
+		Group copy = (Group) Bench.unmarshal(u, Bench.bytes(xml));
+		Bench.check(copy.members.size() == 5, "members not read back: " + xml);
+		Bench.check(copy.members.get(0) == copy.leader, "leader not shared");
+		for (Person member: copy.members.subList(1, 5))
+			Bench.check(member.friends.get(0) == copy.leader, "friend of " + member.name + " not shared");
+		return copy;
+	}
+
+	private static String marshal(SAXBContextImpl context, Object root, ReferenceMode references) throws JAXBException {
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(references);
+		return Bench.text(Bench.marshal(m, root));
+	}
+
+	private static void reject(SAXBContextImpl context, String problem, String xml) {
+		try {
+			Bench.unmarshal(context.createUnmarshaller(), Bench.bytes(xml));
+		} catch (JAXBException expected) {
+			System.out.println(problem + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(problem + " accepted: " + xml);
+	}
+}
@@ -0,0 +1,159 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.SubtypeCheck.Circle;
+import com.run.saxb.test.SubtypeCheck.Drawing;
+import com.run.saxb.test.SubtypeCheck.Shape;
+import com.run.saxb.test.SubtypeCheck.Square;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Checks that the elements embedded in a larger document are bound from an
+ * {@link XMLStreamReader} one by one, with the reader left right after each of
+ * them, and that every kind of {@link Source} reads back as the stream it holds.
+ */
+public class SourceCheck {
+
+	private static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Order.class, Drawing.class));
+		List<Object> roots = new ArrayList<Object>(Orders.shapes());
+		Drawing drawing = new Drawing();
+		drawing.title = "a&b <\u00e9>";
+		drawing.frame = new Circle();
+		drawing.shapes = new ArrayList<>(Arrays.asList(new Square(), new Shape(), new Circle()));
+		roots.add(drawing);
+		List<String> docs = new ArrayList<>();
+		for (Object root: roots)
+			docs.add(xml(context, root));
+
+		checkFeed(context, docs);
+
+		File file = File.createTempFile("source", ".xml");
+		try {
+			for (String doc: docs) {
+				byte[] bytes = Bench.bytes(doc);
+				Files.write(file.toPath(), bytes);
+				DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+				dbf.setNamespaceAware(true);
+				Document dom = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(bytes));
+				SAXParserFactory spf = SAXParserFactory.newInstance();
+				spf.setNamespaceAware(true);
+				Source[] sources = {
+					new StreamSource(new ByteArrayInputStream(bytes)),
+					new StreamSource(new StringReader(doc)),
+					new StreamSource(file),
+					new SAXSource(new InputSource(new ByteArrayInputStream(bytes))),
+					new SAXSource(spf.newSAXParser().getXMLReader(), new InputSource(new ByteArrayInputStream(bytes))),
+					new DOMSource(dom),
+					new DOMSource(dom.getDocumentElement()),
+					new StAXSource(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(doc))),
+				};
+				for (Source source: sources)
+					Bench.check(doc.equals(xml(context, context.createUnmarshaller().unmarshal(source))),
+							source.getClass().getSimpleName() + " doesn't match: " + doc);
+				// streams are split in parallel, from a file as well
+				Unmarshaller u = context.createUnmarshaller();
+				u.setParallel(true);
+				u.setChunkSize(2);
+				for (Source source: new Source[] { new StreamSource(new ByteArrayInputStream(bytes)), new StreamSource(file) })
+					Bench.check(doc.equals(xml(context, u.unmarshal(source))), "parallel stream source doesn't match: " + doc);
+			}
+		} finally {
+			file.delete();
+		}
+
+		try {
+			context.createUnmarshaller().unmarshal(new StAXSource(
+					XMLInputFactory.newInstance().createXMLEventReader(new StringReader(docs.get(0)))));
+			throw new IllegalStateException("source over events accepted");
+		} catch (IllegalArgumentException expected) {
+			System.out.println("events: " + expected.getMessage());
+		}
+		XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader("<a>text</a>"));
+		reader.next();
+		reader.next();
+		try {
+			context.createUnmarshaller().unmarshal(reader);
+			throw new IllegalStateException("reader on text accepted");
+		} catch (IllegalStateException expected) {
+			System.out.println("text: " + expected.getMessage());
+		}
+		reader = XMLInputFactory.newInstance().createXMLStreamReader(
+				new StringReader("<feed><Order><number>1</number><status>open</Order></feed>"));
+		reader.nextTag();
+		reader.nextTag();
+		try {
+			context.createUnmarshaller().unmarshal(reader);
+			throw new IllegalStateException("malformed element accepted");
+		} catch (JAXBException expected) {
+			System.out.println("malformed: " + expected.getMessage());
+		}
+		System.out.println("sources ok");
+	}
+
+	/**
+	 * Puts all the documents in a feed, between other elements, with the namespace
+	 * of <tt>xsi:type</tt> declared on the feed, and binds them one by one.
+	 */
+	private static void checkFeed(SAXBContextImpl context, List<String> docs) throws Exception {
+		StringBuilder feed = new StringBuilder("<?xml version='1.0'?><feed xmlns:xsi='" + XSI + "'><title>feed</title>\n");
+		for (String doc: docs) {
+			feed.append("<!-- entry -->\n  ");
+			feed.append(doc.substring(doc.indexOf("?>") + 2).trim().replace(" xmlns:xsi=\"" + XSI + "\"", ""));
+			feed.append("<separator/>");
+		}
+		feed.append("</feed>");
+
+		for (boolean coalescing: new boolean[] { false, true }) {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, coalescing);
+			XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(feed.toString()));
+			Unmarshaller u = context.createUnmarshaller();
+			reader.nextTag();
+			reader.nextTag();
+			Bench.check("title".equals(reader.getLocalName()), "feed doesn't start with its title");
+			reader.getElementText();
+			for (String doc: docs) {
+				reader.nextTag();
+				Object entry = u.unmarshal(reader);
+				Bench.check(doc.equals(xml(context, entry)), "entry doesn't match: " + doc);
+				Bench.check(reader.getEventType() == XMLStreamConstants.START_ELEMENT
+						&& "separator".equals(reader.getLocalName()), "reader not left after the entry");
+				reader.nextTag();
+			}
+			Bench.check(reader.nextTag() == XMLStreamConstants.END_ELEMENT && "feed".equals(reader.getLocalName()),
+					"feed doesn't end after its entries");
+		}
+	}
+
+	private static String xml(SAXBContextImpl context, Object root) throws JAXBException {
+		return Bench.text(Bench.marshal(context, root, DataFormat.XML));
+	}
+}
@@ -0,0 +1,184 @@
+package com.run.saxb.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.ReferenceMode;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.test.SubtypeCheck.Circle;
+import com.run.saxb.test.SubtypeCheck.Drawing;
+import com.run.saxb.test.SubtypeCheck.Shape;
+import com.run.saxb.test.SubtypeCheck.Square;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Checks that the content trees marshalled into an {@link XMLStreamWriter}
+ * and into a SAX {@link org.xml.sax.ContentHandler} read back as the ones
+ * written to a stream, with every option of the marshaller, that the events
+ * sent to a handler are well formed, and that the binary format is rejected.
+ */
+public class StreamTargetCheck {
+
+	/**
+	 * Checks the order of the events it passes on.
+	 */
+	static final class EventCheck extends XMLFilterImpl {
+		int documents;
+		int depth;
+		final List<String> prefixes = new ArrayList<>();
+
+		@Override
+		public void startDocument() throws SAXException {
+			Bench.check(documents++ == 0 && depth == 0, "document started twice");
+			super.startDocument();
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			Bench.check(depth == 0 && prefixes.isEmpty(), "document ended with open elements or prefixes " + prefixes);
+			super.endDocument();
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			prefixes.add(prefix);
+			super.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			Bench.check(prefixes.remove(prefix), "prefix " + prefix + " ended but not started");
+			super.endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			for (int i = 0; i < atts.getLength(); i++)
+				Bench.check(!atts.getQName(i).startsWith("xmlns"), "namespace reported as an attribute: " + atts.getQName(i));
+			depth++;
+			super.startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			Bench.check(depth-- > 0, "element " + qName + " ended but not started");
+			super.endElement(uri, localName, qName);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Order.class, Drawing.class));
+		List<Object> roots = new ArrayList<Object>(Orders.shapes());
+		Drawing drawing = new Drawing();
+		drawing.title = "a&b <\u00e9>";
+		drawing.frame = new Circle();
+		drawing.shapes = new ArrayList<>(Arrays.asList(new Square(), new Shape(), new Circle()));
+		roots.add(drawing);
+
+		for (Object root: roots) {
+			String expected = Bench.text(Bench.marshal(context, root, DataFormat.XML));
+			for (int options = 0; options < 4; options++) {
+				Marshaller m = context.createMarshaller();
+				m.setParallel((options & 1) != 0);
+				m.setChunkSize(2);
+				m.setIncremental((options & 2) != 0);
+				// twice, so that incremental marshalling writes from its fragments
+				for (int i = 0; i < 2; i++) {
+					check(context, lineFeeds(expected), toStax(m, root), "stax with options " + options);
+					check(context, expected, toSax(m, root), "sax with options " + options);
+				}
+			}
+		}
+
+		// references go through as attributes
+		Order order = Orders.create(3);
+		order.lines.set(2, order.lines.get(0));
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(ReferenceMode.ID_REF);
+		String expected = Bench.text(Bench.marshal(m, order));
+		check(context, lineFeeds(expected), toStax(m, order), "stax with references");
+		check(context, expected, toSax(m, order), "sax with references");
+
+		m = context.createMarshaller();
+		m.setFormat(DataFormat.BINARY);
+		try {
+			m.marshal(order, XMLOutputFactory.newInstance().createXMLStreamWriter(new StringWriter()));
+			throw new IllegalStateException("binary format written to an XMLStreamWriter");
+		} catch (JAXBException e) {
+			System.out.println("stax: " + e.getMessage());
+		}
+		try {
+			m.marshal(order, new EventCheck());
+			throw new IllegalStateException("binary format written to a ContentHandler");
+		} catch (JAXBException e) {
+			System.out.println("sax: " + e.getMessage());
+		}
+		System.out.println("stream targets ok");
+	}
+
+	/**
+	 * Marshals the root inside an envelope, followed by a sibling, to check that
+	 * the writer is left where the content tree ends.
+	 */
+	private static String toStax(Marshaller m, Object root) throws Exception {
+		StringWriter out = new StringWriter();
+		XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+		writer.writeStartDocument();
+		writer.writeStartElement("envelope");
+		m.marshal(root, writer);
+		writer.writeEmptyElement("trailer");
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.close();
+		String xml = out.toString();
+		int start = xml.indexOf("<envelope>") + "<envelope>".length();
+		int end = xml.lastIndexOf("<trailer");
+		Bench.check(start > 0 && end > start && xml.endsWith("<trailer/></envelope>"), "envelope broken: " + xml);
+		return xml.substring(start, end);
+	}
+
+	private static String toSax(Marshaller m, Object root) throws Exception {
+		StringWriter out = new StringWriter();
+		TransformerHandler serializer = ((SAXTransformerFactory) SAXTransformerFactory.newInstance()).newTransformerHandler();
+		serializer.setResult(new StreamResult(out));
+		EventCheck events = new EventCheck();
+		events.setContentHandler(serializer);
+		m.marshal(root, events);
+		Bench.check(events.documents == 1, "document not started");
+		return out.toString();
+	}
+
+	/**
+	 * Reads the document back, and compares it with the document written to a stream.
+	 */
+	private static void check(SAXBContextImpl context, String expected, String xml, String target) throws Exception {
+		Object copy = context.createUnmarshaller().unmarshal(new StringReader(xml));
+		Marshaller m = context.createMarshaller();
+		m.setReferenceMode(expected.contains("saxb-id") ? ReferenceMode.ID_REF : ReferenceMode.NONE);
+		Bench.check(expected.equals(Bench.text(Bench.marshal(m, copy))), target + " doesn't match: " + xml);
+	}
+
+	/**
+	 * The writer of the JDK doesn't escape carriage returns, so they are read back
+	 * as line feeds.
+	 */
+	private static String lineFeeds(String xml) {
+		return xml.replace("&#13;\n", "\n").replace("&#13;", "\n");
+	}
+}
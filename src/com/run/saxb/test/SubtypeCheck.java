@@ -0,0 +1,104 @@
+package com.run.saxb.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlSeeAlso;
+
+import com.run.saxb.BoundedInstancePool;
+import com.run.saxb.DataFormat;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+
+/**
+ * Checks that the elements of a declared type that hold beans of its subtypes
+ * are bound to the subtype the <tt>xsi:type</tt> attribute selects, that an
+ * unknown type is rejected, and that unmarshalling into the same content tree
+ * with instance pools releases each bean to the pool of its own class.
+ */
+public class SubtypeCheck {
+
+	@XmlSeeAlso({ Circle.class, Square.class })
+	public static class Shape {
+		public String color;
+	}
+
+	public static class Circle extends Shape {
+		public double radius;
+	}
+
+	public static class Square extends Shape {
+		public double side;
+	}
+
+	public static class Drawing {
+		public String title;
+		public Shape frame;
+		public List<Shape> shapes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Drawing.class));
+		Drawing mixed = drawing(new Square(), new Circle(), new Shape(), new Square());
+		Drawing plain = drawing(new Shape(), new Shape(), new Shape(), new Shape(), new Circle());
+
+		for (DataFormat format: DataFormat.values()) {
+			byte[] doc = Bench.marshal(context, mixed, format);
+			Unmarshaller u = context.createUnmarshaller();
+			u.setFormat(format);
+			Drawing copy = (Drawing) Bench.unmarshal(u, doc);
+			Bench.check(copy.frame.getClass() == Square.class, format + ": frame bound to " + copy.frame.getClass());
+			for (int i = 0; i < mixed.shapes.size(); i++)
+				Bench.check(copy.shapes.get(i).getClass() == mixed.shapes.get(i).getClass(),
+						format + ": shape " + i + " bound to " + copy.shapes.get(i).getClass());
+			Bench.check(Arrays.equals(doc, Bench.marshal(context, copy, format)), format + ": round trip doesn't match");
+		}
+
+		String xml = Bench.text(Bench.marshal(context, mixed, DataFormat.XML));
+		Bench.check(xml.contains("\"Circle\""), "no xsi:type for the circle: " + xml);
+		try {
+			Bench.unmarshal(context.createUnmarshaller(), Bench.bytes(xml.replace("\"Circle\"", "\"Triangle\"")));
+			throw new IllegalStateException("unknown xsi:type accepted");
+		} catch (JAXBException expected) {
+			System.out.println("rejected: " + expected.getMessage());
+		}
+
+		// alternate the documents, so that the beans of each subtype are released and taken again
+		context.setInstancePool(Shape.class, new BoundedInstancePool<Shape>(16));
+		context.setInstancePool(Circle.class, new BoundedInstancePool<Circle>(16));
+		context.setInstancePool(Square.class, new BoundedInstancePool<Square>(16));
+		for (DataFormat format: DataFormat.values()) {
+			byte[][] docs = { Bench.marshal(context, mixed, format), Bench.marshal(context, plain, format) };
+			Unmarshaller u = context.createUnmarshaller();
+			u.setFormat(format);
+			Drawing target = new Drawing();
+			for (int i = 0; i < 8; i++) {
+				byte[] doc = docs[i % 2];
+				u.unmarshalInto(new ByteArrayInputStream(doc), target);
+				Bench.check(Arrays.equals(doc, Bench.marshal(context, target, format)),
+						format + ": recycled content tree doesn't match in round " + i);
+			}
+		}
+		System.out.println("subtypes ok");
+	}
+
+	private static Drawing drawing(Shape frame, Shape... shapes) {
+		Drawing drawing = new Drawing();
+		drawing.title = "drawing of " + shapes.length;
+		drawing.frame = frame;
+		drawing.shapes = new ArrayList<>();
+		for (int i = 0; i < shapes.length; i++) {
+			Shape shape = shapes[i];
+			shape.color = i % 2 == 0 ? "red" : "blue";
+			if (shape instanceof Circle)
+				((Circle) shape).radius = i + 0.5;
+			if (shape instanceof Square)
+				((Square) shape).side = i * 2;
+			drawing.shapes.add(shape);
+		}
+		return drawing;
+	}
+}
@@ -0,0 +1,97 @@
+package com.run.saxb.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+
+import com.run.saxb.Facets;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+
+/**
+ * Checks that a validating unmarshaller accepts a document that meets the
+ * constraints of its classes and rejects each kind of violation, that
+ * the unknown elements a plain unmarshaller skips leave no trace, and that
+ * values that don't parse are rejected either way. Attributes of other
+ * namespaces are never bound.
+ */
+public class ValidationCheck {
+
+	public static class Invoice {
+		@XmlAttribute(required = true)
+		public String id;
+		@Facets(enumeration = { "EUR", "USD" })
+		@XmlAttribute
+		public String currency;
+		@XmlAttribute
+		public int revision;
+		@XmlElement(required = true)
+		public String customer;
+		@Facets(minLength = 2, maxLength = 8)
+		public String code;
+		@Facets(minInclusive = 1, maxInclusive = 999)
+		public int quantity;
+		@Facets(minOccurs = 1, maxOccurs = 3)
+		public List<Item> items;
+	}
+
+	public static class Item {
+		public String name;
+	}
+
+	private static final String VALID = "<Invoice id='1' currency='EUR'><customer>RuN</customer>"
+			+ "<code>AB12</code><quantity>5</quantity><items><name>a</name></items></Invoice>";
+
+	public static void main(String[] args) throws Exception {
+		SAXBContextImpl context = new SAXBContextImpl(Arrays.<Class<?>>asList(Invoice.class));
+		Unmarshaller u = context.createUnmarshaller();
+		u.setValidating(true);
+
+		Invoice invoice = (Invoice) Bench.unmarshal(u, Bench.bytes(VALID));
+		Bench.check("RuN".equals(invoice.customer) && invoice.quantity == 5 && invoice.items.size() == 1,
+				"valid invoice not bound");
+		reject(u, "missing attribute", VALID.replace(" id='1'", ""));
+		reject(u, "attribute not in the enumeration", VALID.replace("EUR", "GBP"));
+		reject(u, "missing element", VALID.replace("<customer>RuN</customer>", ""));
+		reject(u, "repeated element", VALID.replace("<customer>RuN</customer>", "<customer>a</customer><customer>b</customer>"));
+		reject(u, "value too short", VALID.replace("AB12", "A"));
+		reject(u, "value too long", VALID.replace("AB12", "AB12AB12A"));
+		reject(u, "value below the minimum", VALID.replace(">5<", ">0<"));
+		reject(u, "value above the maximum", VALID.replace(">5<", ">1000<"));
+		reject(u, "collection under its minimum", VALID.replace("<items><name>a</name></items>", ""));
+		reject(u, "collection over its maximum", VALID.replace("<items><name>a</name></items>",
+				"<items/><items/><items/><items/>"));
+		reject(u, "unknown element", VALID.replace("<quantity>", "<unknown/><quantity>"));
+		reject(u, "unknown child of a leaf", VALID.replace("RuN", "Ru<b>junk</b>N"));
+
+		// attributes of other namespaces aren't bound, even with the name of a property
+		invoice = (Invoice) Bench.unmarshal(u, Bench.bytes(VALID.replace("currency='EUR'",
+				"currency='EUR' z:id='bad' xml:lang='en' z:currency='GBP' xmlns:z='urn:z'")));
+		Bench.check("1".equals(invoice.id) && "EUR".equals(invoice.currency),
+				"attribute of another namespace bound: " + invoice.id + " " + invoice.currency);
+		reject(u, "required attribute only in another namespace", VALID.replace(" id='1'", " z:id='1' xmlns:z='urn:z'"));
+
+		// a plain unmarshaller skips the unknown elements and their text
+		u.setValidating(false);
+		invoice = (Invoice) Bench.unmarshal(u, Bench.bytes(VALID.replace("RuN", "Ru<b>junk<i>more</i></b>N")
+				.replace("<quantity>", "<unknown>text</unknown><quantity>")));
+		Bench.check("RuN".equals(invoice.customer), "text of a skipped element bound: " + invoice.customer);
+		Bench.check(invoice.quantity == 5, "quantity not bound after a skipped element");
+		reject(u, "element value of the wrong type", VALID.replace(">5<", ">five<"));
+		reject(u, "attribute value of the wrong type", VALID.replace("id='1'", "id='1' revision='x'"));
+		System.out.println("validation ok");
+	}
+
+	private static void reject(Unmarshaller u, String violation, String xml) {
+		try {
+			Bench.unmarshal(u, Bench.bytes(xml));
+		} catch (JAXBException expected) {
+			System.out.println(violation + ": " + expected.getMessage());
+			return;
+		}
+		throw new IllegalStateException(violation + " accepted: " + xml);
+	}
+}
@@ -0,0 +1,69 @@
+package com.run.saxb.test;
+
+import java.util.Arrays;
+
+import com.run.saxb.DataFormat;
+import com.run.saxb.Marshaller;
+import com.run.saxb.SAXBContextImpl;
+import com.run.saxb.Unmarshaller;
+import com.run.saxb.test.model.Customer;
+import com.run.saxb.test.model.Line;
+import com.run.saxb.test.model.Order;
+
+/**
+ * Shows the time of the first documents marshalled and unmarshalled
+ * after startup, with or without warming up the context first. Then checks
+ * that models with subtypes, enums, immutable and versioned beans warm up,
+ * that a warmed up context writes the same documents as a new one, and that
+ * the class list has the bound classes.
+ * <br/>
+ * Run once with 0 and once with the number of warm-up rounds as the
+ * argument, in a new JVM each time, since the JIT state can't be reset.
+ */
+public class WarmUpBenchmark {
+
+	private static final int DOCUMENTS = 20;
+
+	public static void main(String[] args) throws Exception {
+		int rounds = Bench.size(args, 2000);
+
+		long start = System.nanoTime();
+		final SAXBContextImpl context = new SAXBContextImpl(Arrays.asList(Order.class));
+		if (rounds > 0)
+			context.warmUp(rounds);
+		System.out.printf("context and warm-up of %d rounds: %.1f ms%n", rounds, (System.nanoTime() - start) / 1e6);
+
+		// the first documents are the point, so they're timed one by one rather than after a warm-up
+		Order order = Orders.create(100);
+		Marshaller m = context.createMarshaller();
+		Unmarshaller u = context.createUnmarshaller();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			long begin = System.nanoTime();
+			Bench.unmarshal(u, Bench.marshal(m, order));
+			long end = System.nanoTime();
+			if (i < 3 || i == DOCUMENTS - 1)
+				System.out.printf("document %2d: %.3f ms%n", i + 1, (end - begin) / 1e6);
+		}
+
+		context.warmUp(2);
+		SAXBContextImpl fresh = new SAXBContextImpl(Arrays.asList(Order.class));
+		for (final DataFormat format: DataFormat.values()) {
+			Orders.checkShapes(fresh, format, format + ": warmed up context writes differently", new Orders.RoundTrip() {
+				@Override
+				byte[] run(Order order) throws Exception {
+					return Bench.marshal(context, order, format);
+				}
+			});
+		}
+
+		for (Class<?> root: Arrays.<Class<?>>asList(SubtypeCheck.Drawing.class, EnumCheck.Ticket.class,
+				FragmentMemoBenchmark.Book.class, IncrementalMarshalBenchmark.Config.class))
+			new SAXBContextImpl(Arrays.<Class<?>>asList(root)).warmUp(2);
+
+		StringBuilder classes = new StringBuilder();
+		context.writeClassList(classes);
+		for (Class<?> c: Arrays.<Class<?>>asList(Order.class, Line.class, Customer.class))
+			Bench.check(classes.indexOf(c.getName().replace('.', '/') + '\n') >= 0, c + " not in the class list");
+		System.out.println("warm-up ok");
+	}
+}
@@ -0,0 +1,17 @@
+package com.run.saxb.test.billing;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAttribute;
+
+/**
+ * A payload, carried in an envelope or on its own.
+ */
+public class Invoice {
+	@XmlAttribute
+	public String id;
+	@XmlAttribute
+	public int revision;
+	public String customer;
+	public List<Item> items;
+}
@@ -0,0 +1,13 @@
+package com.run.saxb.test.billing;
+
+import javax.xml.bind.annotation.XmlAttribute;
+
+/**
+ * An item of an {@link Invoice}.
+ */
+public class Item {
+	@XmlAttribute
+	public String sku;
+	public int quantity;
+	public String note;
+}
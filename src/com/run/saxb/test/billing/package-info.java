@@ -0,0 +1,7 @@
+/**
+ * Payloads in a namespace without a declared prefix.
+ */
+@XmlSchema(namespace = "urn:run:billing")
+package com.run.saxb.test.billing;
+
+import javax.xml.bind.annotation.XmlSchema;
@@ -0,0 +1,10 @@
+package com.run.saxb.test.model;
+
+/**
+ * The customer of an {@link Order}.
+ */
+public class Customer {
+	public String name;
+	public String country;
+	public long id;
+}
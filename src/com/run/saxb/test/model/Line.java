@@ -0,0 +1,16 @@
+package com.run.saxb.test.model;
+
+import javax.xml.bind.annotation.XmlAttribute;
+
+/**
+ * A line of an {@link Order}, with leaf values of each kind.
+ */
+public class Line {
+	@XmlAttribute
+	public String sku;
+	@XmlAttribute(name = "cur")
+	public String currency;
+	public int quantity;
+	public double price;
+	public boolean shipped;
+}
@@ -0,0 +1,16 @@
+package com.run.saxb.test.model;
+
+import java.util.List;
+
+/**
+ * The representative document of the benchmarks and the checks: a root with
+ * leaf values, a nested bean and a large collection.
+ * <br/>
+ * The package holds only bound classes, so that it can be bound as a context path.
+ */
+public class Order {
+	public long number;
+	public String status;
+	public Customer customer;
+	public List<Line> lines;
+}
@@ -0,0 +1,17 @@
+package com.run.saxb.test.soap;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAttribute;
+
+import com.run.saxb.test.billing.Invoice;
+
+/**
+ * A SOAP style envelope, whose body holds payloads of another namespace.
+ */
+public class Envelope {
+	@XmlAttribute
+	public String id;
+	public String header;
+	public List<Invoice> body;
+}
@@ -0,0 +1,12 @@
+/**
+ * A SOAP style envelope, in a namespace with a declared prefix, around the
+ * payloads of {@link com.run.saxb.test.billing}.
+ */
+@XmlSchema(namespace = "http://schemas.xmlsoap.org/soap/envelope/", xmlns = {
+	@XmlNs(prefix = "soap", namespaceURI = "http://schemas.xmlsoap.org/soap/envelope/"),
+	@XmlNs(prefix = "ns3", namespaceURI = "urn:run:audit")
+})
+package com.run.saxb.test.soap;
+
+import javax.xml.bind.annotation.XmlNs;
+import javax.xml.bind.annotation.XmlSchema;
@@ -1,7 +1,9 @@
 package com.run.saxb.transducer;
 
+import com.run.saxb.transducer.accessor.BeanAccessor;
 import com.run.saxb.transducer.accessor.BooleanAccessor;
 import com.run.saxb.transducer.accessor.DoubleAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
 import com.run.saxb.transducer.accessor.IntegerAccessor;
 import com.run.saxb.transducer.accessor.ListAccessor;
 import com.run.saxb.transducer.accessor.StringAccessor;
@@ -16,5 +18,9 @@ public interface DataTypeVisitor {
     
     void visit(StringAccessor accessor);
     
+    void visit(EnumAccessor accessor);
+    
     void visit(ListAccessor accessor);
-}
\ No newline at end of file
+    
+    void visit(BeanAccessor accessor);
+}
@@ -0,0 +1,238 @@
+package com.run.saxb.transducer;
+
+import java.util.Arrays;
+
+import javax.xml.bind.annotation.XmlEnumValue;
+
+/**
+ * The lexical representations of the constants of an enum type,
+ * computed once per type.
+ *
+ * <p>
+ * The lexical representation of a constant is its {@link XmlEnumValue},
+ * or its name. Lexical representations are looked up through a perfect hash:
+ * the multiplier of the hash is picked when the table is built so that every
+ * constant has a slot of its own, and a lookup hashes the characters of the
+ * parser, compares them with a single candidate and never creates a string.
+ * Leading and trailing whitespace is ignored, like for the other leaf types.
+ *
+ * <p>
+ * For printing, the table also keeps each representation as it is written in
+ * the text of an element and in a JSON string, so that it's copied as is.
+ * A representation that would need escaping has no such form, and is written
+ * through the usual escaping instead.
+ *
+ * <p>
+ * Thread-safe.
+ *
+ * @see Transducer
+ */
+public final class EnumTable {
+
+	private static final ClassValue<EnumTable> TABLES = new ClassValue<EnumTable>() {
+		@Override
+		protected EnumTable computeValue(Class<?> type) {
+			if (!type.isEnum())
+				throw new IllegalArgumentException(type.getName() + " is not an enum type");
+			return new EnumTable(type);
+		}
+	};
+
+	/**
+	 * Gets the table of an enum type.
+	 */
+	public static EnumTable of(Class<?> type) {
+		return TABLES.get(type);
+	}
+
+	private final Class<?> type;
+
+	private final Enum<?>[] constants;
+
+	/**
+	 * Lexical representations by ordinal.
+	 */
+	private final String[] lexicals;
+
+	/**
+	 * Representations in element text and in JSON, by ordinal.
+	 * null where escaping is needed.
+	 */
+	private final char[][] xml;
+	private final char[][] json;
+
+	/**
+	 * Ordinal plus one by slot, 0 for an empty slot.
+	 * null if no perfect hash was found, and the constants are searched.
+	 */
+	private final int[] slots;
+	private final int multiplier;
+
+	private EnumTable(Class<?> type) {
+		this.type = type;
+		this.constants = (Enum<?>[]) type.getEnumConstants();
+		int n = constants.length;
+		this.lexicals = new String[n];
+		this.xml = new char[n][];
+		this.json = new char[n][];
+		for (int i = 0; i < n; i++) {
+			String lexical = constants[i].name();
+			try {
+				XmlEnumValue value = type.getField(lexical).getAnnotation(XmlEnumValue.class);
+				if (value != null)
+					lexical = value.value();
+			} catch (NoSuchFieldException e) {
+				throw new AssertionError(e);
+			}
+			lexicals[i] = lexical;
+			xml[i] = isPlain(lexical, "&<>\r") ? lexical.toCharArray() : null;
+			json[i] = isPlain(lexical, "\"\\") ? ('"' + lexical + '"').toCharArray() : null;
+		}
+
+		int[] slots = null;
+		int multiplier = 0;
+		search:
+		for (int size = Integer.highestOneBit(Math.max(n, 1) * 2 - 1); size <= Math.max(n, 1) * 16; size *= 2) {
+			for (int m = 31; m < 31 + 256; m++) {
+				int[] table = new int[size];
+				boolean perfect = true;
+				for (int i = 0; i < n && perfect; i++) {
+					int slot = hash(lexicals[i], m) & (size - 1);
+					perfect = table[slot] == 0;
+					table[slot] = i + 1;
+				}
+				if (perfect) {
+					slots = table;
+					multiplier = m;
+					break search;
+				}
+			}
+		}
+		this.slots = slots;
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * Checks if a representation has no surrogates, control characters,
+	 * or any of the given characters.
+	 */
+	private static boolean isPlain(String lexical, String special) {
+		if (lexical.isEmpty() || lexical.trim().length() != lexical.length())
+			return false;
+		for (int i = 0; i < lexical.length(); i++) {
+			char c = lexical.charAt(i);
+			if (c < 0x20 || Character.isSurrogate(c) || special.indexOf(c) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(String s, int multiplier) {
+		int h = 0;
+		for (int i = 0; i < s.length(); i++)
+			h = multiplier * h + s.charAt(i);
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(char[] ch, int start, int end, int multiplier) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = multiplier * h + ch[i];
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Gets the constant of a range of characters.
+	 *
+	 * @return null if no constant has that representation.
+	 */
+	public Enum<?> lookup(char[] ch, int start, int length) {
+		int end = start + length;
+		while (start < end && ch[start] <= ' ')
+			start++;
+		while (end > start && ch[end - 1] <= ' ')
+			end--;
+		if (slots == null) {
+			for (int i = 0; i < lexicals.length; i++) {
+				if (matches(lexicals[i], ch, start, end))
+					return constants[i];
+			}
+			return null;
+		}
+		int ordinal = slots[hash(ch, start, end, multiplier) & (slots.length - 1)] - 1;
+		return ordinal >= 0 && matches(lexicals[ordinal], ch, start, end) ? constants[ordinal] : null;
+	}
+
+	private static boolean matches(String lexical, char[] ch, int start, int end) {
+		if (lexical.length() != end - start)
+			return false;
+		for (int i = start; i < end; i++) {
+			if (lexical.charAt(i - start) != ch[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the constant of a lexical representation.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If no constant has that representation.
+	 */
+	public Enum<?> parse(String lexical) {
+		String s = lexical.trim();
+		if (slots != null) {
+			int ordinal = slots[hash(s, multiplier) & (slots.length - 1)] - 1;
+			if (ordinal >= 0 && lexicals[ordinal].equals(s))
+				return constants[ordinal];
+		} else {
+			for (int i = 0; i < lexicals.length; i++) {
+				if (lexicals[i].equals(s))
+					return constants[i];
+			}
+		}
+		throw new IllegalArgumentException("Not a constant of " + type.getName() + ": " + s);
+	}
+
+	/**
+	 * Gets the lexical representation of a constant.
+	 */
+	public String print(Enum<?> value) {
+		return lexicals[value.ordinal()];
+	}
+
+	/**
+	 * Gets the representation of a constant in the text of an element.
+	 *
+	 * @return null if it must be escaped.
+	 */
+	public char[] getXml(Enum<?> value) {
+		return xml[value.ordinal()];
+	}
+
+	/**
+	 * Gets the representation of a constant as a JSON string, with its quotes.
+	 *
+	 * @return null if it must be escaped.
+	 */
+	public char[] getJson(Enum<?> value) {
+		return json[value.ordinal()];
+	}
+
+	/**
+	 * Gets a constant by its ordinal.
+	 *
+	 * @throws IllegalArgumentException
+	 *      If there's no constant with that ordinal.
+	 */
+	public Enum<?> get(int ordinal) {
+		if (ordinal < 0 || ordinal >= constants.length)
+			throw new IllegalArgumentException("No constant of " + type.getName() + " with the ordinal " + ordinal);
+		return constants[ordinal];
+	}
+
+	@Override
+	public String toString() {
+		return type.getName() + Arrays.toString(lexicals);
+	}
+}
@@ -1,11 +1,13 @@
 package com.run.saxb.transducer;
 
-import com.run.saxb.transducer.accessor.Accessor;
+import java.lang.reflect.Field;
+
 import com.run.saxb.transducer.accessor.BooleanAccessor;
 import com.run.saxb.transducer.accessor.DoubleAccessor;
+import com.run.saxb.transducer.accessor.EnumAccessor;
 import com.run.saxb.transducer.accessor.IntegerAccessor;
-import com.run.saxb.transducer.accessor.ListAccessor;
 import com.run.saxb.transducer.accessor.StringAccessor;
+import com.run.saxb.transducer.accessor.TextAccessor;
 
 /**
  * Responsible for converting a Java object to a lexical representation
@@ -19,21 +21,97 @@ import com.run.saxb.transducer.accessor.StringAccessor;
 public class Transducer {
 
 	// com.sun.xml.internal.bind.v2.runtime.Transducer
-    Accessor[] xers  = new Accessor[] {
-    	new BooleanAccessor(), 
-    	new IntegerAccessor(),
-    	new DoubleAccessor(),
-    	new StringAccessor(),
-    	new ListAccessor()
-    };
-    		
-    public Transducer() {
+    private Transducer() {
     	
     }
-
-    public void accept(DataTypeVisitor visitor) {
-        for(Accessor x : xers) {
-            x.accept(visitor);
-        }
+    
+    /**
+     * Checks if values of the given type have a lexical representation.
+     */
+    public static boolean isLeaf(Class<?> type) {
+    	return type == String.class
+    		|| type == boolean.class || type == Boolean.class
+    		|| IntegerAccessor.isIntegral(type)
+    		|| DoubleAccessor.isFloatingPoint(type)
+    		|| type.isEnum();
+    }
+    
+    /**
+     * Creates the {@link TextAccessor} for a field of a leaf type.
+     *
+     * @return null if the field type has no lexical representation.
+     */
+    public static TextAccessor createAccessor(Field f) {
+    	Class<?> type = f.getType();
+    	if (type == String.class)
+    		return new StringAccessor(f);
+    	if (type == boolean.class || type == Boolean.class)
+    		return new BooleanAccessor(f);
+    	if (IntegerAccessor.isIntegral(type))
+    		return new IntegerAccessor(f);
+    	if (DoubleAccessor.isFloatingPoint(type))
+    		return new DoubleAccessor(f);
+    	if (type.isEnum())
+    		return new EnumAccessor(f);
+    	return null;
+    }
+    
+    /**
+     * Converts a leaf value into its lexical representation.
+     */
+    public static String print(Object value) {
+    	if (value instanceof Enum)
+    		return EnumTable.of(((Enum<?>) value).getDeclaringClass()).print((Enum<?>) value);
+    	return value.toString();
+    }
+    
+    /**
+     * Converts a lexical representation into a value of the given leaf type.
+     * Values of primitive types are boxed.
+     */
+    public static Object parse(Class<?> type, String lexical) {
+    	if (type == String.class)
+    		return lexical;
+    	if (type.isEnum())
+    		return EnumTable.of(type).parse(lexical);
+    	lexical = lexical.trim();
+    	if (type == Boolean.class || type == boolean.class)
+    		return BooleanAccessor.parseBoolean(lexical);
+    	if (type == Integer.class || type == int.class)
+    		return Integer.valueOf(lexical);
+    	if (type == Long.class || type == long.class)
+    		return Long.valueOf(lexical);
+    	if (type == Double.class || type == double.class)
+    		return Double.valueOf(lexical);
+    	if (type == Float.class || type == float.class)
+    		return Float.valueOf(lexical);
+    	if (type == Short.class || type == short.class)
+    		return Short.valueOf(lexical);
+    	if (type == Byte.class || type == byte.class)
+    		return Byte.valueOf(lexical);
+    	throw new IllegalArgumentException("No lexical representation for " + type);
+    }
+    
+    /**
+     * Gets the default value of a type, which is null but for primitive types.
+     */
+    public static Object getDefault(Class<?> type) {
+    	if (!type.isPrimitive())
+    		return null;
+    	if (type == boolean.class)
+    		return Boolean.FALSE;
+    	if (type == int.class)
+    		return 0;
+    	if (type == long.class)
+    		return 0L;
+    	if (type == double.class)
+    		return 0.0;
+    	if (type == float.class)
+    		return 0.0f;
+    	if (type == short.class)
+    		return (short) 0;
+    	if (type == byte.class)
+    		return (byte) 0;
+    	return '\0';
     }
-}
\ No newline at end of file
+}
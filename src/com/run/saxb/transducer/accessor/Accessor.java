@@ -11,5 +11,20 @@ import com.run.saxb.transducer.DataTypeVisitor;
  */
 public interface Accessor {
 	
+	/**
+	 * Gets the XML name of the property, which is also the name of the field.
+	 */
+	String getName();
+	
+	/**
+	 * Gets the value of the property from the given bean.
+	 */
+	Object get(Object bean);
+	
+	/**
+	 * Sets the value of the property on the given bean.
+	 */
+	void set(Object bean, Object value);
+	
 	void accept(DataTypeVisitor visitor);
 }
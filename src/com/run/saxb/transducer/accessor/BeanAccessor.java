@@ -0,0 +1,25 @@
+package com.run.saxb.transducer.accessor;
+
+import java.lang.reflect.Field;
+
+import com.run.saxb.BeanInfo;
+import com.run.saxb.transducer.DataTypeVisitor;
+
+/**
+ * Accessor for properties whose type is itself a bound bean.
+ * The value is marshalled as a nested element.
+ */
+public class BeanAccessor extends FieldAccessor {
+	
+	public final BeanInfo<?> beanInfo;
+
+	public BeanAccessor(Field f, BeanInfo<?> beanInfo) {
+		super(f);
+		this.beanInfo = beanInfo;
+	}
+
+	@Override
+	public void accept(DataTypeVisitor visitor) {
+		visitor.visit(this);
+	}
+}
@@ -1,11 +1,62 @@
 package com.run.saxb.transducer.accessor;
 
+import java.lang.reflect.Field;
+
 import com.run.saxb.transducer.DataTypeVisitor;
 
-public class BooleanAccessor implements Accessor {
+public class BooleanAccessor extends TextAccessor {
+
+	public BooleanAccessor(Field f) {
+		super(f);
+	}
+	
+	public boolean getBoolean(Object bean) {
+		try {
+			if (primitive) 
+				return f.getBoolean(bean);
+			return (Boolean) f.get(bean);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	public void setBoolean(Object bean, boolean value) {
+		try {
+			if (primitive) 
+				f.setBoolean(bean, value);
+			else
+				f.set(bean, value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	@Override
+	public String print(Object bean) {
+		if (!hasValue(bean)) 
+			return null;
+		return getBoolean(bean) ? "true" : "false";
+	}
+	
+	@Override
+	public void parse(Object bean, String lexical) {
+		setBoolean(bean, parseBoolean(lexical));
+	}
+	
+	/**
+	 * Parses xs:boolean, which also allows "1" and "0".
+	 */
+	public static boolean parseBoolean(CharSequence lexical) {
+		String s = lexical.toString().trim();
+		if (s.equals("true") || s.equals("1")) 
+			return true;
+		if (s.equals("false") || s.equals("0")) 
+			return false;
+		throw new IllegalArgumentException("Not a boolean: " + s);
+	}
 
 	@Override
 	public void accept(DataTypeVisitor visitor) {
 		visitor.visit(this);
 	}
-}
\ No newline at end of file
+}
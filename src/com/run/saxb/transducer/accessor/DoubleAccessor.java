@@ -1,11 +1,65 @@
 package com.run.saxb.transducer.accessor;
 
+import java.lang.reflect.Field;
+
 import com.run.saxb.transducer.DataTypeVisitor;
 
-public class DoubleAccessor implements Accessor {
+/**
+ * Accessor for <tt>double</tt> and <tt>float</tt>, primitive or boxed.
+ */
+public class DoubleAccessor extends TextAccessor {
+	
+	private final boolean single;
+	
+	public DoubleAccessor(Field f) {
+		super(f);
+		this.single = f.getType() == float.class || f.getType() == Float.class;
+	}
+	
+	public double getDouble(Object bean) {
+		try {
+			if (primitive) 
+				return f.getDouble(bean);
+			return ((Number) f.get(bean)).doubleValue();
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	public void setDouble(Object bean, double value) {
+		try {
+			if (!single) {
+				if (primitive) f.setDouble(bean, value);
+				else           f.set(bean, value);
+			} else {
+				if (primitive) f.setFloat(bean, (float) value);
+				else           f.set(bean, (float) value);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	@Override
+	public String print(Object bean) {
+		if (!hasValue(bean)) 
+			return null;
+		double d = getDouble(bean);
+		return single ? Float.toString((float) d) : Double.toString(d);
+	}
+	
+	@Override
+	public void parse(Object bean, String lexical) {
+		setDouble(bean, Double.parseDouble(lexical.trim()));
+	}
+	
+	public static boolean isFloatingPoint(Class<?> type) {
+		return type == double.class || type == Double.class 
+			|| type == float.class || type == Float.class;
+	}
 	
 	@Override
 	public void accept(DataTypeVisitor visitor) {
 		visitor.visit(this);
 	}
-}
\ No newline at end of file
+}
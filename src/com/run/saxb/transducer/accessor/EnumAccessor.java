@@ -0,0 +1,40 @@
+package com.run.saxb.transducer.accessor;
+
+import java.lang.reflect.Field;
+
+import com.run.saxb.transducer.DataTypeVisitor;
+import com.run.saxb.transducer.EnumTable;
+
+/**
+ * Accessor for properties of an enum type. The constants are converted 
+ * through the {@link EnumTable} of the type.
+ */
+public class EnumAccessor extends TextAccessor {
+	
+	public final EnumTable table;
+
+	public EnumAccessor(Field f) {
+		super(f);
+		this.table = EnumTable.of(f.getType());
+	}
+	
+	public Enum<?> getEnum(Object bean) {
+		return (Enum<?>) get(bean);
+	}
+	
+	@Override
+	public String print(Object bean) {
+		Enum<?> value = getEnum(bean);
+		return value == null ? null : table.print(value);
+	}
+	
+	@Override
+	public void parse(Object bean, String lexical) {
+		set(bean, table.parse(lexical));
+	}
+
+	@Override
+	public void accept(DataTypeVisitor visitor) {
+		visitor.visit(this);
+	}
+}
@@ -0,0 +1,64 @@
+package com.run.saxb.transducer.accessor;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * {@link Accessor} that uses Java reflection to access a field.
+ * 
+ * <p>
+ * The field is made accessible once, when the accessor is created,
+ * so that reads and writes don't pay for the access checks.
+ */
+public abstract class FieldAccessor implements Accessor {
+	
+	protected final Field f;
+	
+	private final String name;
+	
+	protected FieldAccessor(Field f) {
+		this.f = f;
+		this.name = f.getName();
+		
+		if (!Modifier.isPublic(f.getModifiers()) 
+				|| !Modifier.isPublic(f.getDeclaringClass().getModifiers())) {
+			try {
+				f.setAccessible(true);
+			} catch (SecurityException e) {
+				// but if we don't have a permission to do so, work gracefully.
+				System.out.println("Unable to make the field " + f + " accessible " + e);
+				throw e;
+			}
+		}
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Gets the declared type of the field.
+	 */
+	public Class<?> getType() {
+		return f.getType();
+	}
+	
+	@Override
+	public Object get(Object bean) {
+		try {
+			return f.get(bean);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	@Override
+	public void set(Object bean, Object value) {
+		try {
+			f.set(bean, value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+}
@@ -1,11 +1,68 @@
 package com.run.saxb.transducer.accessor;
 
+import java.lang.reflect.Field;
+
 import com.run.saxb.transducer.DataTypeVisitor;
 
-public class IntegerAccessor implements Accessor {
+/**
+ * Accessor for all the integral types, primitive or boxed.
+ * Values are read and written as <tt>long</tt>.
+ */
+public class IntegerAccessor extends TextAccessor {
+	
+	private final Class<?> type;
+
+	public IntegerAccessor(Field f) {
+		super(f);
+		this.type = f.getType();
+	}
+	
+	public long getLong(Object bean) {
+		try {
+			if (primitive) 
+				return f.getLong(bean);
+			return ((Number) f.get(bean)).longValue();
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	public void setLong(Object bean, long value) {
+		try {
+			if (type == int.class)          f.setInt(bean, (int) value);
+			else if (type == long.class)    f.setLong(bean, value);
+			else if (type == short.class)   f.setShort(bean, (short) value);
+			else if (type == byte.class)    f.setByte(bean, (byte) value);
+			else if (type == Integer.class) f.set(bean, (int) value);
+			else if (type == Long.class)    f.set(bean, value);
+			else if (type == Short.class)   f.set(bean, (short) value);
+			else                            f.set(bean, (byte) value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	@Override
+	public String print(Object bean) {
+		if (!hasValue(bean)) 
+			return null;
+		return Long.toString(getLong(bean));
+	}
+	
+	@Override
+	public void parse(Object bean, String lexical) {
+		setLong(bean, Long.parseLong(lexical.trim()));
+	}
+	
+	public static boolean isIntegral(Class<?> type) {
+		return type == int.class || type == Integer.class 
+			|| type == long.class || type == Long.class
+			|| type == short.class || type == Short.class
+			|| type == byte.class || type == Byte.class;
+	}
 
 	@Override
 	public void accept(DataTypeVisitor visitor) {
 		visitor.visit(this);
 	}
-}
\ No newline at end of file
+}
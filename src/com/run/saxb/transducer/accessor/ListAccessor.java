@@ -1,11 +1,117 @@
 package com.run.saxb.transducer.accessor;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.run.saxb.BeanInfo;
 import com.run.saxb.transducer.DataTypeVisitor;
+import com.run.saxb.transducer.EnumTable;
+import com.run.saxb.transducer.Transducer;
+
+/**
+ * Accessor for collection properties. Each item is marshalled 
+ * as a separate element named after the property.
+ * 
+ * <p>
+ * Items are either beans, in which case {@link #itemInfo} is set,
+ * or values that the {@link Transducer} can convert.
+ */
+public class ListAccessor extends FieldAccessor {
+	
+	public final Class<?> itemType;
+	
+	/**
+	 * {@link BeanInfo} of the items, or null if the items are leaf values.
+	 */
+	public final BeanInfo<?> itemInfo;
+	
+	/**
+	 * {@link EnumTable} of the items, or null if the items are not enum constants.
+	 */
+	public final EnumTable itemEnum;
 
-public class ListAccessor implements Accessor {
+	public ListAccessor(Field f, BeanInfo<?> itemInfo) {
+		super(f);
+		this.itemType = getItemType(f);
+		this.itemInfo = itemInfo;
+		this.itemEnum = itemType.isEnum() ? EnumTable.of(itemType) : null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public Collection<Object> getList(Object bean) {
+		return (Collection<Object>) get(bean);
+	}
+	
+	/**
+	 * Adds an item to the collection, creating the collection first if the field is null.
+	 */
+	public void addItem(Object bean, Object item) {
+		Collection<Object> list = getList(bean);
+		if (list == null) {
+			list = newCollection();
+			set(bean, list);
+		}
+		list.add(item);
+	}
+	
+	/**
+	 * Creates an empty collection that can be assigned to the field.
+	 */
+	public Collection<Object> newCollection() {
+		return Set.class.isAssignableFrom(f.getType()) 
+				? new LinkedHashSet<Object>() : new ArrayList<Object>();
+	}
+	
+	/**
+	 * Removes all the items of the collection, if there is one.
+	 * The collection is kept, so that its capacity is reused.
+	 */
+	public void clear(Object bean) {
+		Collection<Object> list = getList(bean);
+		if (list != null)
+			list.clear();
+	}
+	
+	/**
+	 * Adds all the given items to the collection, in order.
+	 */
+	public void addAll(Object bean, Collection<Object> items) {
+		Collection<Object> list = getList(bean);
+		if (list == null) {
+			for (Object item: items)
+				addItem(bean, item);
+			return;
+		}
+		list.addAll(items);
+	}
+	
+	/**
+	 * Gets the item type from the generic signature of the field.
+	 * Raw collections are treated as collections of strings.
+	 */
+	public static Class<?> getItemType(Field f) {
+		Type type = f.getGenericType();
+		if (type instanceof ParameterizedType) {
+			Type arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+			if (arg instanceof Class) 
+				return (Class<?>) arg;
+		}
+		return String.class;
+	}
+	
+	public static boolean isList(Class<?> type) {
+		return type == List.class || type == Collection.class || type == Set.class 
+			|| type == ArrayList.class || type == LinkedHashSet.class;
+	}
 
 	@Override
 	public void accept(DataTypeVisitor visitor) {
 		visitor.visit(this);
 	}
-}
\ No newline at end of file
+}
@@ -1,11 +1,31 @@
 package com.run.saxb.transducer.accessor;
 
+import java.lang.reflect.Field;
+
 import com.run.saxb.transducer.DataTypeVisitor;
 
-public class StringAccessor implements Accessor {
+public class StringAccessor extends TextAccessor {
+	
+	public StringAccessor(Field f) {
+		super(f);
+	}
+	
+	public String getString(Object bean) {
+		return (String) get(bean);
+	}
+	
+	@Override
+	public String print(Object bean) {
+		return getString(bean);
+	}
+	
+	@Override
+	public void parse(Object bean, String lexical) {
+		set(bean, lexical);
+	}
 
 	@Override
 	public void accept(DataTypeVisitor visitor) {
 		visitor.visit(this);
 	}
-}
\ No newline at end of file
+}
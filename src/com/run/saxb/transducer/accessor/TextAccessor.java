@@ -0,0 +1,54 @@
+package com.run.saxb.transducer.accessor;
+
+import java.lang.reflect.Field;
+
+/**
+ * {@link FieldAccessor} for properties that have a lexical representation,
+ * so they are marshalled as the text content of an element.
+ */
+public abstract class TextAccessor extends FieldAccessor {
+	
+	protected final boolean primitive;
+	
+	protected TextAccessor(Field f) {
+		super(f);
+		this.primitive = f.getType().isPrimitive();
+	}
+	
+	/**
+	 * Checks if the property has a value on the given bean.
+	 * Primitive properties always do, so this doesn't box them.
+	 */
+	public boolean hasValue(Object bean) {
+		return primitive || get(bean) != null;
+	}
+	
+	/**
+	 * Sets the property back to the default value of its type,
+	 * null or zero or false.
+	 */
+	public void clear(Object bean) {
+		try {
+			if (!primitive)
+				f.set(bean, null);
+			else if (f.getType() == boolean.class)
+				f.setBoolean(bean, false);
+			else
+				f.setByte(bean, (byte) 0);
+		} catch (IllegalAccessException e) {
+			throw new IllegalAccessError(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Converts the property value into its lexical representation.
+	 * 
+	 * @return null if the property has no value.
+	 */
+	public abstract String print(Object bean);
+	
+	/**
+	 * Converts the lexical representation and sets it to the property.
+	 */
+	public abstract void parse(Object bean, String lexical);
+}